@@ -0,0 +1,115 @@
+package org.fantom.domain;
+
+import java.util.Arrays;
+
+/**
+ * 128-bit widget id, stored as two longs instead of a string, with precomputed hash.
+ * Ids, generated at different milliseconds, are ordered by time: the top 48 bits are expected to be
+ * milliseconds since the epoch, the rest are random, like in ULID or UUIDv7.
+ * Textual form is 26 chars of Crockford's base32, which sorts the same way as ids themselves,
+ * and is used only at the edges, e.g. in http requests and responses
+ */
+public final class CompactId implements Comparable<CompactId> {
+    private static final int LENGTH = 26;
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final byte[] DIGITS = new byte[128];
+
+    static {
+        Arrays.fill(DIGITS, (byte) -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            DIGITS[ALPHABET[i]] = (byte) i;
+            DIGITS[Character.toLowerCase(ALPHABET[i])] = (byte) i;
+        }
+    }
+
+    public final long high;
+    public final long low;
+    private final int hash;
+
+    public CompactId(long high, long low) {
+        this.high = high;
+        this.low = low;
+        this.hash = Long.hashCode(high * 0x9E3779B97F4A7C15L ^ low);
+    }
+
+    /**
+     * @return milliseconds since the epoch, encoded in id
+     */
+    public long timestamp() {
+        return high >>> 16;
+    }
+
+    /**
+     * @param s 26 chars of Crockford's base32, case-insensitive
+     * @throws IllegalArgumentException if s is not a valid id
+     */
+    public static CompactId parse(String s) {
+        if (s.length() != LENGTH) {
+            throw new IllegalArgumentException("Compact id must be " + LENGTH + " chars long, got " + s.length());
+        }
+        // the first char encodes only 3 bits, the rest 5 bits each
+        if (digit(s, 0) > 7) {
+            throw new IllegalArgumentException("Compact id is out of range: " + s);
+        }
+        long high = 0;
+        for (int i = 0; i < 13; i++) {
+            high = high << 5 | digit(s, i);
+        }
+        int middle = digit(s, 13);
+        long low = 0;
+        for (int i = 14; i < LENGTH; i++) {
+            low = low << 5 | digit(s, i);
+        }
+        return new CompactId(high << 1 | middle >>> 4, (long) (middle & 15) << 60 | low);
+    }
+
+    private static int digit(String s, int i) {
+        var c = s.charAt(i);
+        var digit = c < DIGITS.length ? DIGITS[c] : -1;
+        if (digit < 0) {
+            throw new IllegalArgumentException("Invalid char '" + c + "' in compact id " + s);
+        }
+        return digit;
+    }
+
+    @Override
+    public String toString() {
+        var chars = new char[LENGTH];
+        var low = this.low;
+        for (int i = LENGTH - 1; i > 13; i--) {
+            chars[i] = ALPHABET[(int) (low & 31)];
+            low >>>= 5;
+        }
+        // the rest 4 bits of low and the lowest bit of high
+        chars[13] = ALPHABET[(int) (low & 15 | (high & 1) << 4)];
+        var high = this.high >>> 1;
+        for (int i = 12; i >= 0; i--) {
+            chars[i] = ALPHABET[(int) (high & 31)];
+            high >>>= 5;
+        }
+        return new String(chars);
+    }
+
+    @Override
+    public int compareTo(CompactId other) {
+        var result = Long.compareUnsigned(high, other.high);
+        return result != 0 ? result : Long.compareUnsigned(low, other.low);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        } else if (o == null || getClass() != o.getClass()) {
+            return false;
+        } else {
+            var id = (CompactId) o;
+            return high == id.high && low == id.low;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -1,6 +1,5 @@
 package org.fantom.domain;
 
-import java.util.Date;
 import java.util.Objects;
 
 /** Widget that represents rectangular region on plane
@@ -39,9 +38,15 @@ public final class Widget<ID> {
     public final int height;
 
     /**
-     * Widget's create or last modification date
+     * Widget's create or last modification date, in milliseconds since the epoch
      */
-    public final Date updatedAt;
+    public final long updatedAt;
+
+    /**
+     * Widget's version, changed by repository on every modification of stored widget.
+     * Used for optimistic concurrency control, so it is not taken into account by {@link #equals}
+     */
+    public final long version;
 
     /**
      *
@@ -51,10 +56,11 @@ public final class Widget<ID> {
      * @param zIndex z-coordinate of widget plane
      * @param width widget's width (difference between x-coordinates of right and left vertices
      * @param height widget's height (difference between y-coordinates of top and bottom vertices
-     * @param updatedAt date of last modification
+     * @param updatedAt date of last modification, in milliseconds since the epoch
+     * @param version version of stored widget
      * @throws IllegalArgumentException when width or height are negative
      */
-    public Widget(ID id, int x, int y, int zIndex, int width, int height, Date updatedAt) throws IllegalArgumentException {
+    public Widget(ID id, int x, int y, int zIndex, int width, int height, long updatedAt, long version) throws IllegalArgumentException {
         // TODO: allow zero width/height?
         if (width < 0) {
             throw new IllegalArgumentException("Widget width must be non-negative");
@@ -69,6 +75,24 @@ public final class Widget<ID> {
         this.width = width;
         this.height = height;
         this.updatedAt = updatedAt;
+        this.version = version;
+    }
+
+    /**
+     * Create widget of initial version
+     * @see #Widget(Object, int, int, int, int, int, long, long)
+     */
+    public Widget(ID id, int x, int y, int zIndex, int width, int height, long updatedAt) throws IllegalArgumentException {
+        this(id, x, y, zIndex, width, height, updatedAt, 0);
+    }
+
+    /**
+     * @return squared euclidean distance from given point to the nearest point of widget, 0 for points inside widget
+     */
+    public double distanceSquared(long x, long y) {
+        var dx = Math.max(0, Math.max(this.x - x, x - ((long) this.x + width)));
+        var dy = Math.max(0, Math.max(this.y - y, y - ((long) this.y + height)));
+        return (double) dx * dx + (double) dy * dy;
     }
 
     @Override
@@ -81,6 +105,7 @@ public final class Widget<ID> {
                 ", width=" + width +
                 ", height=" + height +
                 ", updatedAt=" + updatedAt +
+                ", version=" + version +
                 '}';
     }
 
@@ -97,8 +122,8 @@ public final class Widget<ID> {
                     width == widget.width &&
                     height == widget.height &&
                     zIndex == widget.zIndex &&
-                    id.equals(widget.id) &&
-                    updatedAt.equals(widget.updatedAt);
+                    updatedAt == widget.updatedAt &&
+                    id.equals(widget.id);
         }
     }
 
@@ -115,7 +140,8 @@ public final class Widget<ID> {
         private Integer width;
         private Integer height;
         private Integer zIndex;
-        private Date updatedAt;
+        private Long updatedAt;
+        private Long version;
 
         public Builder(Widget<ID> orig) {
             this.orig = orig;
@@ -151,11 +177,16 @@ public final class Widget<ID> {
             return this;
         }
 
-        public Builder<ID> withUpdatedAt(Date updatedAt) {
+        public Builder<ID> withUpdatedAt(Long updatedAt) {
             this.updatedAt = updatedAt;
             return this;
         }
 
+        public Builder<ID> withVersion(Long version) {
+            this.version = version;
+            return this;
+        }
+
         public Widget<ID> build() {
             return new Widget<>(
                     id == null ? orig.id : id,
@@ -163,7 +194,8 @@ public final class Widget<ID> {
                     y == null ? orig.y : y,
                     zIndex == null ? orig.zIndex : zIndex, width == null ? orig.width : width,
                     height == null ? orig.height : height,
-                    updatedAt == null ? orig.updatedAt : updatedAt
+                    updatedAt == null ? orig.updatedAt : updatedAt,
+                    version == null ? orig.version : version
             );
         }
     }
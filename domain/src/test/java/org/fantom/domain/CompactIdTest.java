@@ -0,0 +1,44 @@
+package org.fantom.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompactIdTest {
+    @Test
+    public void textualFormIsParsedBack() {
+        var random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            var id = new CompactId(random.nextLong(), random.nextLong());
+            var text = id.toString();
+            assertEquals(26, text.length());
+            assertEquals(id, CompactId.parse(text));
+            assertEquals(id, CompactId.parse(text.toLowerCase()));
+        }
+        assertEquals("7ZZZZZZZZZZZZZZZZZZZZZZZZZ", new CompactId(-1, -1).toString());
+        assertEquals("00000000000000000000000000", new CompactId(0, 0).toString());
+    }
+
+    @Test
+    public void textualFormSortsAsIds() {
+        var random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            var first = new CompactId(random.nextLong(), random.nextLong());
+            var second = new CompactId(random.nextLong(), random.nextLong());
+            assertEquals(Integer.signum(first.compareTo(second)), Integer.signum(first.toString().compareTo(second.toString())));
+        }
+    }
+
+    @Test
+    public void invalidTextIsRejected() {
+        for (var text : new String[]{"", "0000000000000000000000000", "8ZZZZZZZZZZZZZZZZZZZZZZZZZ", "0000000000000000000000000U"}) {
+            try {
+                CompactId.parse(text);
+                fail("Parsed invalid compact id " + text);
+            } catch (IllegalArgumentException ignored) {
+            }
+        }
+    }
+}
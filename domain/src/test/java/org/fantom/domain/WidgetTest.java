@@ -2,15 +2,14 @@ package org.fantom.domain;
 
 import org.junit.jupiter.api.Test;
 
-import java.util.Date;
-
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.fail;
 
 public class WidgetTest {
     @Test
     public void cannotCreateWidgetWithNegativeWidth() {
         try {
-            new Widget<>(0,0,0,0,-10,0, new Date());
+            new Widget<>(0,0,0,0,-10,0, System.currentTimeMillis());
             fail("Created widget with invalid width");
         } catch (IllegalArgumentException ignored) {
         }
@@ -19,9 +18,18 @@ public class WidgetTest {
     @Test
     public void cannotCreateWidgetWithNegativeHeight() {
         try {
-            new Widget<>(0,0,0,0,0,-10, new Date());
+            new Widget<>(0,0,0,0,0,-10, System.currentTimeMillis());
             fail("Created widget with invalid height");
         } catch (IllegalArgumentException ignored) {
         }
     }
+
+    @Test
+    public void distanceIsMeasuredToTheNearestPointOfWidget() {
+        var widget = new Widget<>(0, 10, 10, 0, 10, 20, System.currentTimeMillis());
+        assertEquals(0.0, widget.distanceSquared(15, 20), "point inside");
+        assertEquals(0.0, widget.distanceSquared(20, 30), "top-right vertex");
+        assertEquals(25.0, widget.distanceSquared(5, 15), "point to the left");
+        assertEquals(9.0 + 16, widget.distanceSquared(23, 34), "point beyond top-right vertex");
+    }
 }
@@ -1,30 +1,219 @@
 package org.fantom.repository;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
 
+/**
+ * Read-write lock, usable in try-with-resources.
+ * Based on {@link ReentrantReadWriteLock} or {@link StampedLock}, see {@link LockType}, rather than on monitors,
+ * so virtual threads, blocked on it or holding it while blocked on something else, release their carrier threads
+ */
 public class ClosableReentrantReadWriteLock {
 
+    /**
+     * Observer of lock usage, e.g. to measure contention. Called by thread, that acquires or releases the lock,
+     * so it must be fast
+     */
+    public interface Listener {
+        /**
+         * @param write whether write lock is acquired
+         * @param waitNanos time spent waiting for the lock
+         */
+        void acquired(boolean write, long waitNanos);
+
+        /**
+         * @param write whether write lock is released
+         * @param holdNanos time the lock was held
+         */
+        void released(boolean write, long holdNanos);
+    }
+
+    private final LockType type;
+    // null if lock is stamped
     private final ReentrantReadWriteLock rwLock;
+    // null if lock is reentrant
+    private final StampedLock stampedLock;
+    private final Lock readLock;
+    private final Lock writeLock;
+    // null if lock is not observed, to not measure time in vain
+    private final Listener listener;
+    // stamped lock doesn't expose its queue, so waiting threads are counted, if lock is observed
+    private final AtomicInteger waiting = new AtomicInteger();
+    // thread, holding stamped write lock, only compared with the current thread, which is the only one to set it to itself
+    private Thread writeOwner;
+    // whether current thread holds stamped read lock
+    private final ThreadLocal<Boolean> readHeld = new ThreadLocal<>();
+
+    public ClosableReentrantReadWriteLock(LockType type, Listener listener) {
+        this.type = type;
+        if (type == LockType.stamped) {
+            rwLock = null;
+            stampedLock = new StampedLock();
+            readLock = new NonReentrantLock(stampedLock.asReadLock(), false);
+            writeLock = new NonReentrantLock(stampedLock.asWriteLock(), true);
+        } else {
+            rwLock = new ReentrantReadWriteLock(type == LockType.fair);
+            stampedLock = null;
+            readLock = rwLock.readLock();
+            writeLock = rwLock.writeLock();
+        }
+        this.listener = listener;
+    }
+
+    public ClosableReentrantReadWriteLock(LockType type) {
+        this(type, null);
+    }
 
     public ClosableReentrantReadWriteLock(boolean fair) {
-        rwLock = new ReentrantReadWriteLock(fair);
+        this(fair ? LockType.fair : LockType.unfair);
     }
 
     public ClosableReentrantReadWriteLock() {
-        rwLock = new ReentrantReadWriteLock();
+        this(false);
+    }
+
+    public LockType getType() {
+        return type;
+    }
+
+    /**
+     * @return estimate of the number of threads, waiting for the lock.
+     * Always 0 for not observed stamped lock
+     */
+    public int getQueueLength() {
+        return rwLock != null ? rwLock.getQueueLength() : waiting.get();
+    }
+
+    protected ClosableLock<Lock> lock(Lock lock, boolean write) {
+        if (listener == null) {
+            lock.lock();
+            return new ClosableLock<>(lock);
+        }
+        var start = System.nanoTime();
+        if (stampedLock != null) {
+            waiting.incrementAndGet();
+            try {
+                lock.lock();
+            } finally {
+                waiting.decrementAndGet();
+            }
+        } else {
+            lock.lock();
+        }
+        var acquiredAt = System.nanoTime();
+        listener.acquired(write, acquiredAt - start);
+        return new ObservedClosableLock<>(lock, write, acquiredAt);
+    }
+
+    /**
+     * Run short read without acquiring the lock, if lock is stamped, and repeat it under read lock,
+     * if lock has been acquired for write meanwhile. So concurrent readers don't write to shared memory at all.
+     * Read must tolerate concurrent writes, i.e. it must neither fail nor hang, if data is changed under it,
+     * as it is validated only after it finishes
+     * @param read read to run
+     * @return result of read, consistent with data under the lock
+     */
+    public <T> T optimisticRead(Supplier<T> read) {
+        if (stampedLock != null) {
+            var stamp = stampedLock.tryOptimisticRead();
+            if (stamp != 0) {
+                var result = read.get();
+                if (stampedLock.validate(stamp)) {
+                    return result;
+                }
+            }
+        }
+        try (var ignored = readLock()) {
+            return read.get();
+        }
+    }
+
+    public ClosableLock<Lock> readLock() {
+        return lock(readLock, false);
     }
 
-    public ClosableLock<ReentrantReadWriteLock.ReadLock> readLock() {
-        var lock = rwLock.readLock();
-        lock.lock();
-        return new ClosableLock<>(lock);
+    public ClosableLock<Lock> writeLock() {
+        return lock(writeLock, true);
     }
 
-    public ClosableLock<ReentrantReadWriteLock.WriteLock> writeLock() {
-        var lock = rwLock.writeLock();
-        lock.lock();
-        return new ClosableLock<>(lock);
+    /**
+     * View of stamped lock, that records threads holding it, so that thread, acquiring it once more,
+     * fails fast instead of deadlocking itself
+     */
+    private class NonReentrantLock implements Lock {
+        private final Lock lock;
+        private final boolean write;
+
+        NonReentrantLock(Lock lock, boolean write) {
+            this.lock = lock;
+            this.write = write;
+        }
+
+        private void checkNotHeld() {
+            if (writeOwner == Thread.currentThread() || readHeld.get() != null) {
+                throw new IllegalStateException("Stamped lock is not reentrant, but current thread already holds it");
+            }
+        }
+
+        private void held(boolean held) {
+            if (write) {
+                writeOwner = held ? Thread.currentThread() : null;
+            } else if (held) {
+                readHeld.set(Boolean.TRUE);
+            } else {
+                readHeld.remove();
+            }
+        }
+
+        @Override
+        public void lock() {
+            checkNotHeld();
+            lock.lock();
+            held(true);
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            checkNotHeld();
+            lock.lockInterruptibly();
+            held(true);
+        }
+
+        @Override
+        public boolean tryLock() {
+            checkNotHeld();
+            var acquired = lock.tryLock();
+            if (acquired) {
+                held(true);
+            }
+            return acquired;
+        }
+
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            checkNotHeld();
+            var acquired = lock.tryLock(time, unit);
+            if (acquired) {
+                held(true);
+            }
+            return acquired;
+        }
+
+        @Override
+        public void unlock() {
+            held(false);
+            lock.unlock();
+        }
+
+        @Override
+        public Condition newCondition() {
+            return lock.newCondition();
+        }
     }
 
     public static class ClosableLock<T extends Lock> implements AutoCloseable {
@@ -39,4 +228,22 @@ public class ClosableReentrantReadWriteLock {
             lock.unlock();
         }
     }
+
+    private class ObservedClosableLock<T extends Lock> extends ClosableLock<T> {
+        private final boolean write;
+        private final long acquiredAt;
+
+        ObservedClosableLock(T lock, boolean write, long acquiredAt) {
+            super(lock);
+            this.write = write;
+            this.acquiredAt = acquiredAt;
+        }
+
+        @Override
+        public void close() {
+            var holdNanos = System.nanoTime() - acquiredAt;
+            super.close();
+            listener.released(write, holdNanos);
+        }
+    }
 }
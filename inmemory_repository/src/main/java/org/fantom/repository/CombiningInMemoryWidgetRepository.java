@@ -0,0 +1,145 @@
+package org.fantom.repository;
+
+import org.fantom.domain.Widget;
+import org.fantom.repositories.widget.AtomicAction;
+import org.fantom.repositories.widget.AtomicFunction;
+import org.fantom.repositories.widget.IdGenerator;
+import org.fantom.repositories.widget.WidgetRepository;
+import org.fantom.repositories.widget.dto.Area;
+import org.fantom.repositories.widget.dto.ReorderPosition;
+import org.fantom.repositories.widget.dto.WidgetCreateDto;
+import org.fantom.repositories.widget.exceptions.VersionConflictException;
+import org.fantom.repositories.widget.exceptions.ZIndexConflictException;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.UnaryOperator;
+
+/**
+ * In-memory repository, that applies concurrent mutations in batches, see {@link WriteCombiner}.
+ * Reads are the same as in {@link InMemoryWidgetRepository}
+ */
+public class CombiningInMemoryWidgetRepository<ID> extends InMemoryWidgetRepository<ID> {
+    public static final int DEFAULT_MAX_BATCH_SIZE = 128;
+
+    private final WriteCombiner<InternalInMemoryWidgetRepository<ID>> combiner;
+
+    /**
+     * @param rwLock lock to guard repository with, not shared with anything else
+     */
+    public CombiningInMemoryWidgetRepository(IdGenerator<ID> idGenerator, int maxBatchSize, ClosableReentrantReadWriteLock rwLock) {
+        super(idGenerator, rwLock);
+        combiner = new WriteCombiner<>(internal, rwLock, maxBatchSize);
+    }
+
+    public CombiningInMemoryWidgetRepository(IdGenerator<ID> idGenerator, int maxBatchSize) {
+        this(idGenerator, maxBatchSize, new ClosableReentrantReadWriteLock(true));
+    }
+
+    public CombiningInMemoryWidgetRepository(IdGenerator<ID> idGenerator) {
+        this(idGenerator, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    public CombiningInMemoryWidgetRepository(Iterable<Widget<ID>> widgets, IdGenerator<ID> idGenerator) throws ZIndexConflictException {
+        super(widgets, idGenerator);
+        combiner = new WriteCombiner<>(internal, rwLock, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    @Override
+    public Widget<ID> add(WidgetCreateDto widgetDto) throws ZIndexConflictException {
+        var id = internal.generateId();
+        return combiner.execute(repo -> repo.add(id, widgetDto));
+    }
+
+    @Override
+    public List<Widget<ID>> add(Iterable<WidgetCreateDto> widgets) throws ZIndexConflictException {
+        return combiner.execute(repo -> repo.add(widgets));
+    }
+
+    @Override
+    public Optional<Widget<ID>> save(Widget<ID> widget) throws ZIndexConflictException {
+        return combiner.execute(repo -> repo.save(widget));
+    }
+
+    @Override
+    public Optional<Widget<ID>> save(Widget<ID> widget, long expectedVersion) throws ZIndexConflictException, VersionConflictException {
+        try {
+            return combiner.execute(repo -> repo.save(widget, expectedVersion));
+        } catch (ZIndexConflictException | VersionConflictException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            // unreachable, action throws only exceptions listed above, but single type parameter can't express both
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public Optional<Widget<ID>> update(ID id, UnaryOperator<Widget<ID>> update) throws ZIndexConflictException {
+        return combiner.execute(repo -> repo.update(id, update));
+    }
+
+    @Override
+    public void save(Iterable<Widget<ID>> widgets) throws ZIndexConflictException {
+        combiner.execute(repo -> {
+            repo.save(widgets);
+            return null;
+        });
+    }
+
+    @Override
+    public Optional<Widget<ID>> deleteAndReturnById(ID id) {
+        return combiner.execute(repo -> repo.deleteAndReturnById(id));
+    }
+
+    @Override
+    public boolean deleteById(ID id) {
+        return combiner.execute(repo -> repo.deleteById(id));
+    }
+
+    @Override
+    public int deleteByIds(Collection<ID> ids) {
+        return combiner.execute(repo -> repo.deleteByIds(ids));
+    }
+
+    @Override
+    public int deleteInArea(Area area) {
+        return combiner.execute(repo -> repo.deleteInArea(area));
+    }
+
+    @Override
+    public void deleteAll() {
+        combiner.execute(repo -> {
+            repo.deleteAll();
+            return null;
+        });
+    }
+
+    @Override
+    public int shiftUpwards(Integer zIndex) throws ArithmeticException {
+        return combiner.execute(repo -> repo.shiftUpwards(zIndex));
+    }
+
+    @Override
+    public List<Widget<ID>> reorder(Collection<ID> ids, ReorderPosition position) throws ArithmeticException {
+        return combiner.execute(repo -> repo.reorder(ids, position));
+    }
+
+    @Override
+    public List<Widget<ID>> translate(Collection<ID> ids, int dx, int dy, long updatedAt) throws ArithmeticException {
+        return combiner.execute(repo -> repo.translate(ids, dx, dy, updatedAt));
+    }
+
+    @Override
+    public <T, E extends Exception> T runAtomically(AtomicFunction<WidgetRepository<ID>, T, E> action) throws E {
+        return combiner.execute(action::run);
+    }
+
+    @Override
+    public <E extends Exception> void runAtomically(AtomicAction<WidgetRepository<ID>, E> action) throws E {
+        combiner.<Void, E>execute(repo -> {
+            action.run(repo);
+            return null;
+        });
+    }
+}
@@ -6,101 +6,115 @@ import org.fantom.repositories.widget.AtomicFunction;
 import org.fantom.repositories.widget.IdGenerator;
 import org.fantom.repositories.widget.WidgetRepository;
 import org.fantom.repositories.widget.dto.Area;
+import org.fantom.repositories.widget.dto.AreaSummary;
+import org.fantom.repositories.widget.dto.ReorderPosition;
+import org.fantom.repositories.widget.exceptions.VersionConflictException;
 import org.fantom.repositories.widget.exceptions.ZIndexConflictException;
 import org.fantom.repositories.widget.dto.WidgetCreateDto;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
-class Pair<T1, T2> {
-    public final T1 first;
-    public final T2 second;
-
-    Pair(T1 first, T2 second) {
-        this.first = first;
-        this.second = second;
-    }
-}
-
 public class InMemoryWidgetRepository<ID> implements WidgetRepository<ID> {
     // Thread-unsafe impl of widget repository to use in runAtomically without synchronization overhead
     protected static class InternalInMemoryWidgetRepository<ID> implements WidgetRepository<ID> {
+        // concurrent, so optimistic readers, see ClosableReentrantReadWriteLock#optimisticRead, never see it broken
         private final Map<ID, WidgetDao<ID>> widgetsById;
         // here we need to keep keys ordered
         private final TreeMap<Integer, WidgetDao<ID>> widgetsByZIndex;
         private final IdGenerator<ID> idGenerator;
 
-        // Indexes over widgets coordinates, to easy filter by area borders
-        private final TreeMap<Integer, HashSet<WidgetDao<ID>>> leftIndex;
-        private final TreeMap<Integer, HashSet<WidgetDao<ID>>> rightIndex;
-        private final TreeMap<Integer, HashSet<WidgetDao<ID>>> topIndex;
-        private final TreeMap<Integer, HashSet<WidgetDao<ID>>> bottomIndex;
+        // Index over widgets position, to find widgets in area and aggregate them without visiting every widget
+        private final WidgetQuadTree<ID> spatialIndex;
+
+        // changed only under write lock, but read without any lock
+        private volatile long version;
+        // cached top of widgetsByZIndex, which, unlike the map itself, can be read optimistically
+        private volatile Integer maxZIndex;
 
         protected InternalInMemoryWidgetRepository(Map<ID, WidgetDao<ID>> widgets, IdGenerator<ID> idGenerator) {
             this.widgetsById = widgets;
             this.idGenerator = idGenerator;
             this.widgetsByZIndex = new TreeMap<>();
 
-            this.leftIndex = new TreeMap<>();
-            // we always require widget right edge to have x-coordinate to be LESS than the search area right edge's one
-            this.rightIndex = new TreeMap<>(Collections.reverseOrder());
-            // the same for top: widget top edge y-coordinate must be LESS than the search area top edge's one
-            // this reverse order allows to always take tailMap when searching for widgets
-            this.topIndex = new TreeMap<>(Collections.reverseOrder());
-            this.bottomIndex = new TreeMap<>();
+            this.spatialIndex = new WidgetQuadTree<>();
         }
 
         public InternalInMemoryWidgetRepository(IdGenerator<ID> idGenerator) {
-            this(new HashMap<>(), idGenerator);
+            this(new ConcurrentHashMap<>(), idGenerator);
         }
 
         public InternalInMemoryWidgetRepository(Iterable<Widget<ID>> widgets, IdGenerator<ID> idGenerator) throws ZIndexConflictException {
             this(StreamSupport
                             .stream(widgets.spliterator(), true)
                             .map(WidgetDao::new)
-                            .collect(Collectors.toMap(w -> w.id, w -> w)),
+                            .collect(Collectors.toConcurrentMap(w -> w.id, w -> w)),
                     idGenerator);
             for (var widget : widgetsById.values()) {
-                var existing = widgetsByZIndex.putIfAbsent(widget.zIndex, widget);
+                var existing = widgetsByZIndex.putIfAbsent(widget.widget.zIndex, widget);
                 if (existing != null) {
-                    throw new ZIndexConflictException(widget.zIndex);
+                    throw new ZIndexConflictException(widget.widget.zIndex);
                 }
 
                 addToIndexes(widget);
             }
+            updateMaxZIndex();
+        }
+
+        protected void markModified() {
+            version++;
+            updateMaxZIndex();
+        }
+
+        private void updateMaxZIndex() {
+            maxZIndex = widgetsByZIndex.isEmpty() ? null : widgetsByZIndex.lastKey();
         }
 
         protected void addToIndexes(WidgetDao<ID> widget) {
-            leftIndex.computeIfAbsent(widget.x, k -> new HashSet<>()).add(widget);
-            rightIndex.computeIfAbsent(widget.x + widget.width, k -> new HashSet<>()).add(widget);
-            topIndex.computeIfAbsent(widget.y + widget.height, k -> new HashSet<>()).add(widget);
-            bottomIndex.computeIfAbsent(widget.y, k -> new HashSet<>()).add(widget);
+            spatialIndex.add(widget);
         }
 
         protected void removeFromIndexes(WidgetDao<ID> widget) {
-            Stream.of(
-                    new Pair<>(rightIndex, widget.x),
-                    new Pair<>(leftIndex, widget.x + widget.width),
-                    new Pair<>(topIndex, widget.y + widget.height),
-                    new Pair<>(bottomIndex, widget.y)
-            )
-                    .map(pair -> pair.first.get(pair.second))
-                    .filter(Objects::nonNull)
-                    .forEach(set -> set.remove(widget));
+            spatialIndex.remove(widget);
+        }
+
+        /**
+         * Replace stored entry with a new one with the same id, but different zIndex, in all places except zIndex index
+         */
+        protected void replaceShifted(WidgetDao<ID> oldWidget, WidgetDao<ID> newWidget) {
+            widgetsById.put(newWidget.id, newWidget);
+            spatialIndex.replace(oldWidget, newWidget);
+        }
+
+        /**
+         * @return id for new widget, generator is thread-safe, so it may be called without lock
+         */
+        protected ID generateId() {
+            return idGenerator.generate();
         }
 
         @Override
         public Widget<ID> add(WidgetCreateDto widgetDto) throws ZIndexConflictException {
-            var widget = widgetDto.toWidget(idGenerator.generate());
+            return add(generateId(), widgetDto);
+        }
+
+        /**
+         * Add widget with id, generated in advance
+         */
+        protected Widget<ID> add(ID id, WidgetCreateDto widgetDto) throws ZIndexConflictException {
+            var widget = widgetDto.toWidget(id);
             var widgetDao = new WidgetDao<>(widget);
-            var oldWidget = widgetsByZIndex.putIfAbsent(widgetDao.zIndex, widgetDao);
+            var oldWidget = widgetsByZIndex.putIfAbsent(widget.zIndex, widgetDao);
             if (oldWidget != null) {
-                throw new ZIndexConflictException(widgetDao.zIndex);
+                throw new ZIndexConflictException(widget.zIndex);
             }
             widgetsById.put(widgetDao.id, widgetDao);
             addToIndexes(widgetDao);
+            markModified();
 
             return widget;
         }
@@ -131,26 +145,46 @@ public class InMemoryWidgetRepository<ID> implements WidgetRepository<ID> {
             if (oldWidget == null) {
                 return Optional.empty();
             } else {
-                var newWidget = new WidgetDao<>(widget);
-                if (oldWidget.zIndex != newWidget.zIndex) {
-                    if (!widgetsByZIndex.containsKey(newWidget.zIndex)) {
+                var newWidget = oldWidget.next(widget);
+                if (oldWidget.widget.zIndex != widget.zIndex) {
+                    if (!widgetsByZIndex.containsKey(widget.zIndex)) {
                         // zIndex is free
-                        widgetsByZIndex.remove(oldWidget.zIndex);
-                        widgetsByZIndex.put(newWidget.zIndex, newWidget);
+                        widgetsByZIndex.remove(oldWidget.widget.zIndex);
                     } else {
                         // zIndex already occupied by other widget
-                        throw new ZIndexConflictException(newWidget.zIndex);
+                        throw new ZIndexConflictException(widget.zIndex);
                     }
                 }
+                // replace entry even if zIndex is the same, as entries are immutable
+                widgetsByZIndex.put(widget.zIndex, newWidget);
 
                 widgetsById.put(newWidget.id, newWidget);
                 removeFromIndexes(oldWidget);
                 addToIndexes(newWidget);
+                markModified();
 
-                return Optional.of(widget);
+                return Optional.of(newWidget.widget);
             }
         }
 
+        @Override
+        public Optional<Widget<ID>> save(Widget<ID> widget, long expectedVersion) throws ZIndexConflictException, VersionConflictException {
+            var oldWidget = widgetsById.get(widget.id);
+            if (oldWidget != null && oldWidget.widget.version != expectedVersion) {
+                throw new VersionConflictException(widget.id, expectedVersion);
+            }
+            return save(widget);
+        }
+
+        @Override
+        public Optional<Widget<ID>> update(ID id, UnaryOperator<Widget<ID>> update) throws ZIndexConflictException {
+            var oldWidget = widgetsById.get(id);
+            if (oldWidget == null) {
+                return Optional.empty();
+            }
+            return save(update.apply(oldWidget.widget));
+        }
+
         @Override
         public void save(Iterable<Widget<ID>> widgets) throws ZIndexConflictException {
             // TODO: what if exception thrown in the middle?
@@ -166,37 +200,168 @@ public class InMemoryWidgetRepository<ID> implements WidgetRepository<ID> {
 
         @Override
         public List<Widget<ID>> getAll() {
-            return widgetsByZIndex.values().stream().map(WidgetDao::toWidget).collect(Collectors.toList());
+            var result = new ArrayList<Widget<ID>>(widgetsByZIndex.size());
+            forEach(result::add);
+            return result;
+        }
+
+        @Override
+        public List<Widget<ID>> getByIds(Collection<ID> ids) {
+            var result = new ArrayList<Widget<ID>>();
+            for (var id : new HashSet<>(ids)) {
+                var widget = widgetsById.get(id);
+                if (widget != null) {
+                    result.add(widget.widget);
+                }
+            }
+            result.sort(Comparator.comparingInt(w -> w.zIndex));
+            return result;
         }
 
         @Override
         public List<Widget<ID>> getInArea(Area area) {
-            var result = leftIndex.tailMap(area.left).values().stream().flatMap(Collection::stream).collect(Collectors.toSet());
-            return Stream.of(new Pair<>(rightIndex, area.right), new Pair<>(topIndex, area.top), new Pair<>(bottomIndex, area.bottom))
-                    // avoid synchronization of resulting hashset
-                    .sequential()
-                    .reduce(result, (res, pair) -> {
-                                res.retainAll(pair.first.tailMap(pair.second).values().stream().flatMap(Collection::stream).collect(Collectors.toList()));
-                                return res;
-                            },
-                            (set1, set2) -> {
-                                // get exception on parallel execution
-                                throw new RuntimeException("Sequential reduce executed in parallel");
-                            })
-                    .stream()
-                    .map(WidgetDao::toWidget)
-                    .collect(Collectors.toList());
+            var result = new ArrayList<Widget<ID>>();
+            forEachInArea(area, result::add);
+            return result;
+        }
+
+        @Override
+        public List<Widget<ID>> findOverlapping(Area area, ID excludeId) {
+            var result = new ArrayList<Widget<ID>>();
+            spatialIndex.forEachOverlapping(area, widget -> {
+                if (!widget.id.equals(excludeId)) {
+                    result.add(widget);
+                }
+            });
+            result.sort(Comparator.comparingInt(widget -> widget.zIndex));
+            return result;
+        }
+
+        @Override
+        public boolean anyOverlapping(Area area) {
+            return spatialIndex.anyOverlapping(area);
+        }
+
+        @Override
+        public void forEach(Consumer<? super Widget<ID>> consumer) {
+            for (var widget : widgetsByZIndex.values()) {
+                consumer.accept(widget.widget);
+            }
+        }
+
+        @Override
+        public void forEachInArea(Area area, Consumer<? super Widget<ID>> consumer) {
+            spatialIndex.forEachInArea(area, consumer);
+        }
+
+        @Override
+        public int countInArea(Area area) {
+            return spatialIndex.countInArea(area);
+        }
+
+        @Override
+        public Optional<Area> boundingBox() {
+            return spatialIndex.boundingBox();
+        }
+
+        @Override
+        public int[][] histogram(Area area, int gridSize) {
+            return spatialIndex.histogram(area, gridSize);
+        }
+
+        @Override
+        public List<Widget<ID>> nearest(int x, int y, int k) throws IllegalArgumentException {
+            return spatialIndex.nearest(x, y, k);
+        }
+
+        @Override
+        public AreaSummary summarize(Area area, int gridSize) throws IllegalArgumentException {
+            return spatialIndex.summarize(area, gridSize);
+        }
+
+        @Override
+        public List<Widget<ID>> getPage(Integer afterZIndex, int limit) {
+            var tail = afterZIndex == null ? widgetsByZIndex : widgetsByZIndex.tailMap(afterZIndex, false);
+            var result = new ArrayList<Widget<ID>>(Math.min(limit, tail.size()));
+            for (var widget : tail.values()) {
+                if (result.size() == limit) {
+                    break;
+                }
+                result.add(widget.widget);
+            }
+            return result;
+        }
+
+        /**
+         * Walks zIndex tree map from the cursor, like {@link #getPage}, skipping widgets outside area.
+         * Walk visits about {@code limit * size / inArea} widgets per page, while scan of area by spatial index
+         * visits all {@code inArea} widgets of area per page, so small areas are scanned instead
+         */
+        @Override
+        public List<Widget<ID>> getInAreaPage(Area area, Integer afterZIndex, int limit) {
+            if (area == null) {
+                return getPage(afterZIndex, limit);
+            }
+            var inArea = (long) spatialIndex.countInArea(area);
+            if (inArea * inArea <= (long) limit * widgetsByZIndex.size()) {
+                return WidgetRepository.super.getInAreaPage(area, afterZIndex, limit);
+            }
+            var tail = afterZIndex == null ? widgetsByZIndex : widgetsByZIndex.tailMap(afterZIndex, false);
+            var result = new ArrayList<Widget<ID>>((int) Math.min(limit, inArea));
+            for (var widget : tail.values()) {
+                if (result.size() == limit) {
+                    break;
+                }
+                if (area.contains(widget.widget)) {
+                    result.add(widget.widget);
+                }
+            }
+            return result;
         }
 
         protected WidgetDao<ID> deleteAndReturnByIdInternal(ID id) {
+            var widget = remove(id);
+            if (widget != null) {
+                markModified();
+            }
+            return widget;
+        }
+
+        /**
+         * Remove widget from all indexes without marking repository modified, to mark it once for many widgets
+         * @return removed widget or null, if there is no widget with given id
+         */
+        private WidgetDao<ID> remove(ID id) {
             var widget = widgetsById.remove(id);
             if (widget != null) {
-                widgetsByZIndex.remove(widget.zIndex);
+                widgetsByZIndex.remove(widget.widget.zIndex);
                 removeFromIndexes(widget);
             }
             return widget;
         }
 
+        @Override
+        public int deleteByIds(Collection<ID> ids) {
+            var deleted = 0;
+            for (var id : ids) {
+                if (remove(id) != null) {
+                    deleted++;
+                }
+            }
+            if (deleted > 0) {
+                markModified();
+            }
+            return deleted;
+        }
+
+        @Override
+        public int deleteInArea(Area area) {
+            // collected first, as index can't be changed while iterated
+            var ids = new ArrayList<ID>();
+            forEachInArea(area, widget -> ids.add(widget.id));
+            return deleteByIds(ids);
+        }
+
         @Override
         public Optional<Widget<ID>> deleteAndReturnById(ID id) {
             return Optional.ofNullable(deleteAndReturnByIdInternal(id)).map(WidgetDao::toWidget);
@@ -213,35 +378,36 @@ public class InMemoryWidgetRepository<ID> implements WidgetRepository<ID> {
             widgetsByZIndex.clear();
             widgetsById.clear();
 
-            leftIndex.clear();
-            rightIndex.clear();
-            topIndex.clear();
-            bottomIndex.clear();
+            spatialIndex.clear();
+            markModified();
         }
 
         @Override
         public Optional<Integer> getMaxZIndex() {
-            try {
-                return Optional.of(widgetsByZIndex.lastKey());
-            } catch (NoSuchElementException e) {
-                return Optional.empty();
-            }
+            return Optional.ofNullable(maxZIndex);
+        }
+
+        @Override
+        public long getVersion() {
+            return version;
         }
 
         @Override
-        public void shiftUpwards(Integer zIndex) throws ArithmeticException {
+        public int shiftUpwards(Integer zIndex) throws ArithmeticException {
             var equalOrUpperKey = widgetsByZIndex.ceilingEntry(zIndex);
             if (equalOrUpperKey == null || !equalOrUpperKey.getKey().equals(zIndex)) {
                 // no widgets above given zIndex or zIndex is free
-                return;
+                return 0;
             }
             if (!(widgetsByZIndex.containsKey(zIndex + 1))) {
                 // fast version, zIndex is used, but next value is not
                 var widget = equalOrUpperKey.getValue();
-                var newZIndex = zIndex + 1;
-                widget.zIndex = newZIndex;
+                var shifted = widget.withZIndex(zIndex + 1);
                 widgetsByZIndex.remove(zIndex);
-                widgetsByZIndex.put(newZIndex, widget);
+                widgetsByZIndex.put(shifted.widget.zIndex, shifted);
+                replaceShifted(widget, shifted);
+                markModified();
+                return 1;
             } else {
                 var overlyingWidgets = widgetsByZIndex.tailMap(zIndex);
                 int topUsedZIndex = zIndex;
@@ -259,12 +425,137 @@ public class InMemoryWidgetRepository<ID> implements WidgetRepository<ID> {
                 // actually shift widgets
                 for (var z = topUsedZIndex; z >= zIndex; z--) {
                     var widget = overlyingWidgets.get(z);
-                    var newZIndex = z + 1;
-                    widget.zIndex = newZIndex;
-                    overlyingWidgets.put(newZIndex, widget);
+                    var shifted = widget.withZIndex(z + 1);
+                    overlyingWidgets.put(shifted.widget.zIndex, shifted);
+                    replaceShifted(widget, shifted);
                 }
                 overlyingWidgets.remove(zIndex);
+                markModified();
+                return topUsedZIndex - zIndex + 1;
+            }
+        }
+
+        /**
+         * Renumber next widgets in one direction from zero, see {@link WidgetRepository#compactZIndexes()}
+         * @param cursor position of compaction, it is advanced
+         * @param limit max number of widgets to renumber
+         * @return whether there are more widgets to compact in this direction
+         */
+        protected boolean compactSlice(CompactionCursor cursor, int limit) {
+            var moved = cursor.moved;
+            // there are no widgets between the last placed and the next one, so widget is never moved past other one
+            var next = cursor.next(widgetsByZIndex);
+            for (int i = 0; i < limit && next != null; i++) {
+                var target = cursor.upwards ? cursor.placed + 1 : cursor.placed - 1;
+                var widget = next.getValue();
+                if (widget.widget.zIndex != target) {
+                    var shifted = widget.withZIndex(target);
+                    widgetsByZIndex.remove(widget.widget.zIndex);
+                    widgetsByZIndex.put(target, shifted);
+                    replaceShifted(widget, shifted);
+                    cursor.moved++;
+                }
+                cursor.placed = target;
+                next = cursor.next(widgetsByZIndex);
+            }
+            if (cursor.moved != moved) {
+                markModified();
+            }
+            return next != null;
+        }
+
+        @Override
+        public int compactZIndexes() {
+            var upwards = new CompactionCursor(true);
+            var downwards = new CompactionCursor(false);
+            compactSlice(upwards, Integer.MAX_VALUE);
+            compactSlice(downwards, Integer.MAX_VALUE);
+            return upwards.moved + downwards.moved;
+        }
+
+        @Override
+        public List<Widget<ID>> reorder(Collection<ID> ids, ReorderPosition position) throws ArithmeticException {
+            var idSet = new HashSet<>(ids);
+            var selected = new ArrayList<WidgetDao<ID>>();
+            for (var id : idSet) {
+                var widget = widgetsById.get(id);
+                if (widget != null) {
+                    selected.add(widget);
+                }
+            }
+            selected.sort(Comparator.comparingInt(w -> w.widget.zIndex));
+            var front = position == ReorderPosition.front;
+            // the nearest widget to stay in place, at most all selected widgets are skipped to find it
+            Integer bound = null;
+            for (var widget : front ? widgetsByZIndex.descendingMap().values() : widgetsByZIndex.values()) {
+                if (!idSet.contains(widget.id)) {
+                    bound = widget.widget.zIndex;
+                    break;
+                }
+            }
+            if (bound == null) {
+                // no other widgets, selected ones are already in front of and behind them
+                return selected.stream().map(WidgetDao::toWidget).collect(Collectors.toList());
+            }
+            var base = front ? (long) bound + 1 : (long) bound - selected.size();
+            if (base + selected.size() - 1 > Integer.MAX_VALUE || base < Integer.MIN_VALUE) {
+                throw new ArithmeticException("No room to move " + selected.size() + " widgets to " + position);
             }
+            // all target zIndexes are free or occupied by selected widgets, so moved ones are removed first
+            var moved = new ArrayList<WidgetDao<ID>>();
+            for (int i = 0; i < selected.size(); i++) {
+                var widget = selected.get(i);
+                var target = (int) (base + i);
+                if (widget.widget.zIndex != target) {
+                    widgetsByZIndex.remove(widget.widget.zIndex);
+                    var shifted = widget.withZIndex(target);
+                    replaceShifted(widget, shifted);
+                    selected.set(i, shifted);
+                    moved.add(shifted);
+                }
+            }
+            for (var widget : moved) {
+                widgetsByZIndex.put(widget.widget.zIndex, widget);
+            }
+            if (!moved.isEmpty()) {
+                markModified();
+            }
+            return selected.stream().map(WidgetDao::toWidget).collect(Collectors.toList());
+        }
+
+        @Override
+        public List<Widget<ID>> translate(Collection<ID> ids, int dx, int dy, long updatedAt) throws ArithmeticException {
+            var oldWidgets = new ArrayList<WidgetDao<ID>>();
+            for (var id : new HashSet<>(ids)) {
+                var widget = widgetsById.get(id);
+                if (widget != null) {
+                    oldWidgets.add(widget);
+                }
+            }
+            // build all new entries first, so that overflow leaves repository untouched
+            var newWidgets = new ArrayList<WidgetDao<ID>>(oldWidgets.size());
+            for (var oldWidget : oldWidgets) {
+                var w = oldWidget.widget;
+                newWidgets.add(oldWidget.next(new Widget<>(
+                        w.id, Math.addExact(w.x, dx), Math.addExact(w.y, dy), w.zIndex, w.width, w.height, updatedAt, w.version
+                )));
+            }
+            // zIndexes are the same, so entries are replaced in place
+            for (int i = 0; i < oldWidgets.size(); i++) {
+                var newWidget = newWidgets.get(i);
+                removeFromIndexes(oldWidgets.get(i));
+                widgetsById.put(newWidget.id, newWidget);
+                widgetsByZIndex.put(newWidget.widget.zIndex, newWidget);
+                addToIndexes(newWidget);
+            }
+            if (!newWidgets.isEmpty()) {
+                markModified();
+            }
+            return newWidgets
+                    .stream()
+                    .map(WidgetDao::toWidget)
+                    .sorted(Comparator.comparingInt(w -> w.zIndex))
+                    .collect(Collectors.toList());
         }
 
         @Override
@@ -278,23 +569,55 @@ public class InMemoryWidgetRepository<ID> implements WidgetRepository<ID> {
         }
     }
 
-    private final InternalInMemoryWidgetRepository<ID> internal;
+    /**
+     * Progress of zIndex compaction in one direction from zero
+     */
+    protected static class CompactionCursor {
+        final boolean upwards;
+        // zIndex of the last renumbered widget
+        int placed;
+        int moved;
+
+        CompactionCursor(boolean upwards) {
+            this.upwards = upwards;
+            this.placed = upwards ? -1 : 0;
+        }
+
+        <V> Map.Entry<Integer, V> next(TreeMap<Integer, V> widgetsByZIndex) {
+            return upwards ? widgetsByZIndex.higherEntry(placed) : widgetsByZIndex.lowerEntry(placed);
+        }
+    }
+
+    // max number of widgets, renumbered under one write lock acquisition by compaction
+    protected static final int COMPACTION_SLICE_SIZE = 256;
+
+    protected final InternalInMemoryWidgetRepository<ID> internal;
     // rwlock to protect internal repo from concurrent writes or read/write
     // couldn't use thread-safe map impls as multiple maps must be changed concurrently
-    private final ClosableReentrantReadWriteLock rwLock = new ClosableReentrantReadWriteLock(true);
+    protected final ClosableReentrantReadWriteLock rwLock;
 
     public InMemoryWidgetRepository(Iterable<Widget<ID>> widgets, IdGenerator<ID> idGenerator) throws ZIndexConflictException {
         internal = new InternalInMemoryWidgetRepository<>(widgets, idGenerator);
+        rwLock = new ClosableReentrantReadWriteLock(true);
     }
 
-    public InMemoryWidgetRepository(IdGenerator<ID> idGenerator) {
+    /**
+     * @param rwLock lock to guard repository with, not shared with anything else
+     */
+    public InMemoryWidgetRepository(IdGenerator<ID> idGenerator, ClosableReentrantReadWriteLock rwLock) {
         internal = new InternalInMemoryWidgetRepository<>(idGenerator);
+        this.rwLock = rwLock;
+    }
+
+    public InMemoryWidgetRepository(IdGenerator<ID> idGenerator) {
+        this(idGenerator, new ClosableReentrantReadWriteLock(true));
     }
 
     @Override
     public Widget<ID> add(WidgetCreateDto widgetDto) throws ZIndexConflictException {
+        var id = internal.generateId();
         try (var ignored = rwLock.writeLock()) {
-            return internal.add(widgetDto);
+            return internal.add(id, widgetDto);
         }
     }
 
@@ -312,6 +635,20 @@ public class InMemoryWidgetRepository<ID> implements WidgetRepository<ID> {
         }
     }
 
+    @Override
+    public Optional<Widget<ID>> save(Widget<ID> widget, long expectedVersion) throws ZIndexConflictException, VersionConflictException {
+        try (var ignored = rwLock.writeLock()) {
+            return internal.save(widget, expectedVersion);
+        }
+    }
+
+    @Override
+    public Optional<Widget<ID>> update(ID id, UnaryOperator<Widget<ID>> update) throws ZIndexConflictException {
+        try (var ignored = rwLock.writeLock()) {
+            return internal.update(id, update);
+        }
+    }
+
     @Override
     public void save(Iterable<Widget<ID>> widgets) throws ZIndexConflictException {
         try (var ignored = rwLock.writeLock()) {
@@ -321,9 +658,7 @@ public class InMemoryWidgetRepository<ID> implements WidgetRepository<ID> {
 
     @Override
     public Optional<Widget<ID>> getById(ID id) {
-        try (var ignored = rwLock.readLock()) {
-            return internal.getById(id);
-        }
+        return rwLock.optimisticRead(() -> internal.getById(id));
     }
 
     @Override
@@ -333,6 +668,11 @@ public class InMemoryWidgetRepository<ID> implements WidgetRepository<ID> {
         }
     }
 
+    @Override
+    public List<Widget<ID>> getByIds(Collection<ID> ids) {
+        return rwLock.optimisticRead(() -> internal.getByIds(ids));
+    }
+
     @Override
     public List<Widget<ID>> getInArea(Area area) {
         try (var ignored = rwLock.readLock()) {
@@ -340,6 +680,83 @@ public class InMemoryWidgetRepository<ID> implements WidgetRepository<ID> {
         }
     }
 
+    @Override
+    public List<Widget<ID>> findOverlapping(Area area, ID excludeId) {
+        try (var ignored = rwLock.readLock()) {
+            return internal.findOverlapping(area, excludeId);
+        }
+    }
+
+    @Override
+    public boolean anyOverlapping(Area area) {
+        try (var ignored = rwLock.readLock()) {
+            return internal.anyOverlapping(area);
+        }
+    }
+
+    @Override
+    public int countInArea(Area area) {
+        try (var ignored = rwLock.readLock()) {
+            return internal.countInArea(area);
+        }
+    }
+
+    @Override
+    public Optional<Area> boundingBox() {
+        try (var ignored = rwLock.readLock()) {
+            return internal.boundingBox();
+        }
+    }
+
+    @Override
+    public int[][] histogram(Area area, int gridSize) {
+        try (var ignored = rwLock.readLock()) {
+            return internal.histogram(area, gridSize);
+        }
+    }
+
+    @Override
+    public List<Widget<ID>> nearest(int x, int y, int k) throws IllegalArgumentException {
+        try (var ignored = rwLock.readLock()) {
+            return internal.nearest(x, y, k);
+        }
+    }
+
+    @Override
+    public AreaSummary summarize(Area area, int gridSize) throws IllegalArgumentException {
+        try (var ignored = rwLock.readLock()) {
+            return internal.summarize(area, gridSize);
+        }
+    }
+
+    @Override
+    public void forEach(Consumer<? super Widget<ID>> consumer) {
+        try (var ignored = rwLock.readLock()) {
+            internal.forEach(consumer);
+        }
+    }
+
+    @Override
+    public void forEachInArea(Area area, Consumer<? super Widget<ID>> consumer) {
+        try (var ignored = rwLock.readLock()) {
+            internal.forEachInArea(area, consumer);
+        }
+    }
+
+    @Override
+    public List<Widget<ID>> getPage(Integer afterZIndex, int limit) {
+        try (var ignored = rwLock.readLock()) {
+            return internal.getPage(afterZIndex, limit);
+        }
+    }
+
+    @Override
+    public List<Widget<ID>> getInAreaPage(Area area, Integer afterZIndex, int limit) {
+        try (var ignored = rwLock.readLock()) {
+            return internal.getInAreaPage(area, afterZIndex, limit);
+        }
+    }
+
     @Override
     public Optional<Widget<ID>> deleteAndReturnById(ID id) {
         try (var ignored = rwLock.writeLock()) {
@@ -354,6 +771,20 @@ public class InMemoryWidgetRepository<ID> implements WidgetRepository<ID> {
         }
     }
 
+    @Override
+    public int deleteByIds(Collection<ID> ids) {
+        try (var ignored = rwLock.writeLock()) {
+            return internal.deleteByIds(ids);
+        }
+    }
+
+    @Override
+    public int deleteInArea(Area area) {
+        try (var ignored = rwLock.writeLock()) {
+            return internal.deleteInArea(area);
+        }
+    }
+
     @Override
     public void deleteAll() {
         try (var ignored = rwLock.writeLock()) {
@@ -363,15 +794,48 @@ public class InMemoryWidgetRepository<ID> implements WidgetRepository<ID> {
 
     @Override
     public Optional<Integer> getMaxZIndex() {
-        try (var ignored = rwLock.readLock()) {
-            return internal.getMaxZIndex();
+        return rwLock.optimisticRead(internal::getMaxZIndex);
+    }
+
+    @Override
+    public long getVersion() {
+        return internal.getVersion();
+    }
+
+    @Override
+    public int shiftUpwards(Integer zIndex) throws ArithmeticException {
+        try (var ignored = rwLock.writeLock()) {
+            return internal.shiftUpwards(zIndex);
+        }
+    }
+
+    @Override
+    public int compactZIndexes() {
+        var moved = 0;
+        for (var cursor : List.of(new CompactionCursor(true), new CompactionCursor(false))) {
+            boolean more;
+            do {
+                // lock is released between slices to let other operations through
+                try (var ignored = rwLock.writeLock()) {
+                    more = internal.compactSlice(cursor, COMPACTION_SLICE_SIZE);
+                }
+            } while (more);
+            moved += cursor.moved;
+        }
+        return moved;
+    }
+
+    @Override
+    public List<Widget<ID>> reorder(Collection<ID> ids, ReorderPosition position) throws ArithmeticException {
+        try (var ignored = rwLock.writeLock()) {
+            return internal.reorder(ids, position);
         }
     }
 
     @Override
-    public void shiftUpwards(Integer zIndex) throws ArithmeticException {
+    public List<Widget<ID>> translate(Collection<ID> ids, int dx, int dy, long updatedAt) throws ArithmeticException {
         try (var ignored = rwLock.writeLock()) {
-            internal.shiftUpwards(zIndex);
+            return internal.translate(ids, dx, dy, updatedAt);
         }
     }
 
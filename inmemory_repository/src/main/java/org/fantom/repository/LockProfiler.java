@@ -0,0 +1,145 @@
+package org.fantom.repository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock listener, that finds out code, holding the lock for longest time in total, and reports long holds to JFR.
+ * Call sites are taken from stack of every {@code samplingInterval}-th, on average, release,
+ * so profiler costs a stack walk only for a small share of lock usages.
+ * Holds longer than {@code longHoldNanos} are committed as {@link LongLockHoldEvent}, if it is enabled in JFR recording
+ */
+public class LockProfiler implements ClosableReentrantReadWriteLock.Listener {
+    public static final int DEFAULT_SAMPLING_INTERVAL = 64;
+
+    /**
+     * Statistics of sampled lock holds by one call site
+     */
+    public static class CallSite {
+        /**
+         * Method, that released the lock, as class#method:line
+         */
+        public final String location;
+        public final boolean write;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalHoldNanos = new LongAdder();
+        private final LongAccumulator maxHoldNanos = new LongAccumulator(Math::max, 0);
+
+        private CallSite(String location, boolean write) {
+            this.location = location;
+            this.write = write;
+        }
+
+        private void record(long holdNanos) {
+            count.increment();
+            totalHoldNanos.add(holdNanos);
+            maxHoldNanos.accumulate(holdNanos);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getTotalHoldNanos() {
+            return totalHoldNanos.sum();
+        }
+
+        public long getMaxHoldNanos() {
+            return maxHoldNanos.get();
+        }
+    }
+
+    private final ClosableReentrantReadWriteLock.Listener delegate;
+    private final long longHoldNanos;
+    private final int samplingInterval;
+    private final ConcurrentHashMap<String, CallSite> callSites = new ConcurrentHashMap<>();
+    private final StackWalker stackWalker = StackWalker.getInstance();
+    // set after lock creation, as lock takes its listener in constructor
+    private volatile ClosableReentrantReadWriteLock lock;
+
+    /**
+     * @param delegate listener to pass all lock usages to, e.g. one that records metrics, or null
+     * @param longHoldNanos min hold time to report to JFR
+     * @param samplingInterval average number of lock holds per one call site sample
+     */
+    public LockProfiler(ClosableReentrantReadWriteLock.Listener delegate, long longHoldNanos, int samplingInterval) {
+        if (samplingInterval < 1) {
+            throw new IllegalArgumentException("samplingInterval must be positive, got " + samplingInterval);
+        }
+        this.delegate = delegate;
+        this.longHoldNanos = longHoldNanos;
+        this.samplingInterval = samplingInterval;
+    }
+
+    /**
+     * @param lock profiled lock, to report its queue length in JFR events
+     */
+    public void setLock(ClosableReentrantReadWriteLock lock) {
+        this.lock = lock;
+    }
+
+    @Override
+    public void acquired(boolean write, long waitNanos) {
+        if (delegate != null) {
+            delegate.acquired(write, waitNanos);
+        }
+    }
+
+    @Override
+    public void released(boolean write, long holdNanos) {
+        if (delegate != null) {
+            delegate.released(write, holdNanos);
+        }
+        if (holdNanos >= longHoldNanos) {
+            var event = new LongLockHoldEvent();
+            if (event.isEnabled()) {
+                var lock = this.lock;
+                event.write = write;
+                event.holdTime = holdNanos;
+                event.queueLength = lock == null ? 0 : lock.getQueueLength();
+                event.commit();
+            }
+        }
+        if (samplingInterval == 1 || ThreadLocalRandom.current().nextInt(samplingInterval) == 0) {
+            var location = callSite();
+            callSites.computeIfAbsent((write ? "write " : "read ") + location, ignored -> new CallSite(location, write))
+                    .record(holdNanos);
+        }
+    }
+
+    // first frame outside of lock and its listeners, i.e. the method, that used the lock
+    private String callSite() {
+        return stackWalker.walk(frames -> frames
+                .filter(frame -> !isLockFrame(frame.getClassName()))
+                .findFirst()
+                .map(frame -> frame.getClassName() + "#" + frame.getMethodName() + ":" + frame.getLineNumber())
+                .orElse("unknown"));
+    }
+
+    private static boolean isLockFrame(String className) {
+        return className.startsWith(ClosableReentrantReadWriteLock.class.getName())
+                || className.startsWith(LockProfiler.class.getName());
+    }
+
+    /**
+     * @param limit max number of call sites to return
+     * @return sampled call sites, that held the lock for longest time in total, the longest first
+     */
+    public List<CallSite> topHolders(int limit) {
+        var result = new ArrayList<>(callSites.values());
+        result.sort(Comparator.comparingLong(CallSite::getTotalHoldNanos).reversed());
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    /**
+     * Forget sampled call sites, e.g. to profile a new time period
+     */
+    public void reset() {
+        callSites.clear();
+    }
+}
@@ -0,0 +1,23 @@
+package org.fantom.repository;
+
+/**
+ * Implementation of {@link ClosableReentrantReadWriteLock}
+ */
+public enum LockType {
+    /**
+     * Fair {@link java.util.concurrent.locks.ReentrantReadWriteLock}: threads get the lock in arrival order,
+     * which prevents starvation of writers, but makes every acquisition under contention a hand-off between threads
+     */
+    fair,
+    /**
+     * Non-fair {@link java.util.concurrent.locks.ReentrantReadWriteLock}: running thread may barge ahead
+     * of queued ones, which gives higher throughput, but may starve writers
+     */
+    unfair,
+    /**
+     * {@link java.util.concurrent.locks.StampedLock}: cheaper to acquire, but not reentrant,
+     * so thread, holding the lock, must not acquire it once more, it gets {@link IllegalStateException} then.
+     * Allows optimistic reads, see {@link ClosableReentrantReadWriteLock#optimisticRead}
+     */
+    stamped
+}
@@ -0,0 +1,31 @@
+package org.fantom.repository;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event, committed by {@link LockProfiler} on release of repository lock, held longer than configured threshold.
+ * Stack trace of the event points to the code, that held the lock
+ */
+@Name("org.fantom.repository.LongLockHold")
+@Label("Long Lock Hold")
+@Category({"Widgets", "Repository"})
+@Description("Repository lock was held longer than threshold")
+@StackTrace
+class LongLockHoldEvent extends Event {
+    @Label("Write")
+    boolean write;
+
+    @Label("Hold Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long holdTime;
+
+    @Label("Queue Length")
+    @Description("Number of threads waiting for the lock at release")
+    int queueLength;
+}
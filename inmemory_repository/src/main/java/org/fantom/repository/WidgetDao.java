@@ -2,51 +2,50 @@ package org.fantom.repository;
 
 import org.fantom.domain.Widget;
 
-import java.util.Date;
 import java.util.Objects;
 
+/**
+ * Storage entry of in-memory repository.
+ * Wrapped widget is immutable, so it is handed out to readers as is, without copying.
+ * Any change, including zIndex shift, replaces the entry with a new one.
+ * Entries are equal when their ids are equal, so new entry may be used to find the old one in indexes
+ * @param <ID> type of widget id
+ */
 public final class WidgetDao<ID> {
     /**
      * Widget identifier, unique among all widgets
      */
     public final ID id;
     /**
-     * x-coordinate of left-bottom vertex
+     * Stored widget
      */
-    public final int x;
-    /**
-     * y-coordinate of left-bottom vertex
-     */
-    public final int y;
-    /**
-     * Widget width
-     */
-    public final int width;
-    /**
-     * Widget height
-     */
-    public final int height;
+    public final Widget<ID> widget;
+
+    public WidgetDao(Widget<ID> widget) {
+        this.id = widget.id;
+        this.widget = widget;
+    }
+
     /**
-     * z-coordinate of widget's plane, unique among all widgets, regardless of their coordinates
+     * @param zIndex new zIndex
+     * @return new entry, which widget differs from this one only by zIndex and the next version
      */
-    public int zIndex;
+    public WidgetDao<ID> withZIndex(int zIndex) {
+        var w = widget;
+        return new WidgetDao<>(new Widget<>(w.id, w.x, w.y, zIndex, w.width, w.height, w.updatedAt, w.version + 1));
+    }
+
     /**
-     * Widget's create or last modification date
+     * @param widget new state of stored widget
+     * @return entry to replace this one with, that contains given widget with the next version
      */
-    public final Date updatedAt;
-
-    public WidgetDao(Widget<ID> widget) {
-        this.id = widget.id;
-        this.x = widget.x;
-        this.y = widget.y;
-        this.zIndex = widget.zIndex;
-        this.width = widget.width;
-        this.height = widget.height;
-        this.updatedAt = widget.updatedAt;
+    public WidgetDao<ID> next(Widget<ID> widget) {
+        var w = widget;
+        return new WidgetDao<>(new Widget<>(w.id, w.x, w.y, w.zIndex, w.width, w.height, w.updatedAt, this.widget.version + 1));
     }
 
     public Widget<ID> toWidget() {
-        return new Widget<>(id, x, y, zIndex, width, height, updatedAt);
+        return widget;
     }
 
     @Override
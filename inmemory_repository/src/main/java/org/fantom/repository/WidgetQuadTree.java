@@ -0,0 +1,501 @@
+package org.fantom.repository;
+
+import org.fantom.domain.Widget;
+import org.fantom.repositories.widget.dto.Area;
+import org.fantom.repositories.widget.dto.AreaSummary;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * Spatial index of in-memory repository: bucket point quadtree over bottom-left vertices of widgets.
+ * Every node keeps number of widgets in its subtree and their bounding box, so area queries skip subtrees,
+ * which cannot have widgets in area, and count subtrees, which lie in area entirely, without visiting their widgets.
+ * Not thread-safe
+ * @param <ID> type of widget id
+ */
+final class WidgetQuadTree<ID> {
+    /**
+     * Max number of widgets in a leaf, before it is split into quadrants
+     */
+    static final int BUCKET_SIZE = 16;
+
+    private final class Node {
+        // quadrant of bottom-left vertices of subtree widgets: [x0, x0 + size) x [y0, y0 + size)
+        final long x0;
+        final long y0;
+        final long size;
+        int count;
+        // bounding box of subtree widgets, valid only when count > 0
+        long minX;
+        long minY;
+        long maxX;
+        long maxY;
+        // widgets of leaf, null for inner node
+        List<WidgetDao<ID>> widgets = new ArrayList<>();
+        // quadrants of inner node: bottom-left, bottom-right, top-left, top-right, null for leaf
+        List<Node> children;
+
+        Node(long x0, long y0, long size) {
+            this.x0 = x0;
+            this.y0 = y0;
+            this.size = size;
+        }
+
+        Node child(Widget<ID> widget) {
+            var half = size / 2;
+            var i = (widget.x >= x0 + half ? 1 : 0) + (widget.y >= y0 + half ? 2 : 0);
+            return children.get(i);
+        }
+
+        /**
+         * Extend bounding box to the given one
+         * @param first whether it is the first box, included after bounding box is reset
+         */
+        void include(long left, long bottom, long right, long top, boolean first) {
+            minX = first ? left : Math.min(minX, left);
+            minY = first ? bottom : Math.min(minY, bottom);
+            maxX = first ? right : Math.max(maxX, right);
+            maxY = first ? top : Math.max(maxY, top);
+        }
+
+        void include(Widget<ID> widget, boolean first) {
+            include(widget.x, widget.y, (long) widget.x + widget.width, (long) widget.y + widget.height, first);
+        }
+
+        void add(WidgetDao<ID> widget) {
+            include(widget.widget, count++ == 0);
+            widgets.add(widget);
+        }
+
+        // shrinks bounding box after removal of a widget from subtree
+        void recalculate() {
+            var first = true;
+            if (children == null) {
+                for (var widget : widgets) {
+                    include(widget.widget, first);
+                    first = false;
+                }
+            } else {
+                for (var child : children) {
+                    if (child.count > 0) {
+                        include(child.minX, child.minY, child.maxX, child.maxY, first);
+                        first = false;
+                    }
+                }
+            }
+        }
+
+        boolean intersects(Area area) {
+            return minX <= area.right && maxX >= area.left && minY <= area.top && maxY >= area.bottom;
+        }
+
+        // whether some subtree widget may overlap area
+        boolean mayOverlap(Area area) {
+            return minX < area.right && maxX > area.left && minY < area.top && maxY > area.bottom;
+        }
+
+        boolean inside(Area area) {
+            return minX >= area.left && maxX <= area.right && minY >= area.bottom && maxY <= area.top;
+        }
+
+        /**
+         * @return squared distance from point to bounding box, lower bound of distances to subtree widgets
+         */
+        double distanceSquared(long x, long y) {
+            var dx = Math.max(0, Math.max(minX - x, x - maxX));
+            var dy = Math.max(0, Math.max(minY - y, y - maxY));
+            return (double) dx * dx + (double) dy * dy;
+        }
+
+        // vertices of all subtree widgets lie in the intersection of quadrant and bounding box
+
+        long vertexLeft() {
+            return Math.max(x0, minX);
+        }
+
+        long vertexRight() {
+            return Math.min(x0 + size - 1, maxX);
+        }
+
+        long vertexBottom() {
+            return Math.max(y0, minY);
+        }
+
+        long vertexTop() {
+            return Math.min(y0 + size - 1, maxY);
+        }
+    }
+
+    private Node root = newRoot();
+
+    private Node newRoot() {
+        // covers all int coordinates
+        return new Node(Integer.MIN_VALUE, Integer.MIN_VALUE, 1L << 32);
+    }
+
+    public int size() {
+        return root.count;
+    }
+
+    public void add(WidgetDao<ID> widget) {
+        var node = root;
+        while (node.children != null) {
+            node.include(widget.widget, node.count++ == 0);
+            node = node.child(widget.widget);
+        }
+        node.add(widget);
+        if (node.widgets.size() > BUCKET_SIZE) {
+            split(node);
+        }
+    }
+
+    private void split(Node node) {
+        if (node.size == 1 || samePoint(node.widgets)) {
+            // widgets at the same point can't be separated by splitting
+            return;
+        }
+        var half = node.size / 2;
+        node.children = List.of(
+                new Node(node.x0, node.y0, half),
+                new Node(node.x0 + half, node.y0, half),
+                new Node(node.x0, node.y0 + half, half),
+                new Node(node.x0 + half, node.y0 + half, half)
+        );
+        for (var widget : node.widgets) {
+            node.child(widget.widget).add(widget);
+        }
+        node.widgets = null;
+        for (var child : node.children) {
+            if (child.widgets.size() > BUCKET_SIZE) {
+                split(child);
+            }
+        }
+    }
+
+    private static <ID> boolean samePoint(List<WidgetDao<ID>> widgets) {
+        var first = widgets.get(0).widget;
+        for (var widget : widgets) {
+            if (widget.widget.x != first.x || widget.widget.y != first.y) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param widget entry to remove, found by its position and id
+     * @return whether entry was in index
+     */
+    public boolean remove(WidgetDao<ID> widget) {
+        var path = new ArrayList<Node>();
+        var node = root;
+        while (node.children != null) {
+            path.add(node);
+            node = node.child(widget.widget);
+        }
+        if (!node.widgets.remove(widget)) {
+            return false;
+        }
+        node.count--;
+        node.recalculate();
+        for (int i = path.size() - 1; i >= 0; i--) {
+            var parent = path.get(i);
+            parent.count--;
+            if (parent.count <= BUCKET_SIZE) {
+                // merge sparse subtree back into a leaf
+                var widgets = new ArrayList<WidgetDao<ID>>(parent.count);
+                collect(parent, widgets);
+                parent.children = null;
+                parent.widgets = widgets;
+            }
+            parent.recalculate();
+        }
+        return true;
+    }
+
+    private void collect(Node node, List<WidgetDao<ID>> result) {
+        if (node.children == null) {
+            result.addAll(node.widgets);
+        } else {
+            for (var child : node.children) {
+                collect(child, result);
+            }
+        }
+    }
+
+    /**
+     * Replace entry with a new one with the same id and position, e.g. when only zIndex is changed
+     */
+    public void replace(WidgetDao<ID> oldWidget, WidgetDao<ID> newWidget) {
+        var node = root;
+        while (node.children != null) {
+            node = node.child(oldWidget.widget);
+        }
+        node.widgets.set(node.widgets.indexOf(oldWidget), newWidget);
+    }
+
+    public void clear() {
+        root = newRoot();
+    }
+
+    /**
+     * Pass widgets, falling into area entirely, to consumer in no particular order
+     */
+    public void forEachInArea(Area area, Consumer<? super Widget<ID>> consumer) {
+        forEachInArea(root, area, consumer);
+    }
+
+    private void forEachInArea(Node node, Area area, Consumer<? super Widget<ID>> consumer) {
+        if (node.count == 0 || !node.intersects(area)) {
+            return;
+        }
+        if (node.children == null) {
+            for (var widget : node.widgets) {
+                if (area.contains(widget.widget)) {
+                    consumer.accept(widget.widget);
+                }
+            }
+        } else {
+            for (var child : node.children) {
+                forEachInArea(child, area, consumer);
+            }
+        }
+    }
+
+    /**
+     * Pass widgets, overlapping area, see {@link Area#overlaps}, to consumer in no particular order
+     */
+    public void forEachOverlapping(Area area, Consumer<? super Widget<ID>> consumer) {
+        forEachOverlapping(root, area, consumer);
+    }
+
+    private void forEachOverlapping(Node node, Area area, Consumer<? super Widget<ID>> consumer) {
+        if (node.count == 0 || !node.mayOverlap(area)) {
+            return;
+        }
+        if (node.children == null) {
+            for (var widget : node.widgets) {
+                if (area.overlaps(widget.widget)) {
+                    consumer.accept(widget.widget);
+                }
+            }
+        } else {
+            for (var child : node.children) {
+                forEachOverlapping(child, area, consumer);
+            }
+        }
+    }
+
+    /**
+     * @return whether any widget overlaps area, the rest of index is not visited after the first one is found
+     */
+    public boolean anyOverlapping(Area area) {
+        return anyOverlapping(root, area);
+    }
+
+    private boolean anyOverlapping(Node node, Area area) {
+        if (node.count == 0 || !node.mayOverlap(area)) {
+            return false;
+        }
+        if (node.children == null) {
+            for (var widget : node.widgets) {
+                if (area.overlaps(widget.widget)) {
+                    return true;
+                }
+            }
+        } else {
+            for (var child : node.children) {
+                if (anyOverlapping(child, area)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return number of widgets, falling into area entirely
+     */
+    public int countInArea(Area area) {
+        return countInArea(root, area);
+    }
+
+    private int countInArea(Node node, Area area) {
+        if (node.count == 0 || !node.intersects(area)) {
+            return 0;
+        } else if (node.inside(area)) {
+            return node.count;
+        }
+        var count = 0;
+        if (node.children == null) {
+            for (var widget : node.widgets) {
+                if (area.contains(widget.widget)) {
+                    count++;
+                }
+            }
+        } else {
+            for (var child : node.children) {
+                count += countInArea(child, area);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the smallest area, containing all widgets, or none if index is empty
+     */
+    public Optional<Area> boundingBox() {
+        if (root.count == 0) {
+            return Optional.empty();
+        }
+        // right and top edges of widgets may be beyond int range
+        return Optional.of(new Area(
+                (int) root.minX,
+                (int) Math.min(root.maxX, Integer.MAX_VALUE),
+                (int) root.minY,
+                (int) Math.min(root.maxY, Integer.MAX_VALUE)
+        ));
+    }
+
+    /**
+     * @see org.fantom.repositories.widget.WidgetRepository#histogram(Area, int)
+     */
+    public int[][] histogram(Area area, int gridSize) throws IllegalArgumentException {
+        if (gridSize < 1) {
+            throw new IllegalArgumentException("grid size must be positive, got " + gridSize);
+        }
+        var histogram = new int[gridSize][gridSize];
+        histogram(root, area, gridSize, histogram);
+        return histogram;
+    }
+
+    private void histogram(Node node, Area area, int gridSize, int[][] histogram) {
+        if (node.count == 0 || !node.intersects(area)) {
+            return;
+        }
+        if (node.inside(area)) {
+            var fromColumn = area.column(node.vertexLeft(), gridSize);
+            var toColumn = area.column(node.vertexRight(), gridSize);
+            var fromRow = area.row(node.vertexBottom(), gridSize);
+            var toRow = area.row(node.vertexTop(), gridSize);
+            if (fromColumn == toColumn && fromRow == toRow) {
+                histogram[fromRow][fromColumn] += node.count;
+                return;
+            }
+        }
+        if (node.children == null) {
+            for (var widget : node.widgets) {
+                if (area.contains(widget.widget)) {
+                    histogram[area.row(widget.widget.y, gridSize)][area.column(widget.widget.x, gridSize)]++;
+                }
+            }
+        } else {
+            for (var child : node.children) {
+                histogram(child, area, gridSize, histogram);
+            }
+        }
+    }
+
+    // either node or widget, waiting in the queue of nearest widgets search
+    private final class Candidate {
+        final double distance;
+        final Node node;
+        final Widget<ID> widget;
+
+        Candidate(double distance, Node node, Widget<ID> widget) {
+            this.distance = distance;
+            this.node = node;
+            this.widget = widget;
+        }
+    }
+
+    // nodes go before widgets at the same distance, so that widgets at that distance are ordered by zIndex
+    private final Comparator<Candidate> candidateOrder = Comparator
+            .<Candidate>comparingDouble(c -> c.distance)
+            .thenComparing(c -> c.node == null)
+            .thenComparing(c -> c.widget == null ? 0 : -(long) c.widget.zIndex);
+
+    /**
+     * Best-first search: nodes and widgets are visited in order of distance, so that only nodes, closer than
+     * the k-th nearest widget, are expanded
+     * @see org.fantom.repositories.widget.WidgetRepository#nearest(int, int, int)
+     */
+    public List<Widget<ID>> nearest(int x, int y, int k) throws IllegalArgumentException {
+        if (k < 1) {
+            throw new IllegalArgumentException("number of widgets must be positive, got " + k);
+        }
+        var result = new ArrayList<Widget<ID>>(Math.min(k, root.count));
+        var queue = new PriorityQueue<>(candidateOrder);
+        if (root.count > 0) {
+            queue.add(new Candidate(root.distanceSquared(x, y), root, null));
+        }
+        while (result.size() < k && !queue.isEmpty()) {
+            var candidate = queue.poll();
+            if (candidate.widget != null) {
+                result.add(candidate.widget);
+            } else if (candidate.node.children == null) {
+                for (var widget : candidate.node.widgets) {
+                    queue.add(new Candidate(widget.widget.distanceSquared(x, y), null, widget.widget));
+                }
+            } else {
+                for (var child : candidate.node.children) {
+                    if (child.count > 0) {
+                        queue.add(new Candidate(child.distanceSquared(x, y), child, null));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @see org.fantom.repositories.widget.WidgetRepository#summarize(Area, int)
+     */
+    public AreaSummary summarize(Area area, int gridSize) throws IllegalArgumentException {
+        var summary = new AreaSummary.Builder(gridSize);
+        summarize(root, area, gridSize, summary);
+        return summary.build();
+    }
+
+    private void summarize(Node node, Area area, int gridSize, AreaSummary.Builder summary) {
+        if (node.count == 0) {
+            return;
+        }
+        var left = node.vertexLeft();
+        var right = node.vertexRight();
+        var bottom = node.vertexBottom();
+        var top = node.vertexTop();
+        if (left > area.right || right < area.left || bottom > area.top || top < area.bottom) {
+            return;
+        }
+        if (left >= area.left && right <= area.right && bottom >= area.bottom && top <= area.top) {
+            var row = area.row(bottom, gridSize);
+            var column = area.column(left, gridSize);
+            if (row == area.row(top, gridSize) && column == area.column(right, gridSize)) {
+                // the whole subtree falls into one tile
+                summary.add(row, column, node.count, node.minX, node.maxX, node.minY, node.maxY);
+                return;
+            }
+        }
+        if (node.children == null) {
+            for (var dao : node.widgets) {
+                var widget = dao.widget;
+                if (widget.x >= area.left && widget.x <= area.right && widget.y >= area.bottom && widget.y <= area.top) {
+                    summary.add(
+                            area.row(widget.y, gridSize), area.column(widget.x, gridSize), 1,
+                            widget.x, (long) widget.x + widget.width, widget.y, (long) widget.y + widget.height
+                    );
+                }
+            }
+        } else {
+            for (var child : node.children) {
+                summarize(child, area, gridSize, summary);
+            }
+        }
+    }
+}
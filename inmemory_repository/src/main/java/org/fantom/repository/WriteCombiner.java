@@ -0,0 +1,115 @@
+package org.fantom.repository;
+
+import org.fantom.repositories.widget.AtomicFunction;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Flat combining executor of mutations over not thread-safe target.
+ * Callers enqueue their mutations, and one of them, elected as combiner, waits for the write lock in the lock queue,
+ * like any other writer, and applies all pending mutations in one go, while the others park until their results
+ * are ready, instead of waiting for the lock. So under contention the lock changes hands once per batch
+ * rather than once per mutation, and fair lock still doesn't let readers starve writers
+ * @param <T> type of target to apply mutations to
+ */
+public class WriteCombiner<T> {
+    private static class Request<T> {
+        final AtomicFunction<T, ?, ?> action;
+        final Thread waiter = Thread.currentThread();
+        Object result;
+        Throwable error;
+        // written after result or error, so they are visible once done is
+        volatile boolean done;
+
+        Request(AtomicFunction<T, ?, ?> action) {
+            this.action = action;
+        }
+    }
+
+    private final T target;
+    private final ClosableReentrantReadWriteLock rwLock;
+    // max number of mutations applied under the lock at once, so combiner returns to its caller in bounded time
+    private final int maxBatchSize;
+    private final Queue<Request<T>> requests = new ConcurrentLinkedQueue<>();
+    // whether some caller is combiner now
+    private final AtomicBoolean combining = new AtomicBoolean();
+
+    /**
+     * @param target to apply mutations to, only under the write lock
+     * @param rwLock lock, that protects target from concurrent access
+     * @param maxBatchSize max number of mutations, applied by one combiner at once
+     */
+    public WriteCombiner(T target, ClosableReentrantReadWriteLock rwLock, int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be positive, got " + maxBatchSize);
+        }
+        this.target = target;
+        this.rwLock = rwLock;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Apply action to target under the write lock, possibly by other thread, together with other pending actions
+     * @return result of action
+     * @throws E exception thrown by action
+     */
+    @SuppressWarnings("unchecked")
+    public <R, E extends Exception> R execute(AtomicFunction<T, R, E> action) throws E {
+        var request = new Request<>(action);
+        requests.add(request);
+        while (!request.done) {
+            if (combining.compareAndSet(false, true)) {
+                try {
+                    // lock is released between batches, so that queued readers are not held up by long queue
+                    while (!request.done) {
+                        try (var ignored = rwLock.writeLock()) {
+                            combine();
+                        }
+                    }
+                } finally {
+                    combining.set(false);
+                    // hand over to the next caller, it could have found combiner busy after the last batch.
+                    // Caller, that enqueues request after this check, sees no combiner and becomes one itself
+                    var next = requests.peek();
+                    if (next != null) {
+                        LockSupport.unpark(next.waiter);
+                    }
+                }
+            } else {
+                // woken up by combiner, when request is done or combiner leaves
+                LockSupport.park(this);
+            }
+        }
+        var error = request.error;
+        if (error == null) {
+            return (R) request.result;
+        } else if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (error instanceof Error) {
+            throw (Error) error;
+        } else {
+            // only exceptions declared by action may be thrown here
+            throw (E) error;
+        }
+    }
+
+    // must be called under the write lock
+    private void combine() {
+        for (int i = 0; i < maxBatchSize; i++) {
+            var request = requests.poll();
+            if (request == null) {
+                return;
+            }
+            try {
+                request.result = request.action.run(target);
+            } catch (Throwable e) {
+                request.error = e;
+            }
+            request.done = true;
+            LockSupport.unpark(request.waiter);
+        }
+    }
+}
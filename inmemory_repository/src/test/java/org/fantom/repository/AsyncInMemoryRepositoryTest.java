@@ -0,0 +1,80 @@
+package org.fantom.repository;
+
+import org.fantom.repositories.widget.ExecutorAsyncWidgetRepository;
+import org.fantom.repositories.widget.dto.WidgetCreateDto;
+import org.fantom.repositories.widget.exceptions.ZIndexConflictException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AsyncInMemoryRepositoryTest {
+    private static final int QUEUE_CAPACITY = 1000;
+
+    private ExecutorAsyncWidgetRepository<Integer> repository;
+
+    @BeforeEach
+    public void createRepo() {
+        var nextId = new int[]{0};
+        repository = ExecutorAsyncWidgetRepository.singleWriter(new InMemoryWidgetRepository<>(() -> nextId[0]++), QUEUE_CAPACITY);
+    }
+
+    @AfterEach
+    public void closeRepo() {
+        repository.close();
+    }
+
+    @Test
+    public void writesAreAppliedInSubmissionOrder() throws ExecutionException, InterruptedException {
+        var futures = new ArrayList<CompletableFuture<?>>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(repository.add(new WidgetCreateDto(i, 0, i, 1, 1, System.currentTimeMillis())));
+        }
+        // submitted after all adds, so must see all of them
+        var all = repository.write(repo -> repo.getAll()).get();
+        assertEquals(100, all.size());
+        for (var future : futures) {
+            assertTrue(future.isDone());
+        }
+        var widget = all.get(42);
+        assertEquals(widget, repository.getById(widget.id).get().orElseThrow());
+    }
+
+    @Test
+    public void exceptionCompletesFuture() throws ExecutionException, InterruptedException {
+        repository.add(new WidgetCreateDto(0, 0, 0, 1, 1, System.currentTimeMillis())).get();
+        var conflicting = repository.add(new WidgetCreateDto(0, 0, 0, 1, 1, System.currentTimeMillis()));
+        var e = assertThrows(ExecutionException.class, conflicting::get);
+        assertTrue(e.getCause() instanceof ZIndexConflictException);
+    }
+
+    @Test
+    public void writesBeyondQueueCapacityAreRejected() throws ExecutionException, InterruptedException {
+        var release = new CountDownLatch(1);
+        // occupies the writer thread, until released
+        var blocking = repository.write(repo -> {
+            release.await();
+            return null;
+        });
+        var queued = new ArrayList<CompletableFuture<?>>();
+        for (int i = 0; i < QUEUE_CAPACITY; i++) {
+            queued.add(repository.add(new WidgetCreateDto(i, 0, i, 1, 1, System.currentTimeMillis())));
+        }
+        var rejected = repository.add(new WidgetCreateDto(0, 0, QUEUE_CAPACITY, 1, 1, System.currentTimeMillis()));
+        release.countDown();
+
+        var e = assertThrows(ExecutionException.class, rejected::get);
+        assertTrue(e.getCause() instanceof RejectedExecutionException);
+        blocking.get();
+        for (var future : queued) {
+            future.get();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package org.fantom.repository;
+
+import org.fantom.repositories.widget.RepositoryTest;
+import org.fantom.repositories.widget.dto.WidgetCreateDto;
+import org.fantom.repositories.widget.exceptions.ZIndexConflictException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DerivedCombiningInMemoryRepositoryTest extends RepositoryTest<Integer> {
+    public DerivedCombiningInMemoryRepositoryTest() {
+        super(new CombiningInMemoryWidgetRepository<>(new IntegerIdGenerator()));
+    }
+
+    @Override
+    public void resetRepo() {
+        repository = new CombiningInMemoryWidgetRepository<>(new IntegerIdGenerator(), 4);
+    }
+
+    @Test
+    public void concurrentMutationsAreAllApplied() throws InterruptedException, ExecutionException {
+        var threads = 8;
+        var widgetsPerThread = 500;
+        var executor = Executors.newFixedThreadPool(threads);
+        var start = new CountDownLatch(1);
+        var futures = new ArrayList<Future<?>>();
+        for (int t = 0; t < threads; t++) {
+            var thread = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < widgetsPerThread; i++) {
+                    var zIndex = thread * widgetsPerThread + i;
+                    var widget = repository.add(new WidgetCreateDto(0, 0, zIndex, 1, 1, System.currentTimeMillis()));
+                    if (i % 2 == 0) {
+                        assertTrue(repository.deleteById(widget.id));
+                    }
+                }
+                // every thread conflicts with the first widget of the next one
+                try {
+                    repository.add(new WidgetCreateDto(0, 0, ((thread + 1) % threads) * widgetsPerThread + 1, 1, 1, 0));
+                    fail("zIndex conflict exception was not thrown");
+                } catch (ZIndexConflictException ignored) {
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (var future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        var widgets = repository.getAll();
+        assertEquals(threads * widgetsPerThread / 2, widgets.size());
+        for (var widget : widgets) {
+            assertEquals(1, widget.zIndex % 2);
+        }
+    }
+
+    @Test
+    public void writesProgressUnderContinuousReads() throws InterruptedException, ExecutionException, TimeoutException {
+        repository = new CombiningInMemoryWidgetRepository<>(
+                new IntegerIdGenerator(),
+                4,
+                new ClosableReentrantReadWriteLock(LockType.fair)
+        );
+        var readers = 4;
+        var writers = 4;
+        var widgetsPerWriter = 200;
+        var executor = Executors.newFixedThreadPool(readers + writers);
+        var reading = new AtomicBoolean(true);
+        for (int t = 0; t < readers; t++) {
+            executor.submit(() -> {
+                // read lock is never free, while readers overlap
+                while (reading.get()) {
+                    repository.getAll();
+                }
+            });
+        }
+        var futures = new ArrayList<Future<?>>();
+        for (int t = 0; t < writers; t++) {
+            var writer = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < widgetsPerWriter; i++) {
+                    repository.add(new WidgetCreateDto(0, 0, writer * widgetsPerWriter + i, 1, 1, System.currentTimeMillis()));
+                }
+                return null;
+            }));
+        }
+        try {
+            for (var future : futures) {
+                // writers, waiting for the lock only by retries, could be starved by readers for ever
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            reading.set(false);
+            executor.shutdown();
+        }
+        assertEquals(writers * widgetsPerWriter, repository.getAll().size());
+    }
+}
@@ -0,0 +1,90 @@
+package org.fantom.repository;
+
+import org.fantom.repositories.widget.RepositoryTest;
+import org.fantom.repositories.widget.dto.WidgetCreateDto;
+import org.fantom.repositories.widget.exceptions.ZIndexConflictException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DerivedStampedInMemoryRepositoryTest extends RepositoryTest<Integer> {
+    private LockProfiler profiler;
+
+    public DerivedStampedInMemoryRepositoryTest() {
+        super(new InMemoryWidgetRepository<>(new IntegerIdGenerator(), new ClosableReentrantReadWriteLock(LockType.stamped)));
+    }
+
+    @Override
+    public void resetRepo() {
+        profiler = new LockProfiler(null, Long.MAX_VALUE, 1);
+        var lock = new ClosableReentrantReadWriteLock(LockType.stamped, profiler);
+        profiler.setLock(lock);
+        repository = new InMemoryWidgetRepository<>(new IntegerIdGenerator(), lock);
+    }
+
+    @Test
+    public void profilerReportsRepositoryMethodsAsLockHolders() throws ZIndexConflictException {
+        repository.add(new WidgetCreateDto(0, 0, 0, 1, 1, System.currentTimeMillis()));
+        repository.getAll();
+        repository.getAll();
+
+        var holders = profiler.topHolders(10);
+        var getAll = holders.stream().filter(site -> site.location.contains("InMemoryWidgetRepository#getAll")).findFirst();
+        assertTrue(getAll.isPresent(), "getAll is reported");
+        assertFalse(getAll.get().write);
+        assertEquals(2, getAll.get().getCount());
+        assertTrue(holders.stream().anyMatch(site -> site.write && site.location.contains("InMemoryWidgetRepository#add")), "add is reported");
+        assertEquals(1, profiler.topHolders(1).size());
+    }
+
+    @Test
+    public void optimisticReadsSeeConsistentState() throws ZIndexConflictException, InterruptedException, ExecutionException {
+        var bottom = repository.add(new WidgetCreateDto(0, 0, 0, 1, 1, System.currentTimeMillis()));
+        var writes = 2000;
+        var executor = Executors.newSingleThreadExecutor();
+        try {
+            // every write puts new widget under all others, shifting them upwards by one
+            var writer = executor.submit(() -> {
+                for (int i = 0; i < writes; i++) {
+                    repository.runAtomically(repo -> {
+                        repo.shiftUpwards(0);
+                        repo.add(new WidgetCreateDto(0, 0, 0, 1, 1, System.currentTimeMillis()));
+                    });
+                }
+                return null;
+            });
+            var lastMaxZIndex = 0;
+            while (!writer.isDone()) {
+                var maxZIndex = repository.getMaxZIndex().orElseThrow();
+                var widget = repository.getById(bottom.id).orElseThrow();
+                assertTrue(maxZIndex >= lastMaxZIndex, "max zIndex doesn't decrease");
+                assertTrue(widget.zIndex <= repository.getMaxZIndex().orElseThrow(), "widget is not above the top");
+                lastMaxZIndex = maxZIndex;
+            }
+            writer.get();
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(writes, (int) repository.getMaxZIndex().orElseThrow());
+        assertEquals(writes, repository.getById(bottom.id).orElseThrow().zIndex);
+    }
+
+    @Test
+    public void reentryFailsFast() {
+        var lock = new ClosableReentrantReadWriteLock(LockType.stamped);
+        try (var ignored = lock.readLock()) {
+            assertThrows(IllegalStateException.class, lock::writeLock);
+            assertThrows(IllegalStateException.class, lock::readLock);
+        }
+        try (var ignored = lock.writeLock()) {
+            assertThrows(IllegalStateException.class, lock::readLock);
+            assertThrows(IllegalStateException.class, lock::writeLock);
+        }
+        // released lock is acquired again
+        try (var ignored = lock.writeLock()) {
+            assertEquals(0, lock.getQueueLength());
+        }
+    }
+}
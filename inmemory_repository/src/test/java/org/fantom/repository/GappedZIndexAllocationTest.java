@@ -0,0 +1,116 @@
+package org.fantom.repository;
+
+import org.fantom.repositories.widget.ExecutorAsyncWidgetRepository;
+import org.fantom.services.widget.WidgetService;
+import org.fantom.services.widget.ZIndexAllocator;
+import org.fantom.services.widget.dto.WidgetCreateDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GappedZIndexAllocationTest {
+    private static final int GAP = 1024;
+
+    private WidgetService<Integer> service;
+
+    @BeforeEach
+    public void createService() {
+        var nextId = new int[]{0};
+        var repository = new InMemoryWidgetRepository<Integer>(() -> nextId[0]++);
+        service = new WidgetService<>(repository, new ExecutorAsyncWidgetRepository<>(repository, Runnable::run, Runnable::run), new ZIndexAllocator(GAP));
+    }
+
+    private static WidgetCreateDto widget(Integer zIndex) {
+        return new WidgetCreateDto(0, 0, zIndex, 1, 1);
+    }
+
+    @Test
+    public void widgetsOnTopAreCreatedWithGaps() {
+        var first = service.create(widget(null));
+        var second = service.create(widget(null));
+        assertEquals(GAP, second.zIndex - first.zIndex);
+    }
+
+    @Test
+    public void insertIntoOccupiedZIndexMovesOnlyOccupyingWidget() {
+        var first = service.create(widget(null));
+        var second = service.create(widget(null));
+        var third = service.create(widget(null));
+
+        var inserted = service.create(widget(second.zIndex));
+
+        assertEquals(second.zIndex, inserted.zIndex);
+        assertEquals(first, service.getById(first.id).orElseThrow());
+        assertEquals(third, service.getById(third.id).orElseThrow());
+        var moved = service.getById(second.id).orElseThrow();
+        assertTrue(moved.zIndex > inserted.zIndex && moved.zIndex < third.zIndex, "widget is moved between its neighbours");
+    }
+
+    @Test
+    public void repeatedInsertsKeepOrder() {
+        var expected = new ArrayList<Integer>();
+        for (int i = 0; i < 10; i++) {
+            expected.add(service.create(widget(null)).id);
+        }
+        var zIndex = service.getById(expected.get(5)).orElseThrow().zIndex;
+        // every new widget goes right below the previous one, making the room above zIndex smaller and smaller
+        for (int i = 0; i < 500; i++) {
+            expected.add(5, service.create(widget(zIndex)).id);
+        }
+        assertEquals(expected, service.getAll().stream().map(w -> w.id).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void widgetsUnderTopAreSpreadWhenThereIsNoRoomAbove() {
+        var top = service.create(widget(Integer.MAX_VALUE - 1));
+        var inserted = service.create(widget(Integer.MAX_VALUE - 1));
+        assertEquals(Integer.MAX_VALUE - 1, inserted.zIndex);
+        assertEquals(Integer.MAX_VALUE, (int) service.getById(top.id).map(w -> w.zIndex).orElseThrow());
+        try {
+            service.create(widget(Integer.MAX_VALUE - 1));
+            fail("Created widget without room for it");
+        } catch (ArithmeticException ignored) {
+        }
+        assertEquals(2, service.getAll().size());
+    }
+
+    @Test
+    public void closeWaitsForBackgroundCompaction() {
+        var nextId = new int[]{0};
+        var repository = new InMemoryWidgetRepository<Integer>(() -> nextId[0]++);
+        var service = new WidgetService<>(repository, new ExecutorAsyncWidgetRepository<>(repository, Runnable::run, Runnable::run), new ZIndexAllocator(GAP, GAP));
+
+        var top = service.create(widget(Integer.MAX_VALUE));
+        service.close();
+
+        assertTrue(service.getById(top.id).orElseThrow().zIndex < Integer.MAX_VALUE - GAP, "widget is moved away from the end");
+    }
+
+    @Test
+    public void failedBackgroundCompactionDoesNotBreakService() {
+        var nextId = new int[]{0};
+        var compactions = new AtomicInteger();
+        var repository = new InMemoryWidgetRepository<Integer>(() -> nextId[0]++) {
+            @Override
+            public int compactZIndexes() {
+                compactions.incrementAndGet();
+                throw new IllegalStateException("compaction failed");
+            }
+        };
+        var service = new WidgetService<>(repository, new ExecutorAsyncWidgetRepository<>(repository, Runnable::run, Runnable::run), new ZIndexAllocator(GAP, GAP));
+
+        service.create(widget(Integer.MAX_VALUE));
+        service.close();
+        assertEquals(1, compactions.get());
+
+        // compaction is not started after close, but widget is still created
+        service.create(widget(Integer.MIN_VALUE));
+        assertEquals(1, compactions.get());
+        assertEquals(2, service.getAll().size());
+    }
+}
@@ -0,0 +1,17 @@
+package org.fantom.repository;
+
+import org.fantom.repositories.widget.IdGenerator;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sequential integer ids, starting from the least integer, shared by in-memory repository tests
+ */
+class IntegerIdGenerator implements IdGenerator<Integer> {
+    private final AtomicInteger nextValue = new AtomicInteger(Integer.MIN_VALUE);
+
+    @Override
+    public Integer generate() {
+        return nextValue.getAndIncrement();
+    }
+}
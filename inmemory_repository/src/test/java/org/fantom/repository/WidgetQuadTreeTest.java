@@ -0,0 +1,163 @@
+package org.fantom.repository;
+
+import org.fantom.domain.Widget;
+import org.fantom.repositories.widget.dto.Area;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WidgetQuadTreeTest {
+    private final Random random = new Random(42);
+
+    private WidgetDao<Integer> widget(int id, int x, int y, int width, int height) {
+        return new WidgetDao<>(new Widget<>(id, x, y, id, width, height, 0, 0));
+    }
+
+    private Area area() {
+        var left = random.nextInt(1200) - 100;
+        var bottom = random.nextInt(1200) - 100;
+        return new Area(left, left + random.nextInt(600), bottom, bottom + random.nextInt(600));
+    }
+
+    private static void assertMatches(List<WidgetDao<Integer>> widgets, WidgetQuadTree<Integer> index, Area area, int gridSize) {
+        var expected = widgets.stream().map(w -> w.widget).filter(area::contains).collect(Collectors.toSet());
+        var found = new HashSet<Widget<Integer>>();
+        index.forEachInArea(area, found::add);
+        assertEquals(expected, found);
+        assertEquals(expected.size(), index.countInArea(area));
+
+        var histogram = new int[gridSize][gridSize];
+        for (var widget : expected) {
+            histogram[area.row(widget.y, gridSize)][area.column(widget.x, gridSize)]++;
+        }
+        assertArrayEquals(histogram, index.histogram(area, gridSize));
+
+        var overlapping = widgets.stream().map(w -> w.widget).filter(area::overlaps).collect(Collectors.toSet());
+        var foundOverlapping = new HashSet<Widget<Integer>>();
+        index.forEachOverlapping(area, foundOverlapping::add);
+        assertEquals(overlapping, foundOverlapping);
+        assertEquals(!overlapping.isEmpty(), index.anyOverlapping(area));
+
+        // summary takes widgets by bottom-left vertex only
+        var vertices = widgets.stream()
+                .map(w -> w.widget)
+                .filter(w -> w.x >= area.left && w.x <= area.right && w.y >= area.bottom && w.y <= area.top)
+                .collect(Collectors.toList());
+        var density = new int[gridSize][gridSize];
+        for (var widget : vertices) {
+            density[area.row(widget.y, gridSize)][area.column(widget.x, gridSize)]++;
+        }
+        var summary = index.summarize(area, gridSize);
+        assertEquals(vertices.size(), summary.count);
+        assertArrayEquals(density, summary.density);
+        if (vertices.isEmpty()) {
+            assertNull(summary.bounds);
+        } else {
+            assertEquals(vertices.stream().mapToInt(w -> w.x).min().orElseThrow(), summary.bounds.left);
+            assertEquals(vertices.stream().mapToInt(w -> w.x + w.width).max().orElseThrow(), summary.bounds.right);
+            assertEquals(vertices.stream().mapToInt(w -> w.y).min().orElseThrow(), summary.bounds.bottom);
+            assertEquals(vertices.stream().mapToInt(w -> w.y + w.height).max().orElseThrow(), summary.bounds.top);
+        }
+    }
+
+    @Test
+    public void queriesMatchFullScanWhileWidgetsAreAddedAndRemoved() {
+        var index = new WidgetQuadTree<Integer>();
+        var widgets = new ArrayList<WidgetDao<Integer>>();
+        for (int i = 0; i < 2000; i++) {
+            // some widgets share the same vertex, so that leaves can't be split
+            var widget = i % 10 == 0
+                    ? widget(i, 500, 500, random.nextInt(50), random.nextInt(50))
+                    : widget(i, random.nextInt(1000), random.nextInt(1000), random.nextInt(100), random.nextInt(100));
+            widgets.add(widget);
+            index.add(widget);
+        }
+        for (int i = 0; i < 50; i++) {
+            assertMatches(widgets, index, area(), 1 + random.nextInt(16));
+        }
+
+        for (int i = 0; i < 1500; i++) {
+            assertTrue(index.remove(widgets.remove(random.nextInt(widgets.size()))));
+        }
+        assertEquals(widgets.size(), index.size());
+        for (int i = 0; i < 50; i++) {
+            assertMatches(widgets, index, area(), 1 + random.nextInt(16));
+        }
+    }
+
+    @Test
+    public void nearestMatchFullScan() {
+        var index = new WidgetQuadTree<Integer>();
+        var widgets = new ArrayList<WidgetDao<Integer>>();
+        for (int i = 0; i < 2000; i++) {
+            // many widgets at the same distance, so that order of ties is checked
+            var widget = widget(i, random.nextInt(100) * 10, random.nextInt(100) * 10, random.nextInt(5) * 10, random.nextInt(5) * 10);
+            widgets.add(widget);
+            index.add(widget);
+        }
+        for (int i = 0; i < 50; i++) {
+            var x = random.nextInt(1200) - 100;
+            var y = random.nextInt(1200) - 100;
+            var k = 1 + random.nextInt(50);
+            var expected = widgets.stream()
+                    .map(w -> w.widget)
+                    .sorted(Comparator
+                            .<Widget<Integer>>comparingDouble(w -> w.distanceSquared(x, y))
+                            .thenComparing(Comparator.<Widget<Integer>>comparingInt(w -> w.zIndex).reversed())
+                    )
+                    .limit(k)
+                    .collect(Collectors.toList());
+            assertEquals(expected, index.nearest(x, y, k));
+        }
+        assertEquals(2000, index.nearest(0, 0, 5000).size());
+        assertTrue(new WidgetQuadTree<Integer>().nearest(0, 0, 1).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> index.nearest(0, 0, 0));
+    }
+
+    @Test
+    public void boundingBoxShrinksOnRemove() {
+        var index = new WidgetQuadTree<Integer>();
+        assertTrue(index.boundingBox().isEmpty());
+        var widgets = new ArrayList<WidgetDao<Integer>>();
+        for (int i = 0; i < 100; i++) {
+            var widget = widget(i, i * 10, -i * 10, 5, 5);
+            widgets.add(widget);
+            index.add(widget);
+        }
+        var box = index.boundingBox().orElseThrow();
+        assertEquals(0, box.left);
+        assertEquals(995, box.right);
+        assertEquals(-990, box.bottom);
+        assertEquals(5, box.top);
+
+        index.remove(widgets.get(99));
+        index.remove(widgets.get(0));
+        box = index.boundingBox().orElseThrow();
+        assertEquals(10, box.left);
+        assertEquals(985, box.right);
+        assertEquals(-980, box.bottom);
+        assertEquals(-5, box.top);
+        assertFalse(index.remove(widgets.get(0)), "removed widget is found again");
+    }
+
+    @Test
+    public void replacedWidgetIsFound() {
+        var index = new WidgetQuadTree<Integer>();
+        for (int i = 0; i < 100; i++) {
+            index.add(widget(i, i, i, 1, 1));
+        }
+        var shifted = new WidgetDao<>(new Widget<>(50, 50, 50, 1000, 1, 1, 0, 1));
+        index.replace(widget(50, 50, 50, 1, 1), shifted);
+        var found = new ArrayList<Widget<Integer>>();
+        index.forEachInArea(new Area(50, 51, 50, 51), found::add);
+        assertEquals(List.of(shifted.widget), found);
+        assertEquals(1000, found.get(0).zIndex);
+    }
+}
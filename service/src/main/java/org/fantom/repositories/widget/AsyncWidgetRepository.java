@@ -0,0 +1,145 @@
+package org.fantom.repositories.widget;
+
+import org.fantom.domain.Widget;
+import org.fantom.repositories.widget.dto.Area;
+import org.fantom.repositories.widget.dto.AreaSummary;
+import org.fantom.repositories.widget.dto.ReorderPosition;
+import org.fantom.repositories.widget.dto.WidgetCreateDto;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.UnaryOperator;
+
+/**
+ * Non-blocking facade of widget repository.
+ * Every operation is run against underlying {@link WidgetRepository} somewhere else, than in calling thread,
+ * and its result is delivered through returned future. Exceptions of the operation,
+ * e.g. {@link org.fantom.repositories.widget.exceptions.ZIndexConflictException},
+ * complete the future exceptionally
+ * @param <ID> Type of widget id
+ */
+public interface AsyncWidgetRepository<ID> {
+
+    /**
+     * Run read-only action against repository
+     * @param action must not modify repository
+     * @return future of action result
+     */
+    <T, E extends Exception> CompletableFuture<T> read(AtomicFunction<WidgetRepository<ID>, T, E> action);
+
+    /**
+     * Run modifying action against repository
+     * @return future of action result
+     */
+    <T, E extends Exception> CompletableFuture<T> write(AtomicFunction<WidgetRepository<ID>, T, E> action);
+
+    default CompletableFuture<Widget<ID>> add(WidgetCreateDto widget) {
+        return write(repo -> repo.add(widget));
+    }
+
+    default CompletableFuture<Optional<Widget<ID>>> save(Widget<ID> widget) {
+        return write(repo -> repo.save(widget));
+    }
+
+    default CompletableFuture<Optional<Widget<ID>>> save(Widget<ID> widget, long expectedVersion) {
+        return write(repo -> repo.save(widget, expectedVersion));
+    }
+
+    default CompletableFuture<Optional<Widget<ID>>> update(ID id, UnaryOperator<Widget<ID>> update) {
+        return write(repo -> repo.update(id, update));
+    }
+
+    default CompletableFuture<Optional<Widget<ID>>> getById(ID id) {
+        return read(repo -> repo.getById(id));
+    }
+
+    default CompletableFuture<Integer> countInArea(Area area) {
+        return read(repo -> repo.countInArea(area));
+    }
+
+    default CompletableFuture<Optional<Area>> boundingBox() {
+        return read(WidgetRepository::boundingBox);
+    }
+
+    default CompletableFuture<int[][]> histogram(Area area, int gridSize) {
+        return read(repo -> repo.histogram(area, gridSize));
+    }
+
+    default CompletableFuture<List<Widget<ID>>> findOverlapping(Area area, ID excludeId) {
+        return read(repo -> repo.findOverlapping(area, excludeId));
+    }
+
+    default CompletableFuture<Boolean> anyOverlapping(Area area) {
+        return read(repo -> repo.anyOverlapping(area));
+    }
+
+    default CompletableFuture<List<Widget<ID>>> nearest(int x, int y, int k) {
+        return read(repo -> repo.nearest(x, y, k));
+    }
+
+    default CompletableFuture<AreaSummary> summarize(Area area, int gridSize) {
+        return read(repo -> repo.summarize(area, gridSize));
+    }
+
+    default CompletableFuture<List<Widget<ID>>> getByIds(Collection<ID> ids) {
+        return read(repo -> repo.getByIds(ids));
+    }
+
+    default CompletableFuture<List<Widget<ID>>> getAll() {
+        return read(WidgetRepository::getAll);
+    }
+
+    default CompletableFuture<List<Widget<ID>>> getInArea(Area area) {
+        return read(repo -> repo.getInArea(area));
+    }
+
+    /**
+     * @see WidgetRepository#getPage(Integer, int)
+     */
+    default CompletableFuture<List<Widget<ID>>> getPage(Integer afterZIndex, int limit) {
+        return read(repo -> repo.getPage(afterZIndex, limit));
+    }
+
+    /**
+     * @see WidgetRepository#getInAreaPage(Area, Integer, int)
+     */
+    default CompletableFuture<List<Widget<ID>>> getInAreaPage(Area area, Integer afterZIndex, int limit) {
+        return read(repo -> repo.getInAreaPage(area, afterZIndex, limit));
+    }
+
+    default CompletableFuture<List<Widget<ID>>> reorder(Collection<ID> ids, ReorderPosition position) {
+        return write(repo -> repo.reorder(ids, position));
+    }
+
+    default CompletableFuture<List<Widget<ID>>> translate(Collection<ID> ids, int dx, int dy, long updatedAt) {
+        return write(repo -> repo.translate(ids, dx, dy, updatedAt));
+    }
+
+    default CompletableFuture<Boolean> deleteById(ID id) {
+        return write(repo -> repo.deleteById(id));
+    }
+
+    default CompletableFuture<Integer> deleteByIds(Collection<ID> ids) {
+        return write(repo -> repo.deleteByIds(ids));
+    }
+
+    default CompletableFuture<Integer> deleteInArea(Area area) {
+        return write(repo -> repo.deleteInArea(area));
+    }
+
+    default CompletableFuture<Void> deleteAll() {
+        return write(repo -> {
+            repo.deleteAll();
+            return null;
+        });
+    }
+
+    /**
+     * Run action atomically, see {@link WidgetRepository#runAtomically(AtomicFunction)}
+     */
+    default <T, E extends Exception> CompletableFuture<T> runAtomically(AtomicFunction<WidgetRepository<ID>, T, E> action) {
+        return write(repo -> repo.runAtomically(action));
+    }
+}
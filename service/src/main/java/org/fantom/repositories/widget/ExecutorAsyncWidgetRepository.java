@@ -0,0 +1,136 @@
+package org.fantom.repositories.widget;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Async repository, that runs blocking repository operations on given executors.
+ * Reads and writes may use different executors, e.g. writes may be serialized by single thread,
+ * while reads of in-memory repository are cheap enough to be run right in calling thread
+ * @param <ID> Type of widget id
+ */
+public class ExecutorAsyncWidgetRepository<ID> implements AsyncWidgetRepository<ID>, AutoCloseable {
+    private final WidgetRepository<ID> repository;
+    private final Executor readExecutor;
+    private final Executor writeExecutor;
+
+    public ExecutorAsyncWidgetRepository(WidgetRepository<ID> repository, Executor readExecutor, Executor writeExecutor) {
+        this.repository = repository;
+        this.readExecutor = readExecutor;
+        this.writeExecutor = writeExecutor;
+    }
+
+    /**
+     * Adapter for repository, that blocks on external resource, like jdbc connection.
+     * All operations are run by pool of given size, so that no more operations are blocked at once,
+     * than there are connections. Operations, that don't fit into queue, are rejected
+     * @param threads number of threads, should not exceed number of connections
+     * @param queueCapacity max number of operations, waiting for a thread
+     */
+    public static <ID> ExecutorAsyncWidgetRepository<ID> pooled(WidgetRepository<ID> repository, int threads, int queueCapacity) {
+        return pooled(repository, threads, queueCapacity, namedThreads("widget-repository-"));
+    }
+
+    /**
+     * The same as {@link #pooled(WidgetRepository, int, int)}, but with threads, created by given factory,
+     * e.g. virtual ones
+     */
+    public static <ID> ExecutorAsyncWidgetRepository<ID> pooled(
+            WidgetRepository<ID> repository,
+            int threads,
+            int queueCapacity,
+            ThreadFactory threadFactory
+    ) {
+        var executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                threadFactory
+        );
+        return new ExecutorAsyncWidgetRepository<>(repository, executor, executor);
+    }
+
+    /**
+     * Adapter for in-memory repository. All writes are applied one by one by single thread,
+     * so they never contend with each other for repository lock, reads are run in calling thread.
+     * Writes, that don't fit into queue, are rejected, the same as by {@link #pooled(WidgetRepository, int, int)}
+     * @param queueCapacity max number of writes, waiting for the writer thread
+     */
+    public static <ID> ExecutorAsyncWidgetRepository<ID> singleWriter(WidgetRepository<ID> repository, int queueCapacity) {
+        return singleWriter(repository, queueCapacity, namedThreads("widget-repository-writer-"));
+    }
+
+    /**
+     * The same as {@link #singleWriter(WidgetRepository, int)}, but with writer thread, created by given factory
+     */
+    public static <ID> ExecutorAsyncWidgetRepository<ID> singleWriter(
+            WidgetRepository<ID> repository,
+            int queueCapacity,
+            ThreadFactory threadFactory
+    ) {
+        var writer = new ThreadPoolExecutor(
+                1,
+                1,
+                0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                threadFactory
+        );
+        return new ExecutorAsyncWidgetRepository<>(repository, Runnable::run, writer);
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        var counter = new AtomicInteger();
+        return runnable -> {
+            var thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    protected <T, E extends Exception> CompletableFuture<T> run(AtomicFunction<WidgetRepository<ID>, T, E> action, Executor executor) {
+        var result = new CompletableFuture<T>();
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(action.run(repository));
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            // executor is overloaded or shut down
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    @Override
+    public <T, E extends Exception> CompletableFuture<T> read(AtomicFunction<WidgetRepository<ID>, T, E> action) {
+        return run(action, readExecutor);
+    }
+
+    @Override
+    public <T, E extends Exception> CompletableFuture<T> write(AtomicFunction<WidgetRepository<ID>, T, E> action) {
+        return run(action, writeExecutor);
+    }
+
+    /**
+     * Stop executors, if they are executor services, already submitted operations are completed
+     */
+    @Override
+    public void close() {
+        if (readExecutor instanceof ExecutorService) {
+            ((ExecutorService) readExecutor).shutdown();
+        }
+        if (writeExecutor instanceof ExecutorService) {
+            ((ExecutorService) writeExecutor).shutdown();
+        }
+    }
+}
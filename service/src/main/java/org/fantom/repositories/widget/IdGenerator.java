@@ -1,5 +1,10 @@
 package org.fantom.repositories.widget;
 
+/**
+ * Generator of ids for new widgets.
+ * Repositories may call it concurrently and outside of their critical sections, so it must be thread-safe
+ * @param <ID> Type of widget id
+ */
 @FunctionalInterface
 public interface IdGenerator<ID> {
     ID generate();
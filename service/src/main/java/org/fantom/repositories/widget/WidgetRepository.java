@@ -2,11 +2,20 @@ package org.fantom.repositories.widget;
 
 import org.fantom.domain.Widget;
 import org.fantom.repositories.widget.dto.Area;
+import org.fantom.repositories.widget.dto.AreaSummary;
+import org.fantom.repositories.widget.dto.ReorderPosition;
 import org.fantom.repositories.widget.dto.WidgetCreateDto;
+import org.fantom.repositories.widget.exceptions.VersionConflictException;
 import org.fantom.repositories.widget.exceptions.ZIndexConflictException;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 
 /**
  * Interface for widget repositories
@@ -34,11 +43,32 @@ public interface WidgetRepository<ID> {
 
     /**
      * Update given widget, is exists
+     * Version of given widget is ignored, saved widget gets the next version after the stored one
      * @param widget to update
      * @return saved widget, or none if no such widget
      */
     Optional<Widget<ID>> save(Widget<ID> widget) throws ZIndexConflictException;
 
+    /**
+     * Update given widget, if it exists and it's stored version is still equal to expected one
+     * @param widget to update
+     * @param expectedVersion version of stored widget, new state is based on
+     * @return saved widget with the next version, or none if no such widget
+     * @throws ZIndexConflictException when new zIndex is occupied by other widget
+     * @throws VersionConflictException when stored widget was changed since expected version
+     */
+    Optional<Widget<ID>> save(Widget<ID> widget, long expectedVersion) throws ZIndexConflictException, VersionConflictException;
+
+    /**
+     * Read widget, compute its new state and save it in one atomic step
+     * @param id of widget to update
+     * @param update function to compute new widget from the current one, it must keep id unchanged.
+     * Implementations may call it under repository lock, so it must be fast and must not access repository
+     * @return saved widget, or none if no such widget
+     * @throws ZIndexConflictException when new zIndex is occupied by other widget
+     */
+    Optional<Widget<ID>> update(ID id, UnaryOperator<Widget<ID>> update) throws ZIndexConflictException;
+
     /**
      * Update given widgets. If there are deleted widgets in argument, they are skipped, no error is thrown
      * @param widgets to update
@@ -53,6 +83,13 @@ public interface WidgetRepository<ID> {
      */
     Optional<Widget<ID>> getById(ID id);
 
+    /**
+     * Get widgets by their ids at once
+     * @param ids ids of widgets to find, unknown ones are ignored
+     * @return found widgets, sorted by zIndex asc
+     */
+    List<Widget<ID>> getByIds(Collection<ID> ids);
+
     /**
      * Get all widgets, sorted by zIndex asc
      * @return stream over all widgets
@@ -67,6 +104,115 @@ public interface WidgetRepository<ID> {
      */
     List<Widget<ID>> getInArea(Area area);
 
+    /**
+     * Find widgets, overlapping specified area, see {@link Area#overlaps}
+     * @param area area to check, e.g. candidate place of a widget
+     * @param excludeId id of widget to ignore, e.g. the one, which is moved, or null
+     * @return widgets, overlapping area, sorted by zIndex asc
+     */
+    List<Widget<ID>> findOverlapping(Area area, ID excludeId);
+
+    /**
+     * Check whether any widget overlaps specified area, stopping at the first one found
+     * @see #findOverlapping
+     */
+    boolean anyOverlapping(Area area);
+
+    /**
+     * Count widgets, falling into specified area entirely, without reading them
+     * @param area area to count widgets in
+     * @return number of widgets, {@link #getInArea} would return
+     */
+    int countInArea(Area area);
+
+    /**
+     * @return the smallest area, containing all widgets entirely, or none if there are no widgets
+     */
+    Optional<Area> boundingBox();
+
+    /**
+     * Count widgets, falling into specified area entirely, per tile of square grid, laid over the area.
+     * Widget is counted in the tile, containing its bottom-left vertex, see {@link Area#column} and {@link Area#row}
+     * @param area area to count widgets in
+     * @param gridSize number of tiles along each side of area
+     * @return numbers of widgets, indexed by row of tile, from bottom, and then by column, from left
+     * @throws IllegalArgumentException if grid size is not positive
+     */
+    int[][] histogram(Area area, int gridSize) throws IllegalArgumentException;
+
+    /**
+     * Find widgets, nearest to given point, by distance to the nearest point of widget, see {@link Widget#distanceSquared}.
+     * Widgets, which contain the point, are at zero distance, widgets at the same distance are ordered from the top one
+     * @param k max number of widgets to find
+     * @return at most k widgets, ordered by distance to point
+     * @throws IllegalArgumentException if k is not positive
+     */
+    List<Widget<ID>> nearest(int x, int y, int k) throws IllegalArgumentException;
+
+    /**
+     * Summarize widgets, which bottom-left vertices fall into specified area, unlike other area queries,
+     * which take only widgets, lying in area entirely. So areas, that tile the plane, summarize every widget once
+     * @param area area to summarize widgets in
+     * @param gridSize number of tiles along each side of area in summary density grid
+     * @throws IllegalArgumentException if grid size is not positive
+     */
+    AreaSummary summarize(Area area, int gridSize) throws IllegalArgumentException;
+
+    /**
+     * Pass all widgets, sorted by zIndex asc, to given consumer without collecting them into intermediate list.
+     * Note, that implementations may call consumer under repository lock, so it must be fast and must not access repository
+     * @param consumer callback to call on each widget
+     */
+    default void forEach(Consumer<? super Widget<ID>> consumer) {
+        getAll().forEach(consumer);
+    }
+
+    /**
+     * Pass all widgets, falling into specified area, to given consumer without collecting them into intermediate list.
+     * The same restrictions as for {@link #forEach} apply to consumer
+     * @param area area to search widgets in
+     * @param consumer callback to call on each widget located in given area entirely
+     */
+    default void forEachInArea(Area area, Consumer<? super Widget<ID>> consumer) {
+        getInArea(area).forEach(consumer);
+    }
+
+    /**
+     * Get next page of widgets, sorted by zIndex asc, for keyset pagination.
+     * Pages, read one after another, are not a snapshot: widgets, changed between reads, may be skipped or repeated
+     * @param afterZIndex zIndex of the last widget of previous page, or null to get the first page
+     * @param limit max number of widgets in page
+     * @return widgets with zIndex greater than given one, less than limit only if it is the last page
+     */
+    default List<Widget<ID>> getPage(Integer afterZIndex, int limit) {
+        return getInAreaPage(null, afterZIndex, limit);
+    }
+
+    /**
+     * Get next page of widgets, falling into specified area, sorted by zIndex asc, see {@link #getPage}
+     * @param area area to search widgets in, or null to get widgets from the whole board
+     */
+    default List<Widget<ID>> getInAreaPage(Area area, Integer afterZIndex, int limit) {
+        // keep limit widgets with the least zIndex, the greatest one is on top of the heap to be evicted
+        var page = new PriorityQueue<Widget<ID>>(limit + 1, Comparator.comparingInt((Widget<ID> w) -> w.zIndex).reversed());
+        Consumer<Widget<ID>> collector = widget -> {
+            if (afterZIndex == null || widget.zIndex > afterZIndex) {
+                page.add(widget);
+                if (page.size() > limit) {
+                    page.poll();
+                }
+            }
+        };
+        if (area == null) {
+            forEach(collector);
+        } else {
+            forEachInArea(area, collector);
+        }
+        var result = new ArrayList<>(page);
+        result.sort(Comparator.comparingInt(w -> w.zIndex));
+        return result;
+    }
+
     /**
      * Delete widget by it's id
      * @param id of widget to delete
@@ -83,6 +229,20 @@ public interface WidgetRepository<ID> {
      */
     boolean deleteById(ID id);
 
+    /**
+     * Delete widgets by their ids at once
+     * @param ids ids of widgets to delete, unknown ones are ignored
+     * @return number of deleted widgets
+     */
+    int deleteByIds(Collection<ID> ids);
+
+    /**
+     * Delete all widgets, falling into specified area entirely, the same ones as {@link #getInArea} returns
+     * @param area area to delete widgets in
+     * @return number of deleted widgets
+     */
+    int deleteInArea(Area area);
+
     /** Delete all widgets
      *
      */
@@ -93,12 +253,55 @@ public interface WidgetRepository<ID> {
      */
     Optional<Integer> getMaxZIndex();
 
+    /**
+     * Version of repository content, that is changed on every mutation.
+     * Reading version doesn't lock repository, so it may be used to cheaply detect that nothing changed since some
+     * previous read. Note, that version must be read before the content it is going to describe: content read after
+     * may be newer than version, but never older. Versions are comparable only within one repository instance,
+     * persistent repositories may count them from scratch after restart
+     * @return current content version
+     */
+    long getVersion();
+
     /**
      * Shift widget with given zIndex upwards. If there is no room, shift overlying widgets too
      * @param zIndex to free
+     * @return number of shifted widgets, 0 if zIndex is already free
      * @exception ArithmeticException if there is no room to shift existing widgets into
      */
-    void shiftUpwards(Integer zIndex) throws ArithmeticException;
+    int shiftUpwards(Integer zIndex) throws ArithmeticException;
+
+    /**
+     * Renumber widgets densely, keeping their order: widgets with non-negative zIndexes get zIndexes 0, 1, 2...,
+     * and widgets with negative ones get -1, -2..., so there is as much room as possible at both ends of zIndex range.
+     * Widgets are renumbered in small slices, each atomic on its own, so concurrent operations are not blocked
+     * for the whole compaction, and widgets, created meanwhile, may be left not compacted.
+     * Must not be run atomically, as it would hold repository for the whole compaction
+     * @return number of renumbered widgets
+     */
+    int compactZIndexes();
+
+    /**
+     * Move given widgets in front of or behind all other widgets, keeping their relative order.
+     * Moved widgets get consecutive zIndexes right next to the nearest other widget, so widgets, already there,
+     * are not changed. Unknown ids are ignored
+     * @param ids ids of widgets to move
+     * @param position where to move widgets
+     * @return widgets with given ids, sorted by zIndex asc
+     * @throws ArithmeticException if there is no room for all widgets in front of or behind others
+     */
+    List<Widget<ID>> reorder(Collection<ID> ids, ReorderPosition position) throws ArithmeticException;
+
+    /**
+     * Move given widgets by the same offset at once. Unknown ids are ignored
+     * @param ids ids of widgets to move
+     * @param dx offset along x axis
+     * @param dy offset along y axis
+     * @param updatedAt new modification date of moved widgets
+     * @return moved widgets, sorted by zIndex asc
+     * @throws ArithmeticException if any widget would be moved out of coordinate range, no widgets are moved then
+     */
+    List<Widget<ID>> translate(Collection<ID> ids, int dx, int dy, long updatedAt) throws ArithmeticException;
 
     /**
      * Run function under lock of repository
@@ -1,5 +1,7 @@
 package org.fantom.repositories.widget.dto;
 
+import org.fantom.domain.Widget;
+
 public class Area {
 
     /**
@@ -34,4 +36,44 @@ public class Area {
         this.bottom = bottom;
         this.top = top;
     }
+
+    /**
+     * @param x x-coordinate inside this area
+     * @param gridSize number of columns, area is split into
+     * @return index of column, containing given x-coordinate, columns are as equal as integer coordinates allow
+     */
+    public int column(long x, int gridSize) {
+        return (int) ((x - left) * gridSize / ((long) right - left + 1));
+    }
+
+    /**
+     * @param y y-coordinate inside this area
+     * @param gridSize number of rows, area is split into
+     * @return index of row, containing given y-coordinate, counting from bottom
+     */
+    public int row(long y, int gridSize) {
+        return (int) ((y - bottom) * gridSize / ((long) top - bottom + 1));
+    }
+
+    /**
+     * @param widget widget to check
+     * @return true if given widget is located in this area entirely
+     */
+    public boolean contains(Widget<?> widget) {
+        return widget.x >= left &&
+                widget.y >= bottom &&
+                (long) widget.x + widget.width <= right &&
+                (long) widget.y + widget.height <= top;
+    }
+
+    /**
+     * @param widget widget to check
+     * @return true if given widget shares some inner space with this area, touching edges don't overlap
+     */
+    public boolean overlaps(Widget<?> widget) {
+        return widget.x < right &&
+                widget.y < top &&
+                (long) widget.x + widget.width > left &&
+                (long) widget.y + widget.height > bottom;
+    }
 }
@@ -0,0 +1,79 @@
+package org.fantom.repositories.widget.dto;
+
+/**
+ * Aggregated view of widgets, which bottom-left vertices fall into an area, to show area without reading its widgets
+ */
+public class AreaSummary {
+    /**
+     * Number of widgets
+     */
+    public final int count;
+
+    /**
+     * Bounding box of widgets, null if there are no widgets
+     */
+    public final Area bounds;
+
+    /**
+     * Numbers of widgets per tile of square grid, laid over the area, indexed by row of tile, from bottom,
+     * and then by column, from left, see {@link Area#row} and {@link Area#column}
+     */
+    public final int[][] density;
+
+    public AreaSummary(int count, Area bounds, int[][] density) {
+        this.count = count;
+        this.bounds = bounds;
+        this.density = density;
+    }
+
+    /**
+     * Accumulates groups of widgets into summary
+     */
+    public static class Builder {
+        private int count;
+        private long left;
+        private long right;
+        private long bottom;
+        private long top;
+        private final int[][] density;
+
+        public Builder(int gridSize) {
+            if (gridSize < 1) {
+                throw new IllegalArgumentException("grid size must be positive, got " + gridSize);
+            }
+            this.density = new int[gridSize][gridSize];
+        }
+
+        /**
+         * Add group of widgets, which vertices fall into the same tile
+         * @param count number of widgets in group
+         * @param left min x-coordinate of left edges of widgets
+         * @param right max x-coordinate of right edges of widgets, may be beyond int range
+         * @param bottom min y-coordinate of bottom edges of widgets
+         * @param top max y-coordinate of top edges of widgets, may be beyond int range
+         */
+        public Builder add(int row, int column, int count, long left, long right, long bottom, long top) {
+            if (count == 0) {
+                return this;
+            }
+            var first = this.count == 0;
+            this.left = first ? left : Math.min(this.left, left);
+            this.right = first ? right : Math.max(this.right, right);
+            this.bottom = first ? bottom : Math.min(this.bottom, bottom);
+            this.top = first ? top : Math.max(this.top, top);
+            this.count += count;
+            density[row][column] += count;
+            return this;
+        }
+
+        public AreaSummary build() {
+            var bounds = count == 0 ? null : new Area(
+                    (int) left,
+                    (int) Math.min(right, Integer.MAX_VALUE),
+                    (int) bottom,
+                    (int) Math.min(top, Integer.MAX_VALUE)
+            );
+            return new AreaSummary(count, bounds, density);
+        }
+    }
+}
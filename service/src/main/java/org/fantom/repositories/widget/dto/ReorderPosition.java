@@ -0,0 +1,15 @@
+package org.fantom.repositories.widget.dto;
+
+/**
+ * Where to move widgets relative to all other ones
+ */
+public enum ReorderPosition {
+    /**
+     * above all other widgets
+     */
+    front,
+    /**
+     * below all other widgets
+     */
+    back
+}
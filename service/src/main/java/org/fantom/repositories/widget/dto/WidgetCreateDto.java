@@ -2,8 +2,6 @@ package org.fantom.repositories.widget.dto;
 
 import org.fantom.domain.Widget;
 
-import java.util.Date;
-
 /**
  * Immutable dto to create widget
  */
@@ -34,11 +32,11 @@ public final class WidgetCreateDto {
     public final int height;
 
     /**
-     * Widget's create or last modification date
+     * Widget's create or last modification date, in milliseconds since the epoch
      */
-    public final Date updatedAt;
+    public final long updatedAt;
 
-    public WidgetCreateDto(int x, int y, int zIndex, int width, int height, Date updatedAt) {
+    public WidgetCreateDto(int x, int y, int zIndex, int width, int height, long updatedAt) {
         this.x = x;
         this.y = y;
         this.zIndex = zIndex;
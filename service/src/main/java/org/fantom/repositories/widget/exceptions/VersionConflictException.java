@@ -0,0 +1,12 @@
+package org.fantom.repositories.widget.exceptions;
+
+public class VersionConflictException extends Exception {
+    public final Object id;
+    public final long expectedVersion;
+
+    public VersionConflictException(Object id, long expectedVersion) {
+        super("Widget " + id + " is not of version " + expectedVersion);
+        this.id = id;
+        this.expectedVersion = expectedVersion;
+    }
+}
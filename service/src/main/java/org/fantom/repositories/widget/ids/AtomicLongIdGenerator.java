@@ -0,0 +1,68 @@
+package org.fantom.repositories.widget.ids;
+
+import org.fantom.repositories.widget.IdGenerator;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Generates sequential ids by a single {@link AtomicLong} increment, without locks.
+ * If high-water mark store is given, ids are reserved in blocks: before an id from the next block is handed out,
+ * end of that block is stored, and generator restarts from the stored mark. So ids are not reused after restart,
+ * at the cost of skipping the rest of the block, reserved before restart, and one store per block
+ */
+public class AtomicLongIdGenerator implements IdGenerator<Long> {
+    public static final int DEFAULT_BLOCK_SIZE = 10_000;
+
+    private final AtomicLong next;
+    private final HighWaterMarkStore store;
+    private final int blockSize;
+    // ids below it are reserved in store
+    private volatile long reservedUntil;
+    // not a monitor, to not pin virtual threads, while they wait for the store
+    private final ReentrantLock reserveLock = new ReentrantLock();
+
+    /**
+     * @param store storage of reserved ids bound
+     * @param blockSize number of ids reserved at once
+     */
+    public AtomicLongIdGenerator(HighWaterMarkStore store, int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("blockSize must be positive, got " + blockSize);
+        }
+        this.store = store;
+        this.blockSize = blockSize;
+        this.reservedUntil = store.load();
+        this.next = new AtomicLong(reservedUntil);
+    }
+
+    /**
+     * Generator, that starts from 0 on every start
+     */
+    public AtomicLongIdGenerator() {
+        this.store = null;
+        this.blockSize = 0;
+        this.reservedUntil = Long.MAX_VALUE;
+        this.next = new AtomicLong();
+    }
+
+    @Override
+    public Long generate() {
+        var id = next.getAndIncrement();
+        if (id < reservedUntil) {
+            return id;
+        }
+        reserveLock.lock();
+        try {
+            // other threads may have reserved enough already
+            while (id >= reservedUntil) {
+                var mark = Math.addExact(reservedUntil, blockSize);
+                store.store(mark);
+                reservedUntil = mark;
+            }
+        } finally {
+            reserveLock.unlock();
+        }
+        return id;
+    }
+}
@@ -0,0 +1,29 @@
+package org.fantom.repositories.widget.ids;
+
+import org.fantom.domain.CompactId;
+import org.fantom.repositories.widget.IdGenerator;
+
+import java.time.Clock;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates time-ordered compact ids: 48 bits of milliseconds since the epoch, followed by 80 random bits.
+ * Ids, generated within the same millisecond, are not ordered
+ */
+public class CompactIdGenerator implements IdGenerator<CompactId> {
+    private final Clock clock;
+
+    public CompactIdGenerator(Clock clock) {
+        this.clock = clock;
+    }
+
+    public CompactIdGenerator() {
+        this(Clock.systemUTC());
+    }
+
+    @Override
+    public CompactId generate() {
+        var random = ThreadLocalRandom.current();
+        return new CompactId(clock.millis() << 16 | random.nextInt(1 << 16), random.nextLong());
+    }
+}
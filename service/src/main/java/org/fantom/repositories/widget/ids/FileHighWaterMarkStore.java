@@ -0,0 +1,68 @@
+package org.fantom.repositories.widget.ids;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Stores high-water mark as text in a file. New mark is written to a temporary file first and then moved over
+ * the old one, so the file always contains some complete mark, even if process dies in the middle of store.
+ * Both the temporary file and the directory are synced, so that stored mark survives crash of the whole system
+ */
+public class FileHighWaterMarkStore implements HighWaterMarkStore {
+    private final Path file;
+    private final Path tmpFile;
+
+    public FileHighWaterMarkStore(Path file) {
+        this.file = file;
+        this.tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+    }
+
+    @Override
+    public long load() {
+        try {
+            return Files.exists(file) ? Long.parseLong(Files.readString(file, StandardCharsets.US_ASCII).trim()) : 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read id high-water mark from " + file, e);
+        }
+    }
+
+    @Override
+    public void store(long mark) {
+        try {
+            try (var channel = FileChannel.open(
+                    tmpFile,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING
+            )) {
+                var content = ByteBuffer.wrap(Long.toString(mark).getBytes(StandardCharsets.US_ASCII));
+                while (content.hasRemaining()) {
+                    channel.write(content);
+                }
+                channel.force(true);
+            }
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory(file.toAbsolutePath().getParent());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot store id high-water mark to " + file, e);
+        }
+    }
+
+    // makes the move durable, windows can't open directories for that, but doesn't need it either
+    private static void syncDirectory(Path directory) throws IOException {
+        try (var channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            if (!System.getProperty("os.name").startsWith("Windows")) {
+                throw e;
+            }
+        }
+    }
+}
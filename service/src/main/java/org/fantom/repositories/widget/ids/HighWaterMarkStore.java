@@ -0,0 +1,16 @@
+package org.fantom.repositories.widget.ids;
+
+/**
+ * Durable storage of the bound, below which ids may have been handed out already
+ */
+public interface HighWaterMarkStore {
+    /**
+     * @return stored mark, or 0 if nothing is stored yet
+     */
+    long load();
+
+    /**
+     * Durably store new mark, must not return before it is stored
+     */
+    void store(long mark);
+}
@@ -0,0 +1,20 @@
+package org.fantom.repositories.widget.ids;
+
+import org.fantom.repositories.widget.IdGenerator;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates random (version 4) UUIDs from {@link ThreadLocalRandom}, rather than from shared {@link java.security.SecureRandom},
+ * that {@link UUID#randomUUID()} synchronizes on. Such ids are unique, but not unpredictable
+ */
+public class RandomUuidIdGenerator implements IdGenerator<String> {
+    @Override
+    public String generate() {
+        var random = ThreadLocalRandom.current();
+        var mostSigBits = random.nextLong() & ~0xF000L | 0x4000L;
+        var leastSigBits = random.nextLong() & ~(0xC000L << 48) | (0x8000L << 48);
+        return new UUID(mostSigBits, leastSigBits).toString();
+    }
+}
@@ -0,0 +1,63 @@
+package org.fantom.repositories.widget.ids;
+
+import org.fantom.repositories.widget.IdGenerator;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates roughly time-ordered ids, unique across nodes without any coordination, except unique node ids.
+ * Id consists of 41 bits of milliseconds since {@link #EPOCH}, 10 bits of node id and 12 bits of sequence number
+ * within millisecond. Time and sequence are advanced together by a single CAS, so generator is lock-free.
+ * If sequence of current millisecond is exhausted, or clock goes backwards, generator borrows the next millisecond
+ * instead of waiting for it, so ids keep increasing, but may run ahead of the clock under sustained load
+ * of more than 4096 ids per millisecond. Uniqueness after restart relies on clock not being set back
+ * further than generator ran ahead
+ */
+public class SnowflakeIdGenerator implements IdGenerator<Long> {
+    public static final int NODE_BITS = 10;
+    public static final int SEQUENCE_BITS = 12;
+    public static final long MAX_NODE = (1L << NODE_BITS) - 1;
+    /**
+     * 2020-01-01T00:00:00Z, time of the first id
+     */
+    public static final long EPOCH = Instant.parse("2020-01-01T00:00:00Z").toEpochMilli();
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final Clock clock;
+    private final long node;
+    // milliseconds since epoch, followed by sequence number
+    private final AtomicLong state = new AtomicLong();
+
+    /**
+     * @param node id of this node, unique among all nodes, generating ids for the same widgets
+     */
+    public SnowflakeIdGenerator(long node, Clock clock) {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("node must be in [0, " + MAX_NODE + "], got " + node);
+        }
+        this.node = node;
+        this.clock = clock;
+    }
+
+    public SnowflakeIdGenerator(long node) {
+        this(node, Clock.systemUTC());
+    }
+
+    @Override
+    public Long generate() {
+        while (true) {
+            var last = state.get();
+            var now = clock.millis() - EPOCH;
+            // sequence overflow carries into time part
+            var next = now > last >>> SEQUENCE_BITS ? now << SEQUENCE_BITS : last + 1;
+            if (state.compareAndSet(last, next)) {
+                return (next >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS)
+                        | node << SEQUENCE_BITS
+                        | next & SEQUENCE_MASK;
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.fantom.services.widget;
+
+import org.fantom.repositories.widget.dto.Area;
+
+/**
+ * Pyramid of square tiles over the whole coordinate plane, for zoomed out views.
+ * The only tile of zoom level 0 covers all int coordinates, every tile of level z is split into 4 tiles of level z + 1.
+ * Tile of level z is addressed by column x and row y, both in [0, 2^z), counting from left and bottom.
+ * Tiles are aligned with quadrants of in-memory repository spatial index,
+ * so tile summary is read from the index nodes, that cover the tile
+ */
+public final class Tiles {
+    /**
+     * Max zoom level, where tiles are single points
+     */
+    public static final int MAX_ZOOM = 32;
+    /**
+     * Number of cells along each side of tile in tile summary density grid
+     */
+    public static final int GRID_SIZE = 16;
+
+    private Tiles() {
+    }
+
+    /**
+     * @return area, covered by tile
+     * @throws IllegalArgumentException if there is no such tile
+     */
+    public static Area area(int z, long x, long y) throws IllegalArgumentException {
+        if (z < 0 || z > MAX_ZOOM) {
+            throw new IllegalArgumentException("zoom level must be between 0 and " + MAX_ZOOM + ", got " + z);
+        }
+        var tiles = 1L << z;
+        if (x < 0 || x >= tiles || y < 0 || y >= tiles) {
+            throw new IllegalArgumentException("tile of level " + z + " must be between 0 and " + (tiles - 1) + ", got " + x + ", " + y);
+        }
+        var size = 1L << (MAX_ZOOM - z);
+        var left = Integer.MIN_VALUE + x * size;
+        var bottom = Integer.MIN_VALUE + y * size;
+        return new Area((int) left, (int) (left + size - 1), (int) bottom, (int) (bottom + size - 1));
+    }
+}
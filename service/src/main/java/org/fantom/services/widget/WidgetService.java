@@ -1,22 +1,71 @@
 package org.fantom.services.widget;
 
 import org.fantom.domain.Widget;
+import org.fantom.repositories.widget.AsyncWidgetRepository;
+import org.fantom.repositories.widget.ExecutorAsyncWidgetRepository;
 import org.fantom.repositories.widget.WidgetRepository;
 import org.fantom.repositories.widget.dto.Area;
+import org.fantom.repositories.widget.dto.AreaSummary;
+import org.fantom.repositories.widget.dto.ReorderPosition;
 import org.fantom.services.widget.dto.WidgetCreateDto;
+import org.fantom.repositories.widget.exceptions.VersionConflictException;
 import org.fantom.repositories.widget.exceptions.ZIndexConflictException;
 import org.fantom.services.widget.dto.WidgetUpdateDto;
 
-import java.util.Date;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+public class WidgetService<ID> implements AutoCloseable {
+    private static final System.Logger logger = System.getLogger(WidgetService.class.getName());
+    // how long close waits for running compaction, which can't be interrupted in the middle of slice
+    private static final long COMPACTION_SHUTDOWN_SECONDS = 30;
 
-public class WidgetService<ID> {
     private final WidgetRepository<ID> widgetRepository;
+    private final AsyncWidgetRepository<ID> asyncWidgetRepository;
+    private final ZIndexAllocator zIndexAllocator;
+    // whether background compaction is running, to not start another one
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    // runs background compaction, its thread is started on the first compaction and stops, when idle
+    private final ThreadPoolExecutor compactor = new ThreadPoolExecutor(
+            1,
+            1,
+            1, TimeUnit.MINUTES,
+            new LinkedBlockingQueue<>(),
+            runnable -> {
+                var thread = new Thread(runnable, "widget-zindex-compaction");
+                thread.setDaemon(true);
+                return thread;
+            }
+    );
 
-    public WidgetService(WidgetRepository<ID> widgetRepository) {
-        System.out.println("Creating service with repo" + widgetRepository.getClass().getName());
+    public WidgetService(
+            WidgetRepository<ID> widgetRepository,
+            AsyncWidgetRepository<ID> asyncWidgetRepository,
+            ZIndexAllocator zIndexAllocator
+    ) {
         this.widgetRepository = widgetRepository;
+        this.asyncWidgetRepository = asyncWidgetRepository;
+        this.zIndexAllocator = zIndexAllocator;
+        compactor.allowCoreThreadTimeOut(true);
+    }
+
+    public WidgetService(WidgetRepository<ID> widgetRepository, AsyncWidgetRepository<ID> asyncWidgetRepository) {
+        this(widgetRepository, asyncWidgetRepository, ZIndexAllocator.DENSE);
+    }
+
+    /**
+     * Service, which async methods run repository operations in calling thread
+     */
+    public WidgetService(WidgetRepository<ID> widgetRepository) {
+        this(widgetRepository, new ExecutorAsyncWidgetRepository<>(widgetRepository, Runnable::run, Runnable::run));
     }
 
     /**
@@ -26,34 +75,138 @@ public class WidgetService<ID> {
      * @throws ArithmeticException if zIndex of new
      */
     public Widget<ID> create(WidgetCreateDto widget) throws ArithmeticException {
-        Date updatedAt = new Date();
+        long updatedAt = System.currentTimeMillis();
+        Widget<ID> created;
         try {
-            return this.widgetRepository.runAtomically(repo -> {
-                if (widget.zIndex == null) {
-                    var maxZIndex = repo.getMaxZIndex().orElse(Integer.MIN_VALUE);
-                    // move new widget to foreground, throws ArithmeticException on overflow
-                    // TODO: think about moving preceding widgets down to fit into room
-                    int newZIndex = Math.addExact(maxZIndex, 1);
-                    // cannot get zIndex conflict here
-                    return repo.add(new org.fantom.repositories.widget.dto.WidgetCreateDto(widget.x, widget.y, newZIndex, widget.width, widget.height, updatedAt));
-                } else {
-                    repo.shiftUpwards(widget.zIndex);
-                    // cannot get zIndex conflict here
-                    return repo.add(widget.toRepoDto(updatedAt));
-                }
+            created = this.widgetRepository.runAtomically(repo -> {
+                return create(repo, widget, updatedAt);
             });
         } catch (ZIndexConflictException e) {
             throw new RuntimeException(e);
         }
+        checkCompaction(created.zIndex);
+        return created;
     }
 
-    public Optional<Widget<ID>> update(WidgetUpdateDto<ID> update) throws ZIndexConflictException {
-            var oldWidget = widgetRepository.getById(update.id);
-            if (oldWidget.isPresent()) {
-                var newWidget = update.apply(oldWidget.get(), new Date());
-                return widgetRepository.save(newWidget);
+    /**
+     * Move given widgets in front of or behind all other widgets at once, keeping their relative order
+     * @param ids ids of widgets to move, unknown ones are ignored
+     * @return moved widgets, sorted by zIndex asc
+     * @throws ArithmeticException if there is no room for widgets in front of or behind others
+     * @see WidgetRepository#reorder
+     */
+    public List<Widget<ID>> reorder(Collection<ID> ids, ReorderPosition position) throws ArithmeticException {
+        var moved = widgetRepository.reorder(ids, position);
+        checkCompaction(moved);
+        return moved;
+    }
+
+    /**
+     * Renumber widgets densely, keeping their order, to make room at both ends of zIndex range.
+     * Runs in slices, so other operations are not blocked for the whole compaction
+     * @return number of renumbered widgets
+     */
+    public int compactZIndexes() {
+        return widgetRepository.compactZIndexes();
+    }
+
+    /**
+     * Move given widgets by the same offset at once, e.g. when multi-selection is dragged
+     * @param ids ids of widgets to move, unknown ones are ignored
+     * @return moved widgets, sorted by zIndex asc
+     * @throws ArithmeticException if any widget would be moved out of coordinate range
+     */
+    public List<Widget<ID>> translate(Collection<ID> ids, int dx, int dy) throws ArithmeticException {
+        return widgetRepository.translate(ids, dx, dy, System.currentTimeMillis());
+    }
+
+    private void checkCompaction(int zIndex) {
+        if (zIndexAllocator.needsCompaction(zIndex)) {
+            compactInBackground();
+        }
+    }
+
+    // widgets are sorted by zIndex, so the outermost ones are the first and the last
+    private void checkCompaction(List<Widget<ID>> widgets) {
+        if (!widgets.isEmpty()) {
+            checkCompaction(widgets.get(0).zIndex);
+            checkCompaction(widgets.get(widgets.size() - 1).zIndex);
+        }
+    }
+
+    private void compactInBackground() {
+        if (!compacting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            compactor.execute(() -> {
+                try {
+                    widgetRepository.compactZIndexes();
+                } catch (RuntimeException e) {
+                    // next widget near the end of zIndex range retries it
+                    logger.log(System.Logger.Level.ERROR, "Background zIndex compaction failed", e);
+                } finally {
+                    compacting.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // service is closed
+            compacting.set(false);
+        }
+    }
+
+    /**
+     * Stop background compaction, waiting for the running one to complete
+     */
+    @Override
+    public void close() {
+        compactor.shutdown();
+        try {
+            if (!compactor.awaitTermination(COMPACTION_SHUTDOWN_SECONDS, TimeUnit.SECONDS)) {
+                logger.log(System.Logger.Level.WARNING, "Background zIndex compaction is still running after close");
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // must be run atomically
+    private Widget<ID> create(WidgetRepository<ID> repo, WidgetCreateDto widget, long updatedAt) throws ZIndexConflictException {
+        if (widget.zIndex == null) {
+            // move new widget to foreground, throws ArithmeticException on overflow
+            // TODO: think about moving preceding widgets down to fit into room
+            int newZIndex = zIndexAllocator.top(repo);
+            // cannot get zIndex conflict here
+            return repo.add(new org.fantom.repositories.widget.dto.WidgetCreateDto(widget.x, widget.y, newZIndex, widget.width, widget.height, updatedAt));
+        } else {
+            zIndexAllocator.free(repo, widget.zIndex);
+            // cannot get zIndex conflict here
+            return repo.add(widget.toRepoDto(updatedAt));
+        }
+    }
+
+    public Optional<Widget<ID>> update(WidgetUpdateDto<ID> update) throws ZIndexConflictException {
+        long updatedAt = System.currentTimeMillis();
+        return widgetRepository.update(update.id, oldWidget -> update.apply(oldWidget, updatedAt));
+    }
+
+    /**
+     * Update widget only if it is not changed since given version, without locking repository between read and write
+     * @param update changes to apply to widget
+     * @param expectedVersion version of widget, changes are based on
+     * @return updated widget, or none if no such widget
+     * @throws VersionConflictException when widget was changed by someone else since given version
+     */
+    public Optional<Widget<ID>> update(WidgetUpdateDto<ID> update, long expectedVersion) throws ZIndexConflictException, VersionConflictException {
+        var oldWidget = widgetRepository.getById(update.id);
+        if (oldWidget.isEmpty()) {
             return Optional.empty();
+        }
+        if (oldWidget.get().version != expectedVersion) {
+            // fail fast, repository would check it again on save anyway
+            throw new VersionConflictException(update.id, expectedVersion);
+        }
+        return widgetRepository.save(update.apply(oldWidget.get(), System.currentTimeMillis()), expectedVersion);
     }
 
     public boolean delete(ID id) {
@@ -64,6 +217,14 @@ public class WidgetService<ID> {
         return widgetRepository.getById(id);
     }
 
+    /**
+     * @param ids ids of widgets to find, unknown ones are ignored
+     * @return found widgets, sorted by zIndex asc
+     */
+    public List<Widget<ID>> getByIds(Collection<ID> ids) {
+        return widgetRepository.getByIds(ids);
+    }
+
     public List<Widget<ID>> getAll() {
         return widgetRepository.getAll();
     }
@@ -72,7 +233,239 @@ public class WidgetService<ID> {
         return widgetRepository.getInArea(new Area(left, right, bottom, top));
     }
 
+    /**
+     * @param excludeId id of widget to ignore, or null
+     * @see WidgetRepository#findOverlapping(Area, Object)
+     */
+    public List<Widget<ID>> findOverlapping(int left, int right, int bottom, int top, ID excludeId) {
+        return widgetRepository.findOverlapping(new Area(left, right, bottom, top), excludeId);
+    }
+
+    /**
+     * @see WidgetRepository#anyOverlapping(Area)
+     */
+    public boolean anyOverlapping(int left, int right, int bottom, int top) {
+        return widgetRepository.anyOverlapping(new Area(left, right, bottom, top));
+    }
+
+    /**
+     * @return number of widgets, falling into given area entirely
+     */
+    public int countInArea(int left, int right, int bottom, int top) {
+        return widgetRepository.countInArea(new Area(left, right, bottom, top));
+    }
+
+    /**
+     * @return the smallest area, containing all widgets, or none if there are no widgets
+     */
+    public Optional<Area> boundingBox() {
+        return widgetRepository.boundingBox();
+    }
+
+    /**
+     * Count widgets, falling into given area entirely, per tile of grid, laid over the area
+     * @see WidgetRepository#histogram(Area, int)
+     */
+    public int[][] histogram(int left, int right, int bottom, int top, int gridSize) {
+        return widgetRepository.histogram(new Area(left, right, bottom, top), gridSize);
+    }
+
+    /**
+     * @see WidgetRepository#nearest(int, int, int)
+     */
+    public List<Widget<ID>> nearest(int x, int y, int k) throws IllegalArgumentException {
+        return widgetRepository.nearest(x, y, k);
+    }
+
+    /**
+     * Summarize widgets of tile of zoomed out view, see {@link Tiles}
+     * @throws IllegalArgumentException if there is no such tile
+     */
+    public AreaSummary summarizeTile(int z, long x, long y) throws IllegalArgumentException {
+        return widgetRepository.summarize(Tiles.area(z, x, y), Tiles.GRID_SIZE);
+    }
+
+    /**
+     * Pass all widgets, sorted by zIndex asc, to consumer without intermediate list
+     * @param consumer callback, that may be called under repository lock, so it must not access repository
+     */
+    public void forEach(Consumer<? super Widget<ID>> consumer) {
+        widgetRepository.forEach(consumer);
+    }
+
+    /**
+     * Pass all widgets, falling into given area, to consumer without intermediate list
+     * @param consumer callback, that may be called under repository lock, so it must not access repository
+     */
+    public void forEachInArea(int left, int right, int bottom, int top, Consumer<? super Widget<ID>> consumer) {
+        widgetRepository.forEachInArea(new Area(left, right, bottom, top), consumer);
+    }
+
+    /**
+     * @return version of widgets set, changed on every modification
+     * @see WidgetRepository#getVersion()
+     */
+    public long getVersion() {
+        return widgetRepository.getVersion();
+    }
+
+    /**
+     * @param ids ids of widgets to delete, unknown ones are ignored
+     * @return number of deleted widgets
+     */
+    public int deleteByIds(Collection<ID> ids) {
+        return widgetRepository.deleteByIds(ids);
+    }
+
+    /**
+     * Delete all widgets, falling into given area entirely
+     * @return number of deleted widgets
+     */
+    public int deleteInArea(int left, int right, int bottom, int top) {
+        return widgetRepository.deleteInArea(new Area(left, right, bottom, top));
+    }
+
     public void clearAll() {
         widgetRepository.deleteAll();
     }
+
+    // Non-blocking versions of the methods above, they complete exceptionally with the same exceptions
+
+    /**
+     * @see #create(WidgetCreateDto)
+     */
+    public CompletableFuture<Widget<ID>> createAsync(WidgetCreateDto widget) {
+        long updatedAt = System.currentTimeMillis();
+        return asyncWidgetRepository.runAtomically(repo -> create(repo, widget, updatedAt)).thenApply(created -> {
+            checkCompaction(created.zIndex);
+            return created;
+        });
+    }
+
+    /**
+     * @see #reorder(Collection, ReorderPosition)
+     */
+    public CompletableFuture<List<Widget<ID>>> reorderAsync(Collection<ID> ids, ReorderPosition position) {
+        return asyncWidgetRepository.reorder(ids, position).thenApply(moved -> {
+            checkCompaction(moved);
+            return moved;
+        });
+    }
+
+    /**
+     * @see #update(WidgetUpdateDto)
+     */
+    public CompletableFuture<Optional<Widget<ID>>> updateAsync(WidgetUpdateDto<ID> update) {
+        long updatedAt = System.currentTimeMillis();
+        return asyncWidgetRepository.update(update.id, oldWidget -> update.apply(oldWidget, updatedAt));
+    }
+
+    /**
+     * @see #update(WidgetUpdateDto, long)
+     */
+    public CompletableFuture<Optional<Widget<ID>>> updateAsync(WidgetUpdateDto<ID> update, long expectedVersion) {
+        long updatedAt = System.currentTimeMillis();
+        // version is checked by repository on save, no need to read widget beforehand in separate step
+        return asyncWidgetRepository.write(repo -> {
+            var oldWidget = repo.getById(update.id);
+            if (oldWidget.isEmpty()) {
+                return Optional.empty();
+            }
+            return repo.save(update.apply(oldWidget.get(), updatedAt), expectedVersion);
+        });
+    }
+
+    /**
+     * @see #translate(Collection, int, int)
+     */
+    public CompletableFuture<List<Widget<ID>>> translateAsync(Collection<ID> ids, int dx, int dy) {
+        return asyncWidgetRepository.translate(ids, dx, dy, System.currentTimeMillis());
+    }
+
+    public CompletableFuture<Boolean> deleteAsync(ID id) {
+        return asyncWidgetRepository.deleteById(id);
+    }
+
+    public CompletableFuture<Integer> deleteByIdsAsync(Collection<ID> ids) {
+        return asyncWidgetRepository.deleteByIds(ids);
+    }
+
+    public CompletableFuture<Integer> deleteInAreaAsync(int left, int right, int bottom, int top) {
+        return asyncWidgetRepository.deleteInArea(new Area(left, right, bottom, top));
+    }
+
+    public CompletableFuture<Optional<Widget<ID>>> getByIdAsync(ID id) {
+        return asyncWidgetRepository.getById(id);
+    }
+
+    public CompletableFuture<List<Widget<ID>>> getByIdsAsync(Collection<ID> ids) {
+        return asyncWidgetRepository.getByIds(ids);
+    }
+
+    public CompletableFuture<List<Widget<ID>>> getAllAsync() {
+        return asyncWidgetRepository.getAll();
+    }
+
+    public CompletableFuture<List<Widget<ID>>> getInAreaAsync(int left, int right, int bottom, int top) {
+        return asyncWidgetRepository.getInArea(new Area(left, right, bottom, top));
+    }
+
+    public CompletableFuture<List<Widget<ID>>> findOverlappingAsync(int left, int right, int bottom, int top, ID excludeId) {
+        return asyncWidgetRepository.findOverlapping(new Area(left, right, bottom, top), excludeId);
+    }
+
+    public CompletableFuture<Boolean> anyOverlappingAsync(int left, int right, int bottom, int top) {
+        return asyncWidgetRepository.anyOverlapping(new Area(left, right, bottom, top));
+    }
+
+    public CompletableFuture<Integer> countInAreaAsync(int left, int right, int bottom, int top) {
+        return asyncWidgetRepository.countInArea(new Area(left, right, bottom, top));
+    }
+
+    public CompletableFuture<Optional<Area>> boundingBoxAsync() {
+        return asyncWidgetRepository.boundingBox();
+    }
+
+    public CompletableFuture<int[][]> histogramAsync(int left, int right, int bottom, int top, int gridSize) {
+        return asyncWidgetRepository.histogram(new Area(left, right, bottom, top), gridSize);
+    }
+
+    public CompletableFuture<List<Widget<ID>>> nearestAsync(int x, int y, int k) {
+        return asyncWidgetRepository.nearest(x, y, k);
+    }
+
+    /**
+     * @see #summarizeTile(int, long, long)
+     */
+    public CompletableFuture<AreaSummary> summarizeTileAsync(int z, long x, long y) {
+        Area area;
+        try {
+            area = Tiles.area(z, x, y);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return asyncWidgetRepository.summarize(area, Tiles.GRID_SIZE);
+    }
+
+    /**
+     * Get next page of all widgets, sorted by zIndex asc
+     * @param afterZIndex zIndex of the last widget of previous page, or null to get the first page
+     * @see WidgetRepository#getPage(Integer, int)
+     */
+    public CompletableFuture<List<Widget<ID>>> getPageAsync(Integer afterZIndex, int limit) {
+        return asyncWidgetRepository.getPage(afterZIndex, limit);
+    }
+
+    /**
+     * Get next page of widgets in area, sorted by zIndex asc
+     * @param afterZIndex zIndex of the last widget of previous page, or null to get the first page
+     * @see WidgetRepository#getInAreaPage(Area, Integer, int)
+     */
+    public CompletableFuture<List<Widget<ID>>> getInAreaPageAsync(int left, int right, int bottom, int top, Integer afterZIndex, int limit) {
+        return asyncWidgetRepository.getInAreaPage(new Area(left, right, bottom, top), afterZIndex, limit);
+    }
+
+    public CompletableFuture<Void> clearAllAsync() {
+        return asyncWidgetRepository.deleteAll();
+    }
 }
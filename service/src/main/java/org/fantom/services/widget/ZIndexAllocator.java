@@ -0,0 +1,150 @@
+package org.fantom.services.widget;
+
+import org.fantom.domain.Widget;
+import org.fantom.repositories.widget.WidgetRepository;
+import org.fantom.repositories.widget.exceptions.ZIndexConflictException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Chooses zIndexes for new widgets.
+ * Dense allocator, with gap 1, puts widget without zIndex right above the top one and makes room for widget
+ * with occupied zIndex by shifting all widgets of continuous zIndex sequence above it by one, see
+ * {@link WidgetRepository#shiftUpwards}, so every insert into a long sequence rewrites all of it.
+ * Gapped allocator puts widgets {@code gap} apart from each other, so there is usually free room above any widget.
+ * Widget, occupying zIndex of new one, is moved into the middle of that room, and only when the room gets too small,
+ * less than {@code gap / }{@value #DENSITY}, more widgets above are spread evenly over a wider range.
+ * In both cases relative order of existing widgets is kept, but gapped allocator doesn't keep distances between them.
+ * When zIndex of new widget gets closer than compaction headroom to either end of zIndex range,
+ * zIndexes should be compacted, see {@link WidgetRepository#compactZIndexes}, before they run out
+ */
+public class ZIndexAllocator {
+    public static final ZIndexAllocator DENSE = new ZIndexAllocator(1);
+    /**
+     * how many times room between widgets may shrink, before widgets are spread again
+     */
+    public static final int DENSITY = 16;
+    // number of widgets, read at once, when looking for room above occupied zIndex
+    private static final int PAGE_SIZE = 64;
+
+    private final int gap;
+    private final int minGap;
+    private final int compactionHeadroom;
+
+    /**
+     * @param gap distance between widgets, 1 means no gaps
+     * @param compactionHeadroom distance to the ends of zIndex range, reaching which requires compaction, 0 means never
+     */
+    public ZIndexAllocator(int gap, int compactionHeadroom) {
+        if (gap < 1) {
+            throw new IllegalArgumentException("gap must be positive, got " + gap);
+        }
+        if (compactionHeadroom < 0) {
+            throw new IllegalArgumentException("compaction headroom must not be negative, got " + compactionHeadroom);
+        }
+        this.gap = gap;
+        this.minGap = Math.max(1, gap / DENSITY);
+        this.compactionHeadroom = compactionHeadroom;
+    }
+
+    /**
+     * @param gap distance between widgets, 1 means no gaps
+     */
+    public ZIndexAllocator(int gap) {
+        this(gap, 0);
+    }
+
+    public int getGap() {
+        return gap;
+    }
+
+    /**
+     * @param zIndex zIndex of new widget
+     * @return whether zIndex is too close to either end of zIndex range, so zIndexes should be compacted
+     */
+    public boolean needsCompaction(int zIndex) {
+        return compactionHeadroom > 0
+                && ((long) Integer.MAX_VALUE - zIndex < compactionHeadroom || (long) zIndex - Integer.MIN_VALUE < compactionHeadroom);
+    }
+
+    /**
+     * Must be run atomically
+     * @return zIndex above all widgets
+     * @throws ArithmeticException if there is no zIndex above the top widget
+     */
+    public int top(WidgetRepository<?> repo) throws ArithmeticException {
+        var maxZIndex = repo.getMaxZIndex().orElse(Integer.MIN_VALUE);
+        // fall back to the next zIndex, when there is no room for a gap
+        return maxZIndex <= Integer.MAX_VALUE - gap ? maxZIndex + gap : Math.addExact(maxZIndex, 1);
+    }
+
+    /**
+     * Move widgets up to free given zIndex, keeping their relative order. Must be run atomically
+     * @throws ArithmeticException if there is no room above zIndex to move widgets to
+     */
+    public <ID> void free(WidgetRepository<ID> repo, int zIndex) throws ArithmeticException, ZIndexConflictException {
+        if (gap == 1) {
+            repo.shiftUpwards(zIndex);
+            return;
+        }
+        // widgets from zIndex upwards, that have no room to move to yet
+        var crowded = new ArrayList<Widget<ID>>();
+        Integer after = zIndex == Integer.MIN_VALUE ? null : zIndex - 1;
+        while (true) {
+            var page = repo.getPage(after, PAGE_SIZE);
+            for (var widget : page) {
+                if (crowded.isEmpty()) {
+                    if (widget.zIndex != zIndex) {
+                        // zIndex is free
+                        return;
+                    }
+                } else {
+                    var step = ((long) widget.zIndex - zIndex) / (crowded.size() + 1);
+                    if (step >= minGap) {
+                        spread(repo, crowded, zIndex, (int) step);
+                        return;
+                    }
+                }
+                crowded.add(widget);
+            }
+            if (page.size() < PAGE_SIZE) {
+                break;
+            }
+            after = page.get(page.size() - 1).zIndex;
+        }
+        if (crowded.isEmpty()) {
+            return;
+        }
+        // no widgets above, spread crowded ones up to the top
+        var step = ((long) Integer.MAX_VALUE + 1 - zIndex) / (crowded.size() + 1);
+        if (step < 1) {
+            throw new ArithmeticException("No room to shift widgets upwards");
+        }
+        spread(repo, crowded, zIndex, (int) Math.min(step, gap));
+    }
+
+    /**
+     * Move i-th widget to {@code zIndex + (i + 1) * step}.
+     * Widgets, moving up, are moved from the top one, and widgets, moving down, from the bottom one,
+     * so as order is kept, none of them is moved to zIndex, occupied by other widget
+     */
+    private static <ID> void spread(WidgetRepository<ID> repo, List<Widget<ID>> widgets, int zIndex, int step) throws ZIndexConflictException {
+        for (int i = widgets.size() - 1; i >= 0; i--) {
+            var newZIndex = (int) (zIndex + (long) (i + 1) * step);
+            if (newZIndex > widgets.get(i).zIndex) {
+                move(repo, widgets.get(i), newZIndex);
+            }
+        }
+        for (int i = 0; i < widgets.size(); i++) {
+            var newZIndex = (int) (zIndex + (long) (i + 1) * step);
+            if (newZIndex < widgets.get(i).zIndex) {
+                move(repo, widgets.get(i), newZIndex);
+            }
+        }
+    }
+
+    private static <ID> void move(WidgetRepository<ID> repo, Widget<ID> widget, int zIndex) throws ZIndexConflictException {
+        repo.save(new Widget.Builder<>(widget).withZIndex(zIndex).build());
+    }
+}
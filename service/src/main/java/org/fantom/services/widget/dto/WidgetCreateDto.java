@@ -1,6 +1,5 @@
 package org.fantom.services.widget.dto;
 
-import java.util.Date;
 import java.util.Optional;
 
 public final class WidgetCreateDto {
@@ -22,7 +21,7 @@ public final class WidgetCreateDto {
         this.height = height;
     }
 
-    public org.fantom.repositories.widget.dto.WidgetCreateDto toRepoDto(Date updatedAt) {
+    public org.fantom.repositories.widget.dto.WidgetCreateDto toRepoDto(long updatedAt) {
         return new org.fantom.repositories.widget.dto.WidgetCreateDto(x, y, zIndex, width, height, updatedAt);
     }
 }
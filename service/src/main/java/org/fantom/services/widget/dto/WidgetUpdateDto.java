@@ -2,7 +2,6 @@ package org.fantom.services.widget.dto;
 
 import org.fantom.domain.Widget;
 
-import java.util.Date;
 import java.util.Optional;
 
 public final class WidgetUpdateDto<ID> {
@@ -42,7 +41,7 @@ public final class WidgetUpdateDto<ID> {
         this.height = height;
     }
 
-    public Widget<ID> apply(Widget<ID> oldWidget, Date updatedAt) {
+    public Widget<ID> apply(Widget<ID> oldWidget, long updatedAt) {
         return new Widget<>(
                 id,
                 getX().orElse(oldWidget.x),
@@ -50,7 +49,8 @@ public final class WidgetUpdateDto<ID> {
                 getZIndex().orElse(oldWidget.zIndex),
                 getWidth().orElse(oldWidget.width),
                 getHeight().orElse(oldWidget.height),
-                updatedAt
+                updatedAt,
+                oldWidget.version
         );
     }
 }
@@ -2,14 +2,17 @@ package org.fantom.repositories.widget;
 
 import org.fantom.domain.Widget;
 import org.fantom.repositories.widget.dto.Area;
+import org.fantom.repositories.widget.dto.ReorderPosition;
 import org.fantom.repositories.widget.dto.WidgetCreateDto;
+import org.fantom.repositories.widget.exceptions.VersionConflictException;
 import org.fantom.repositories.widget.exceptions.ZIndexConflictException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.RepeatedTest;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.Date;
+import java.util.List;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
@@ -32,7 +35,7 @@ public abstract class RepositoryTest<ID> {
     @Test
     public void fulfillsId() {
         try {
-            var widget = repository.add(new WidgetCreateDto(0, 0, 0, 0, 0, new Date()));
+            var widget = repository.add(new WidgetCreateDto(0, 0, 0, 0, 0, System.currentTimeMillis()));
             assertNotNull(widget.id);
         } catch (ZIndexConflictException e) {
             fail("zIndex conflict", e);
@@ -42,8 +45,8 @@ public abstract class RepositoryTest<ID> {
     @Test
     public void throwsZIndexConflictExceptionOnAdd() {
         try {
-            repository.add(new WidgetCreateDto(0, 0, 0, 0, 0, new Date()));
-            repository.add(new WidgetCreateDto(0, 0, 0, 0, 0, new Date()));
+            repository.add(new WidgetCreateDto(0, 0, 0, 0, 0, System.currentTimeMillis()));
+            repository.add(new WidgetCreateDto(0, 0, 0, 0, 0, System.currentTimeMillis()));
             fail("zIndex conflict exception was not thrown");
         } catch (ZIndexConflictException ignored) {
         }
@@ -52,14 +55,14 @@ public abstract class RepositoryTest<ID> {
     @Test
     public void saves() {
         try {
-            var widget = repository.add(new WidgetCreateDto(0, 0, 0, 0, 0, new Date()));
+            var widget = repository.add(new WidgetCreateDto(0, 0, 0, 0, 0, System.currentTimeMillis()));
             var newWidget = new Widget.Builder<>(widget)
                     .withX(1)
                     .withY(2)
                     .withWidth(3)
                     .withHeight(4)
                     .withZIndex(5)
-                    .withUpdatedAt(Date.from(new Date().toInstant().plusSeconds(1000)))
+                    .withUpdatedAt(System.currentTimeMillis() + 1_000_000)
                     .build();
             var saved = repository.save(newWidget);
             assertTrue(saved.isPresent(), "widget was not saved");
@@ -75,14 +78,14 @@ public abstract class RepositoryTest<ID> {
     @Test
     public void saveOfDeletedWidgetReturnsNone() {
         try {
-            var widget = repository.add(new WidgetCreateDto(0, 0, 0, 0, 0, new Date()));
+            var widget = repository.add(new WidgetCreateDto(0, 0, 0, 0, 0, System.currentTimeMillis()));
             var newWidget = new Widget.Builder<>(widget)
                     .withX(1)
                     .withY(2)
                     .withWidth(3)
                     .withHeight(4)
                     .withZIndex(5)
-                    .withUpdatedAt(Date.from(new Date().toInstant().plusSeconds(1000)))
+                    .withUpdatedAt(System.currentTimeMillis() + 1_000_000)
                     .build();
             var deleted = repository.deleteById(widget.id);
             assertTrue(deleted);
@@ -98,8 +101,8 @@ public abstract class RepositoryTest<ID> {
         Widget<ID> widget = null;
         Widget<ID> widget2 = null;
         try {
-            widget = repository.add(new WidgetCreateDto(0, 0, 0, 0, 0, new Date()));
-            widget2 = repository.add(new WidgetCreateDto(0, 0, 1, 0, 0, new Date()));
+            widget = repository.add(new WidgetCreateDto(0, 0, 0, 0, 0, System.currentTimeMillis()));
+            widget2 = repository.add(new WidgetCreateDto(0, 0, 1, 0, 0, System.currentTimeMillis()));
             var newWidget = new Widget.Builder<>(widget2).withZIndex(0).build();
             repository.save(newWidget);
             fail("Widget saved without zIndex conflict exception");
@@ -120,7 +123,7 @@ public abstract class RepositoryTest<ID> {
         new Thread(() -> {
             modifyStartLock.lock();
             try {
-                repository.add(new WidgetCreateDto(0, 0, Integer.MAX_VALUE, 0, 0, new Date()));
+                repository.add(new WidgetCreateDto(0, 0, Integer.MAX_VALUE, 0, 0, System.currentTimeMillis()));
             } catch (ZIndexConflictException e) {
                 fail("zIndex conflict exception was thrown", e);
             }
@@ -146,7 +149,7 @@ public abstract class RepositoryTest<ID> {
 
         Widget<ID> widget = null;
         try {
-            widget = repository.add(new WidgetCreateDto(0, 0, Integer.MAX_VALUE, 0, 0, new Date()));
+            widget = repository.add(new WidgetCreateDto(0, 0, Integer.MAX_VALUE, 0, 0, System.currentTimeMillis()));
         } catch (ZIndexConflictException e) {
             fail("zIndex conflict exception was thrown", e);
         }
@@ -178,8 +181,8 @@ public abstract class RepositoryTest<ID> {
     @Test
     public void shiftUpwardsDoesNothingIfZIndexIsFree() {
         try {
-            var widget = repository.add(new WidgetCreateDto(0,0,0,0,0, new Date()));
-            repository.shiftUpwards(widget.zIndex-1);
+            var widget = repository.add(new WidgetCreateDto(0,0,0,0,0, System.currentTimeMillis()));
+            assertEquals(0, repository.shiftUpwards(widget.zIndex-1));
             var widgets = repository.getAll();
             assertEquals(widgets.size(), 1);
             assertEquals(widget, widgets.get(0), "widget is changed while shiftUpwards");
@@ -191,12 +194,12 @@ public abstract class RepositoryTest<ID> {
     @Test
     public void shiftUpwardsMovesOnlyNecessaryWidgets() {
         try {
-            var widget0 = repository.add(new WidgetCreateDto(0,0,0,0,0, new Date()));
-            var widget1 = repository.add(new WidgetCreateDto(0,0,1,0,0, new Date()));
-            var widget2 = repository.add(new WidgetCreateDto(0,0,2,0,0, new Date()));
-            var widget4 = repository.add(new WidgetCreateDto(0,0,4,0,0, new Date()));
+            var widget0 = repository.add(new WidgetCreateDto(0,0,0,0,0, System.currentTimeMillis()));
+            var widget1 = repository.add(new WidgetCreateDto(0,0,1,0,0, System.currentTimeMillis()));
+            var widget2 = repository.add(new WidgetCreateDto(0,0,2,0,0, System.currentTimeMillis()));
+            var widget4 = repository.add(new WidgetCreateDto(0,0,4,0,0, System.currentTimeMillis()));
 
-            repository.shiftUpwards(widget1.zIndex);
+            assertEquals(2, repository.shiftUpwards(widget1.zIndex), "number of shifted widgets");
             var widgets = repository.getAll();
 
             assertEquals(widgets.size(), 4);
@@ -229,7 +232,7 @@ public abstract class RepositoryTest<ID> {
 
     @Test
     public void canFindByArea() throws ZIndexConflictException {
-        var widget = repository.add(new WidgetCreateDto(-5, 30, 30, 10, 20, new Date()));
+        var widget = repository.add(new WidgetCreateDto(-5, 30, 30, 10, 20, System.currentTimeMillis()));
         var widgetsInArea = repository.getInArea(new Area(-10, 10, 20, 60));
         assertEquals(1, widgetsInArea.size());
         assertEquals(widget, widgetsInArea.get(0));
@@ -237,7 +240,7 @@ public abstract class RepositoryTest<ID> {
 
     @Test
     public void canFindByExactTheSameArea() throws ZIndexConflictException {
-        var widget = repository.add(new WidgetCreateDto(-5, 30, 30, 10, 20, new Date()));
+        var widget = repository.add(new WidgetCreateDto(-5, 30, 30, 10, 20, System.currentTimeMillis()));
         var widgetsInArea = repository.getInArea(new Area(widget.x, widget.x+widget.width, widget.y, widget.y+widget.height));
         assertEquals(1, widgetsInArea.size());
         assertEquals(widget, widgetsInArea.get(0));
@@ -245,8 +248,8 @@ public abstract class RepositoryTest<ID> {
 
     @Test
     public void partiallyFallingIntoAreaIsSkipped() throws ZIndexConflictException {
-        var widget = repository.add(new WidgetCreateDto(-5, 30, 30, 10, 20, new Date()));
-        repository.add(new WidgetCreateDto(-4, 20, 31, 10, 20, new Date()));
+        var widget = repository.add(new WidgetCreateDto(-5, 30, 30, 10, 20, System.currentTimeMillis()));
+        repository.add(new WidgetCreateDto(-4, 20, 31, 10, 20, System.currentTimeMillis()));
         var widgetsInArea = repository.getInArea(new Area(widget.x, widget.x+widget.width, widget.y, widget.y+widget.height));
         assertEquals(1, widgetsInArea.size());
         assertEquals(widget, widgetsInArea.get(0));
@@ -254,8 +257,8 @@ public abstract class RepositoryTest<ID> {
 
     @Test
     public void oneWidgetInOtherIsFoundInAreaToo() throws ZIndexConflictException {
-        var widget = repository.add(new WidgetCreateDto(-5, 30, 30, 10, 20, new Date()));
-        var widget2 = repository.add(new WidgetCreateDto(-4, 40, 31, 5, 10, new Date()));
+        var widget = repository.add(new WidgetCreateDto(-5, 30, 30, 10, 20, System.currentTimeMillis()));
+        var widget2 = repository.add(new WidgetCreateDto(-4, 40, 31, 5, 10, System.currentTimeMillis()));
         var widgetsInArea = repository.getInArea(new Area(widget.x, widget.x+widget.width, widget.y, widget.y+widget.height))
                 .stream()
                 .sorted(Comparator.comparingInt(w -> w.zIndex))
@@ -267,14 +270,14 @@ public abstract class RepositoryTest<ID> {
 
     @Test
     public void cannotFindInAreaAfterUpdate() throws ZIndexConflictException {
-        var widget = repository.add(new WidgetCreateDto(-5, 30, 30, 10, 20, new Date()));
+        var widget = repository.add(new WidgetCreateDto(-5, 30, 30, 10, 20, System.currentTimeMillis()));
         var area = new Area(widget.x, widget.x + widget.width, widget.y, widget.y + widget.height);
         var widgetsInArea = repository.getInArea(area);
 
         assertEquals(1, widgetsInArea.size());
         assertEquals(widget, widgetsInArea.get(0));
 
-        var widget2 = repository.save(new Widget<>(widget.id, -4, 20, 30, 5, 10, new Date()));
+        var widget2 = repository.save(new Widget<>(widget.id, -4, 20, 30, 5, 10, System.currentTimeMillis()));
         assertTrue(widget2.isPresent());
 
         var widgetsInAreaAfterUpdate = repository.getInArea(area);
@@ -284,7 +287,7 @@ public abstract class RepositoryTest<ID> {
 
     @Test
     public void cannotFindAfterDelete() throws ZIndexConflictException {
-        var widget = repository.add(new WidgetCreateDto(-5, 30, 30, 10, 20, new Date()));
+        var widget = repository.add(new WidgetCreateDto(-5, 30, 30, 10, 20, System.currentTimeMillis()));
         var area = new Area(widget.x, widget.x + widget.width, widget.y, widget.y + widget.height);
         var widgetsInArea = repository.getInArea(area);
 
@@ -297,4 +300,438 @@ public abstract class RepositoryTest<ID> {
         var widgetsInAreaAfterDelete = repository.getInArea(area);
         assertTrue(widgetsInAreaAfterDelete.isEmpty());
     }
+
+    @Test
+    public void getAllReturnsSavedWidgetWithTheSameZIndex() throws ZIndexConflictException {
+        var widget = repository.add(new WidgetCreateDto(0, 0, 0, 1, 1, System.currentTimeMillis()));
+        var newWidget = new Widget.Builder<>(widget).withX(10).build();
+        assertTrue(repository.save(newWidget).isPresent());
+        var widgets = repository.getAll();
+        assertEquals(1, widgets.size());
+        assertEquals(newWidget, widgets.get(0));
+    }
+
+    @Test
+    public void shiftedWidgetIsFoundWithNewZIndex() throws ZIndexConflictException {
+        var widget = repository.add(new WidgetCreateDto(0, 0, 0, 1, 1, System.currentTimeMillis()));
+        repository.shiftUpwards(widget.zIndex);
+        var shifted = repository.getById(widget.id);
+        assertTrue(shifted.isPresent());
+        assertEquals(widget.zIndex + 1, shifted.get().zIndex);
+        var widgetsInArea = repository.getInArea(new Area(0, 1, 0, 1));
+        assertEquals(1, widgetsInArea.size());
+        assertEquals(shifted.get(), widgetsInArea.get(0));
+    }
+
+    @Test
+    public void forEachInAreaVisitsTheSameWidgetsAsGetInArea() throws ZIndexConflictException {
+        repository.add(new WidgetCreateDto(-5, 30, 30, 10, 20, System.currentTimeMillis()));
+        repository.add(new WidgetCreateDto(-4, 40, 31, 5, 10, System.currentTimeMillis()));
+        repository.add(new WidgetCreateDto(100, 100, 32, 5, 10, System.currentTimeMillis()));
+        var area = new Area(-10, 10, 20, 60);
+        var visited = new ArrayList<Widget<ID>>();
+        repository.forEachInArea(area, visited::add);
+        visited.sort(Comparator.comparingInt(w -> w.zIndex));
+        var found = new ArrayList<>(repository.getInArea(area));
+        found.sort(Comparator.comparingInt(w -> w.zIndex));
+        assertEquals(2, visited.size());
+        assertEquals(found, visited);
+    }
+
+    @Test
+    public void versionChangesOnModificationsOnly() throws ZIndexConflictException {
+        var initial = repository.getVersion();
+        var widget = repository.add(new WidgetCreateDto(0, 0, 0, 1, 1, System.currentTimeMillis()));
+        var afterAdd = repository.getVersion();
+        assertNotEquals(initial, afterAdd, "version is not changed on add");
+
+        repository.getAll();
+        repository.getById(widget.id);
+        repository.getInArea(new Area(0, 1, 0, 1));
+        assertEquals(afterAdd, repository.getVersion(), "version is changed on read");
+
+        repository.save(new Widget.Builder<>(widget).withX(1).build());
+        var afterSave = repository.getVersion();
+        assertNotEquals(afterAdd, afterSave, "version is not changed on save");
+
+        repository.deleteById(widget.id);
+        assertNotEquals(afterSave, repository.getVersion(), "version is not changed on delete");
+    }
+
+    @Test
+    public void updateAppliesFunctionToCurrentWidget() throws ZIndexConflictException {
+        var widget = repository.add(new WidgetCreateDto(0, 0, 0, 1, 1, System.currentTimeMillis()));
+        repository.save(new Widget.Builder<>(widget).withX(5).build());
+        var updated = repository.update(widget.id, w -> new Widget.Builder<>(w).withY(w.x + 1).build());
+        assertTrue(updated.isPresent());
+        assertEquals(5, updated.get().x);
+        assertEquals(6, updated.get().y);
+        assertEquals(updated, repository.getById(widget.id));
+    }
+
+    @Test
+    public void updateOfDeletedWidgetReturnsNone() throws ZIndexConflictException {
+        var widget = repository.add(new WidgetCreateDto(0, 0, 0, 1, 1, System.currentTimeMillis()));
+        assertTrue(repository.deleteById(widget.id));
+        var updated = repository.update(widget.id, w -> new Widget.Builder<>(w).withX(1).build());
+        assertTrue(updated.isEmpty(), "widget was updated");
+    }
+
+    @Test
+    public void throwsZIndexConflictExceptionOnUpdate() throws ZIndexConflictException {
+        var widget = repository.add(new WidgetCreateDto(0, 0, 0, 1, 1, System.currentTimeMillis()));
+        var widget2 = repository.add(new WidgetCreateDto(0, 0, 1, 1, 1, System.currentTimeMillis()));
+        try {
+            repository.update(widget2.id, w -> new Widget.Builder<>(w).withZIndex(widget.zIndex).build());
+            fail("Widget updated without zIndex conflict exception");
+        } catch (ZIndexConflictException ignored) {
+            assertEquals(widget2, repository.getById(widget2.id).orElseThrow());
+        }
+    }
+
+    @Test
+    public void saveChangesVersion() throws ZIndexConflictException {
+        var widget = repository.add(new WidgetCreateDto(0, 0, 0, 1, 1, System.currentTimeMillis()));
+        var saved = repository.save(new Widget.Builder<>(widget).withX(1).build());
+        assertTrue(saved.isPresent());
+        assertNotEquals(widget.version, saved.get().version);
+        assertEquals(saved.get().version, repository.getById(widget.id).orElseThrow().version);
+    }
+
+    @Test
+    public void saveWithExpectedVersionDetectsConcurrentChange() throws ZIndexConflictException, VersionConflictException {
+        var widget = repository.add(new WidgetCreateDto(0, 0, 0, 1, 1, System.currentTimeMillis()));
+        var saved = repository.save(new Widget.Builder<>(widget).withX(1).build(), widget.version);
+        assertTrue(saved.isPresent());
+        assertEquals(1, saved.get().x);
+        try {
+            // based on the same, already outdated version
+            repository.save(new Widget.Builder<>(widget).withY(1).build(), widget.version);
+            fail("Widget saved without version conflict exception");
+        } catch (VersionConflictException e) {
+            assertEquals(widget.id, e.id);
+            var stored = repository.getById(widget.id).orElseThrow();
+            assertEquals(1, stored.x);
+            assertEquals(0, stored.y);
+        }
+    }
+
+    @Test
+    public void pagesFollowEachOtherByZIndex() throws ZIndexConflictException {
+        for (int i = 0; i < 10; i++) {
+            // every other widget falls into area
+            repository.add(new WidgetCreateDto(i % 2 * 100, 0, 10 - i, 1, 1, System.currentTimeMillis()));
+        }
+        var all = new ArrayList<Widget<ID>>();
+        Integer after = null;
+        for (var page = repository.getPage(after, 3); !page.isEmpty(); page = repository.getPage(after, 3)) {
+            assertTrue(page.size() <= 3);
+            all.addAll(page);
+            after = page.get(page.size() - 1).zIndex;
+        }
+        assertEquals(repository.getAll(), all);
+
+        var area = new Area(0, 10, 0, 10);
+        var firstPage = repository.getInAreaPage(area, null, 3);
+        assertEquals(
+                firstPage.stream().map(w -> w.zIndex).collect(Collectors.toList()),
+                List.of(2, 4, 6)
+        );
+        var lastPage = repository.getInAreaPage(area, 6, 3);
+        assertEquals(
+                lastPage.stream().map(w -> w.zIndex).collect(Collectors.toList()),
+                List.of(8, 10)
+        );
+    }
+
+    @Test
+    public void areaPagesMatchWidgetsInArea() throws ZIndexConflictException {
+        for (int i = 0; i < 50; i++) {
+            // dense area holds most of widgets, sparse one only a few
+            repository.add(new WidgetCreateDto(i % 10 == 0 ? 100 + i : i, 0, 50 - i, 1, 1, System.currentTimeMillis()));
+        }
+        for (var area : List.of(new Area(0, 50, 0, 10), new Area(100, 200, 0, 10))) {
+            var expected = new ArrayList<>(repository.getInArea(area));
+            expected.sort(Comparator.comparingInt(w -> w.zIndex));
+            var pages = new ArrayList<Widget<ID>>();
+            Integer after = null;
+            for (var page = repository.getInAreaPage(area, after, 4); !page.isEmpty(); page = repository.getInAreaPage(area, after, 4)) {
+                assertTrue(page.size() <= 4);
+                pages.addAll(page);
+                after = page.get(page.size() - 1).zIndex;
+            }
+            assertEquals(expected, pages);
+        }
+    }
+
+    @Test
+    public void compactZIndexesRenumbersDenselyKeepingOrder() throws ZIndexConflictException {
+        var zIndexes = List.of(Integer.MAX_VALUE, Integer.MAX_VALUE - 10, 5, 3, -7, Integer.MIN_VALUE);
+        for (var zIndex : zIndexes) {
+            repository.add(new WidgetCreateDto(zIndex % 100, 0, zIndex, 1, 1, System.currentTimeMillis()));
+        }
+        var before = repository.getAll();
+
+        assertEquals(6, repository.compactZIndexes(), "number of moved widgets");
+        var after = repository.getAll();
+
+        assertEquals(
+                List.of(-2, -1, 0, 1, 2, 3),
+                after.stream().map(w -> w.zIndex).collect(Collectors.toList())
+        );
+        for (int i = 0; i < before.size(); i++) {
+            assertEquals(before.get(i).id, after.get(i).id, "order of widgets is changed");
+            assertEquals(before.get(i).x, after.get(i).x);
+        }
+        assertEquals(0, repository.compactZIndexes(), "compacted widgets are moved again");
+        assertEquals(after, repository.getAll());
+    }
+
+    @Test
+    public void compactZIndexesMovesOnlyNecessaryWidgets() throws ZIndexConflictException {
+        var widget0 = repository.add(new WidgetCreateDto(0, 0, 0, 1, 1, System.currentTimeMillis()));
+        var widget1 = repository.add(new WidgetCreateDto(0, 0, 1, 1, 1, System.currentTimeMillis()));
+        repository.add(new WidgetCreateDto(0, 0, 10, 1, 1, System.currentTimeMillis()));
+
+        assertEquals(1, repository.compactZIndexes(), "number of moved widgets");
+        var widgets = repository.getAll();
+        assertEquals(widget0, widgets.get(0), "widget0 is changed while compaction");
+        assertEquals(widget1, widgets.get(1), "widget1 is changed while compaction");
+        assertEquals(2, widgets.get(2).zIndex);
+    }
+
+    @Test
+    public void compactZIndexesHandlesManyWidgets() throws ZIndexConflictException {
+        var count = 600;
+        var dtos = new ArrayList<WidgetCreateDto>();
+        for (int i = 0; i < count; i++) {
+            dtos.add(new WidgetCreateDto(0, 0, (i - count / 2) * 3, 1, 1, System.currentTimeMillis()));
+        }
+        repository.add(dtos);
+
+        assertEquals(count - 1, repository.compactZIndexes(), "number of moved widgets");
+        var widgets = repository.getAll();
+        assertEquals(count, widgets.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i - count / 2, widgets.get(i).zIndex);
+        }
+    }
+
+    @Test
+    public void reorderMovesWidgetsToFrontKeepingOrder() throws ZIndexConflictException {
+        var widget0 = repository.add(new WidgetCreateDto(0, 0, 0, 1, 1, System.currentTimeMillis()));
+        var widget1 = repository.add(new WidgetCreateDto(1, 0, 1, 1, 1, System.currentTimeMillis()));
+        var widget2 = repository.add(new WidgetCreateDto(2, 0, 5, 1, 1, System.currentTimeMillis()));
+        var widget3 = repository.add(new WidgetCreateDto(3, 0, 9, 1, 1, System.currentTimeMillis()));
+
+        var moved = repository.reorder(List.of(widget2.id, widget0.id), ReorderPosition.front);
+
+        assertEquals(List.of(widget0.id, widget2.id), moved.stream().map(w -> w.id).collect(Collectors.toList()));
+        assertEquals(List.of(10, 11), moved.stream().map(w -> w.zIndex).collect(Collectors.toList()));
+        assertEquals(widget0.x, moved.get(0).x);
+        assertTrue(moved.get(0).version > widget0.version, "version of moved widget is not changed");
+        var widgets = repository.getAll();
+        assertEquals(
+                List.of(widget1.id, widget3.id, widget0.id, widget2.id),
+                widgets.stream().map(w -> w.id).collect(Collectors.toList())
+        );
+        assertEquals(widget1, widgets.get(0), "widget1 is changed while reorder");
+        assertEquals(widget3, widgets.get(1), "widget3 is changed while reorder");
+        assertEquals(moved, repository.reorder(List.of(widget0.id, widget2.id), ReorderPosition.front), "widgets in front are moved again");
+    }
+
+    @Test
+    public void reorderMovesWidgetsToBackKeepingOrder() throws ZIndexConflictException {
+        var widget0 = repository.add(new WidgetCreateDto(0, 0, 0, 1, 1, System.currentTimeMillis()));
+        var widget1 = repository.add(new WidgetCreateDto(1, 0, 1, 1, 1, System.currentTimeMillis()));
+        var widget2 = repository.add(new WidgetCreateDto(2, 0, 2, 1, 1, System.currentTimeMillis()));
+        var widget3 = repository.add(new WidgetCreateDto(3, 0, 3, 1, 1, System.currentTimeMillis()));
+
+        // widget1 takes place of widget0, so targets overlap with zIndexes of moved widgets
+        var moved = repository.reorder(List.of(widget3.id, widget1.id), ReorderPosition.back);
+
+        assertEquals(List.of(widget1.id, widget3.id), moved.stream().map(w -> w.id).collect(Collectors.toList()));
+        assertEquals(List.of(-2, -1), moved.stream().map(w -> w.zIndex).collect(Collectors.toList()));
+        assertEquals(
+                List.of(widget1.id, widget3.id, widget0.id, widget2.id),
+                repository.getAll().stream().map(w -> w.id).collect(Collectors.toList())
+        );
+    }
+
+    @Test
+    public void reorderIgnoresUnknownIdsAndFailsWithoutRoom() throws ZIndexConflictException {
+        var widget0 = repository.add(new WidgetCreateDto(0, 0, 0, 1, 1, System.currentTimeMillis()));
+        var widget1 = repository.add(new WidgetCreateDto(1, 0, Integer.MAX_VALUE, 1, 1, System.currentTimeMillis()));
+        repository.deleteById(widget1.id);
+        var top = repository.add(new WidgetCreateDto(1, 0, Integer.MAX_VALUE, 1, 1, System.currentTimeMillis()));
+
+        assertEquals(List.of(), repository.reorder(List.of(widget1.id), ReorderPosition.back));
+        assertThrows(ArithmeticException.class, () -> repository.reorder(List.of(widget0.id), ReorderPosition.front));
+        assertEquals(List.of(widget0, top), repository.getAll(), "widgets are changed by failed reorder");
+    }
+
+    @Test
+    public void translateMovesOnlyGivenWidgets() throws ZIndexConflictException {
+        var widget0 = repository.add(new WidgetCreateDto(0, 0, 0, 2, 2, System.currentTimeMillis()));
+        var widget1 = repository.add(new WidgetCreateDto(10, 10, 1, 2, 2, System.currentTimeMillis()));
+        var widget2 = repository.add(new WidgetCreateDto(20, 20, 2, 2, 2, System.currentTimeMillis()));
+        var updatedAt = System.currentTimeMillis() + 1000;
+
+        var moved = repository.translate(List.of(widget2.id, widget0.id, widget0.id), 100, -5, updatedAt);
+
+        assertEquals(List.of(widget0.id, widget2.id), moved.stream().map(w -> w.id).collect(Collectors.toList()));
+        var movedWidget0 = moved.get(0);
+        assertEquals(100, movedWidget0.x);
+        assertEquals(-5, movedWidget0.y);
+        assertEquals(widget0.zIndex, movedWidget0.zIndex);
+        assertEquals(widget0.width, movedWidget0.width);
+        assertEquals(updatedAt, movedWidget0.updatedAt);
+        assertTrue(movedWidget0.version > widget0.version, "version of moved widget is not changed");
+        assertEquals(List.of(widget0.id, widget1.id, widget2.id), repository.getAll().stream().map(w -> w.id).collect(Collectors.toList()));
+        assertEquals(widget1, repository.getById(widget1.id).orElseThrow(), "widget1 is changed while translate");
+
+        // coordinate indexes follow moved widgets
+        assertEquals(List.of(widget2.id), repository.getInArea(new Area(110, 130, 0, 30)).stream().map(w -> w.id).collect(Collectors.toList()));
+        assertEquals(List.of(), repository.getInArea(new Area(-1, 3, -1, 3)));
+    }
+
+    @Test
+    public void translateMovesNothingOnOverflow() throws ZIndexConflictException {
+        var widget0 = repository.add(new WidgetCreateDto(0, 0, 0, 1, 1, System.currentTimeMillis()));
+        var widget1 = repository.add(new WidgetCreateDto(Integer.MAX_VALUE - 10, 0, 1, 1, 1, System.currentTimeMillis()));
+
+        assertThrows(
+                ArithmeticException.class,
+                () -> repository.translate(List.of(widget0.id, widget1.id), 20, 0, System.currentTimeMillis())
+        );
+        assertEquals(List.of(widget0, widget1), repository.getAll(), "widgets are changed by failed translate");
+    }
+
+    @Test
+    public void getByIdsReturnsOnlyExistingWidgetsSortedByZIndex() throws ZIndexConflictException {
+        var widget0 = repository.add(new WidgetCreateDto(0, 0, 5, 1, 1, System.currentTimeMillis()));
+        var widget1 = repository.add(new WidgetCreateDto(0, 0, 1, 1, 1, System.currentTimeMillis()));
+        var widget2 = repository.add(new WidgetCreateDto(0, 0, 3, 1, 1, System.currentTimeMillis()));
+        repository.deleteById(widget2.id);
+
+        assertEquals(List.of(widget1, widget0), repository.getByIds(List.of(widget0.id, widget2.id, widget1.id)));
+        assertEquals(List.of(), repository.getByIds(List.of()));
+    }
+
+    @Test
+    public void deleteByIdsDeletesOnlyGivenWidgets() throws ZIndexConflictException {
+        var widget0 = repository.add(new WidgetCreateDto(0, 0, 0, 1, 1, System.currentTimeMillis()));
+        var widget1 = repository.add(new WidgetCreateDto(0, 0, 1, 1, 1, System.currentTimeMillis()));
+        var widget2 = repository.add(new WidgetCreateDto(0, 0, 2, 1, 1, System.currentTimeMillis()));
+        var version = repository.getVersion();
+
+        assertEquals(2, repository.deleteByIds(List.of(widget0.id, widget2.id)));
+        assertNotEquals(version, repository.getVersion(), "version is not changed by delete");
+        assertEquals(List.of(widget1), repository.getAll());
+        assertEquals(List.of(widget1), repository.getInArea(new Area(0, 10, 0, 10)));
+        assertEquals(0, repository.deleteByIds(List.of(widget0.id)));
+        // zIndexes of deleted widgets are free again
+        repository.add(new WidgetCreateDto(0, 0, 0, 1, 1, System.currentTimeMillis()));
+    }
+
+    @Test
+    public void deleteInAreaDeletesOnlyWidgetsInsideArea() throws ZIndexConflictException {
+        var inside0 = repository.add(new WidgetCreateDto(0, 0, 0, 5, 5, System.currentTimeMillis()));
+        var inside1 = repository.add(new WidgetCreateDto(5, 5, 1, 5, 5, System.currentTimeMillis()));
+        var crossing = repository.add(new WidgetCreateDto(8, 8, 2, 5, 5, System.currentTimeMillis()));
+        var outside = repository.add(new WidgetCreateDto(20, 20, 3, 5, 5, System.currentTimeMillis()));
+
+        assertEquals(2, repository.deleteInArea(new Area(0, 10, 0, 10)));
+        assertEquals(List.of(crossing, outside), repository.getAll());
+        assertTrue(repository.getById(inside0.id).isEmpty());
+        assertTrue(repository.getById(inside1.id).isEmpty());
+        assertEquals(0, repository.deleteInArea(new Area(0, 10, 0, 10)));
+    }
+
+    @Test
+    public void aggregatesMatchWidgetsInArea() throws ZIndexConflictException {
+        assertTrue(repository.boundingBox().isEmpty());
+        assertEquals(0, repository.countInArea(new Area(0, 100, 0, 100)));
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < 10; j++) {
+                repository.add(new WidgetCreateDto(i * 10, j * 10, i * 10 + j, 5, 5, System.currentTimeMillis()));
+            }
+        }
+        var wide = repository.add(new WidgetCreateDto(-20, 0, 100, 200, 5, System.currentTimeMillis()));
+
+        var area = new Area(0, 49, 0, 99);
+        assertEquals(repository.getInArea(area).size(), repository.countInArea(area));
+        assertEquals(50, repository.countInArea(area));
+
+        var box = repository.boundingBox().orElseThrow();
+        assertEquals(-20, box.left);
+        assertEquals(180, box.right);
+        assertEquals(0, box.bottom);
+        assertEquals(95, box.top);
+
+        // 2x2 tiles of 25x50
+        var histogram = repository.histogram(area, 2);
+        assertArrayEquals(new int[][]{{15, 10}, {15, 10}}, histogram);
+
+        repository.deleteById(wide.id);
+        assertEquals(0, repository.boundingBox().orElseThrow().left);
+        assertThrows(IllegalArgumentException.class, () -> repository.histogram(area, 0));
+    }
+
+    @Test
+    public void overlappingWidgetsShareInnerSpace() throws ZIndexConflictException {
+        var area = new Area(0, 10, 0, 10);
+        assertFalse(repository.anyOverlapping(area));
+        var inside = repository.add(new WidgetCreateDto(2, 2, 3, 5, 5, System.currentTimeMillis()));
+        var crossing = repository.add(new WidgetCreateDto(8, -5, 1, 10, 10, System.currentTimeMillis()));
+        var covering = repository.add(new WidgetCreateDto(-5, -5, 2, 30, 30, System.currentTimeMillis()));
+        // touch edges of area only
+        repository.add(new WidgetCreateDto(10, 0, 4, 5, 5, System.currentTimeMillis()));
+        repository.add(new WidgetCreateDto(0, -5, 5, 10, 5, System.currentTimeMillis()));
+        repository.add(new WidgetCreateDto(100, 100, 6, 5, 5, System.currentTimeMillis()));
+
+        assertEquals(List.of(crossing, covering, inside), repository.findOverlapping(area, null));
+        assertEquals(List.of(crossing, inside), repository.findOverlapping(area, covering.id));
+        assertTrue(repository.anyOverlapping(area));
+        assertFalse(repository.anyOverlapping(new Area(40, 50, 40, 50)));
+        assertTrue(repository.findOverlapping(new Area(40, 50, 40, 50), null).isEmpty());
+    }
+
+    @Test
+    public void nearestAreOrderedByDistance() throws ZIndexConflictException {
+        assertTrue(repository.nearest(0, 0, 1).isEmpty());
+        var far = repository.add(new WidgetCreateDto(100, 100, 1, 10, 10, System.currentTimeMillis()));
+        var near = repository.add(new WidgetCreateDto(10, 0, 2, 10, 10, System.currentTimeMillis()));
+        var below = repository.add(new WidgetCreateDto(-10, -10, 3, 20, 20, System.currentTimeMillis()));
+        var above = repository.add(new WidgetCreateDto(-5, -5, 4, 10, 10, System.currentTimeMillis()));
+        var sameDistance = repository.add(new WidgetCreateDto(0, 10, 5, 10, 10, System.currentTimeMillis()));
+
+        // widgets, containing the point, go first, the top one first, then widgets at the same distance by zIndex
+        assertEquals(List.of(above, below, sameDistance, near), repository.nearest(0, 0, 4));
+        assertEquals(List.of(above, below, sameDistance, near, far), repository.nearest(0, 0, 10));
+        assertEquals(List.of(far), repository.nearest(1000, 1000, 1));
+        assertThrows(IllegalArgumentException.class, () -> repository.nearest(0, 0, 0));
+    }
+
+    @Test
+    public void summaryTakesWidgetsByVertex() throws ZIndexConflictException {
+        assertEquals(0, repository.summarize(new Area(0, 99, 0, 99), 2).count);
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < 10; j++) {
+                repository.add(new WidgetCreateDto(i * 10, j * 10, i * 10 + j, 5, 5, System.currentTimeMillis()));
+            }
+        }
+        // sticks out of area, but still summarized
+        repository.add(new WidgetCreateDto(40, 0, 100, 200, 5, System.currentTimeMillis()));
+
+        var summary = repository.summarize(new Area(0, 49, 0, 99), 2);
+        assertEquals(51, summary.count);
+        // 2x2 tiles of 25x50
+        assertArrayEquals(new int[][]{{15, 11}, {15, 10}}, summary.density);
+        assertEquals(0, summary.bounds.left);
+        assertEquals(240, summary.bounds.right);
+        assertEquals(0, summary.bounds.bottom);
+        assertEquals(95, summary.bounds.top);
+        assertThrows(IllegalArgumentException.class, () -> repository.summarize(new Area(0, 49, 0, 99), 0));
+    }
 }
@@ -0,0 +1,107 @@
+package org.fantom.repositories.widget.ids;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.HashSet;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdGeneratorTest {
+    private static class MemoryHighWaterMarkStore implements HighWaterMarkStore {
+        long mark;
+        int stores;
+
+        @Override
+        public long load() {
+            return mark;
+        }
+
+        @Override
+        public void store(long mark) {
+            this.mark = mark;
+            stores++;
+        }
+    }
+
+    @Test
+    public void atomicLongGeneratorDoesNotReuseIdsAfterRestart() {
+        var store = new MemoryHighWaterMarkStore();
+        var generator = new AtomicLongIdGenerator(store, 10);
+        long last = -1;
+        for (int i = 0; i < 25; i++) {
+            last = generator.generate();
+        }
+        assertEquals(24, last);
+        assertEquals(30, store.mark);
+        assertEquals(3, store.stores, "one store per block");
+
+        var restarted = new AtomicLongIdGenerator(store, 10);
+        assertEquals(30, (long) restarted.generate());
+    }
+
+    @Test
+    public void fileHighWaterMarkStoreKeepsMark() throws IOException {
+        var dir = Files.createTempDirectory("ids");
+        var file = dir.resolve("widgets.hwm");
+        try {
+            var store = new FileHighWaterMarkStore(file);
+            assertEquals(0, store.load());
+            store.store(42);
+            store.store(100);
+            assertEquals(100, new FileHighWaterMarkStore(file).load());
+        } finally {
+            Files.deleteIfExists(file);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void snowflakeIdsAreIncreasingWithinFrozenMillisecond() {
+        var clock = Clock.fixed(Instant.ofEpochMilli(SnowflakeIdGenerator.EPOCH + 1000), ZoneOffset.UTC);
+        var generator = new SnowflakeIdGenerator(3, clock);
+        long last = Long.MIN_VALUE;
+        // more than fits into one millisecond
+        for (int i = 0; i < 10_000; i++) {
+            long id = generator.generate();
+            assertTrue(id > last, "ids increase");
+            assertEquals(3, (id >>> SnowflakeIdGenerator.SEQUENCE_BITS) & SnowflakeIdGenerator.MAX_NODE, "node is kept");
+            last = id;
+        }
+    }
+
+    @Test
+    public void snowflakeIdsOfDifferentNodesDiffer() {
+        var clock = Clock.fixed(Instant.ofEpochMilli(SnowflakeIdGenerator.EPOCH + 1000), ZoneOffset.UTC);
+        var first = new SnowflakeIdGenerator(1, clock);
+        var second = new SnowflakeIdGenerator(2, clock);
+        var ids = new HashSet<Long>();
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(ids.add(first.generate()));
+            assertTrue(ids.add(second.generate()));
+        }
+    }
+
+    @Test
+    public void compactIdsAreOrderedByTime() {
+        var first = new CompactIdGenerator(Clock.fixed(Instant.ofEpochMilli(1000), ZoneOffset.UTC)).generate();
+        var second = new CompactIdGenerator(Clock.fixed(Instant.ofEpochMilli(1001), ZoneOffset.UTC)).generate();
+        assertEquals(1000, first.timestamp());
+        assertTrue(first.compareTo(second) < 0);
+        assertTrue(first.toString().compareTo(second.toString()) < 0);
+    }
+
+    @Test
+    public void randomUuidsAreValidVersion4() {
+        var generator = new RandomUuidIdGenerator();
+        var uuid = UUID.fromString(generator.generate());
+        assertEquals(4, uuid.version());
+        assertEquals(2, uuid.variant());
+        assertNotEquals(generator.generate(), generator.generate());
+    }
+}
@@ -1,15 +1,34 @@
 package org.fantom.web.config;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.fantom.repositories.widget.AsyncWidgetRepository;
+import org.fantom.repositories.widget.ExecutorAsyncWidgetRepository;
 import org.fantom.repositories.widget.IdGenerator;
 import org.fantom.repositories.widget.WidgetRepository;
+import org.fantom.repositories.widget.ids.AtomicLongIdGenerator;
+import org.fantom.repositories.widget.ids.CompactIdGenerator;
+import org.fantom.repositories.widget.ids.FileHighWaterMarkStore;
+import org.fantom.repositories.widget.ids.RandomUuidIdGenerator;
+import org.fantom.repositories.widget.ids.SnowflakeIdGenerator;
+import org.fantom.repository.ClosableReentrantReadWriteLock;
+import org.fantom.repository.CombiningInMemoryWidgetRepository;
 import org.fantom.repository.InMemoryWidgetRepository;
+import org.fantom.repository.LockProfiler;
+import org.fantom.repository.LockType;
 import org.fantom.services.widget.WidgetService;
+import org.fantom.services.widget.ZIndexAllocator;
+import org.fantom.web.metrics.LockHoldersEndpoint;
+import org.fantom.web.metrics.MeteredLockListener;
+import org.fantom.web.metrics.MeteredWidgetRepository;
 import org.fantom.web.repositories.widget.SqlWidgetRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
-import org.springframework.boot.autoconfigure.jdbc.DataSourceTransactionManagerAutoConfiguration;
 import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
@@ -20,16 +39,18 @@ import org.springframework.context.annotation.Lazy;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.validation.annotation.Validated;
 
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Objects;
-import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 @ConditionalOnProperty(value = "config.repositoryType", havingValue = "db")
 @EnableJpaRepositories(value = "org.fantom.web.repositories")//, bootstrapMode = BootstrapMode.LAZY)
+// no DataSourceTransactionManagerAutoConfiguration: its transaction manager would take place of jpa one,
+// and @Transactional repository methods, run on executor threads, would have no jpa transaction
 @Import({
         DataSourceAutoConfiguration.class,
-        DataSourceTransactionManagerAutoConfiguration.class,
         HibernateJpaAutoConfiguration.class
 })
 class HibernateConfig {}
@@ -41,12 +62,40 @@ class HibernateConfig {}
 @Import(HibernateConfig.class)
 public class Config {
 
+    private static final Logger logger = LoggerFactory.getLogger(Config.class);
+
     private enum RepositoryType {
         memory, db
     }
 
     private WidgetIdType widgetIdType;
     private RepositoryType repositoryType;
+    // apply concurrent writes to in-memory repository in batches
+    private boolean combiningWrites;
+    // threads, running blocking db repository operations for async requests, should not exceed connection pool size
+    private int dbThreads = 10;
+    // db repository operations, waiting for a thread, beyond this number are rejected
+    private int dbQueueCapacity = 1000;
+    // in-memory repository writes, waiting for the writer thread, beyond this number are rejected
+    private int memoryWriteQueueCapacity = 10000;
+    // run requests on virtual threads, see VirtualThreadsConfig
+    private boolean virtualThreads;
+    // implementation of in-memory repository lock
+    private LockType lockType = LockType.fair;
+    // sample call sites, holding in-memory repository lock, and report long holds to JFR
+    private boolean lockProfiling;
+    // min in-memory repository lock hold time, reported to JFR
+    private long lockLongHoldMillis = 10;
+    // generator of integer ids
+    private IdGeneratorType idGenerator = IdGeneratorType.sequential;
+    // file to persist bound of handed out sequential ids to, so they are not reused after restart
+    private Path idHighWaterMarkFile;
+    // id of this node among all, generating snowflake ids
+    private long nodeId;
+    // distance between zIndexes of new widgets, to insert widgets between them without shifting others
+    private int zIndexGap = 1;
+    // distance to the ends of zIndex range, reaching which by new widget starts background compaction, 0 means never
+    private int zIndexCompactionHeadroom;
 
     @Lazy
     @Autowired
@@ -65,6 +114,60 @@ public class Config {
         this.repositoryType = RepositoryType.valueOf(repositoryType);;
     }
 
+    public void setCombiningWrites(boolean combiningWrites) {
+        this.combiningWrites = combiningWrites;
+    }
+
+    public void setDbThreads(int dbThreads) {
+        this.dbThreads = dbThreads;
+    }
+
+    public void setDbQueueCapacity(int dbQueueCapacity) {
+        this.dbQueueCapacity = dbQueueCapacity;
+    }
+
+    public void setMemoryWriteQueueCapacity(int memoryWriteQueueCapacity) {
+        this.memoryWriteQueueCapacity = memoryWriteQueueCapacity;
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    public void setLockType(String lockType) {
+        Objects.requireNonNull(lockType);
+        this.lockType = LockType.valueOf(lockType);
+    }
+
+    public void setLockProfiling(boolean lockProfiling) {
+        this.lockProfiling = lockProfiling;
+    }
+
+    public void setLockLongHoldMillis(long lockLongHoldMillis) {
+        this.lockLongHoldMillis = lockLongHoldMillis;
+    }
+
+    public void setIdGenerator(String idGenerator) {
+        Objects.requireNonNull(idGenerator);
+        this.idGenerator = IdGeneratorType.valueOf(idGenerator);
+    }
+
+    public void setIdHighWaterMarkFile(String idHighWaterMarkFile) {
+        this.idHighWaterMarkFile = idHighWaterMarkFile == null ? null : Path.of(idHighWaterMarkFile);
+    }
+
+    public void setNodeId(long nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public void setZIndexGap(int zIndexGap) {
+        this.zIndexGap = zIndexGap;
+    }
+
+    public void setZIndexCompactionHeadroom(int zIndexCompactionHeadroom) {
+        this.zIndexCompactionHeadroom = zIndexCompactionHeadroom;
+    }
+
     @Bean
     public WidgetIdType idType() {
         if (this.widgetIdType == null && this.repositoryType != RepositoryType.db) {
@@ -74,47 +177,118 @@ public class Config {
         return widgetIdType == null ? WidgetIdType.integer : widgetIdType;
     }
 
-    public IdGenerator<Integer> intIdGenerator() {
-        return new IdGenerator<>() {
-            private int nextValue = 0;
-
-            @Override
-            public Integer generate() {
-                return nextValue++;
-            }
-        };
+    public IdGenerator<Long> longIdGenerator() {
+        switch (idGenerator) {
+            case sequential:
+                return idHighWaterMarkFile == null
+                        ? new AtomicLongIdGenerator()
+                        : new AtomicLongIdGenerator(new FileHighWaterMarkStore(idHighWaterMarkFile), AtomicLongIdGenerator.DEFAULT_BLOCK_SIZE);
+            case snowflake:
+                return new SnowflakeIdGenerator(nodeId);
+            default:
+                throw new RuntimeException("Invalid id generator type, expected one of " + Arrays.toString(IdGeneratorType.values()) + ", got " + idGenerator);
+        }
     }
 
     public IdGenerator<String> stringIdGenerator() {
-        return () -> UUID.randomUUID().toString();
+        return new RandomUuidIdGenerator();
     }
 
     public IdGenerator<?> idGenerator() {
         switch (widgetIdType) {
             case integer:
-                return intIdGenerator();
+                return longIdGenerator();
             case string:
                 return stringIdGenerator();
+            case compact:
+                return new CompactIdGenerator();
             default:
                 throw new RuntimeException("Invalid widget id type, expected one of" + Arrays.toString(WidgetIdType.values()) +", got " + widgetIdType);
         }
     }
 
     @Bean
-    public WidgetRepository<?> widgetRepository() {
-        System.out.println("creating widget repository by type " + repositoryType.name());
+    @ConditionalOnProperty("config.lockProfiling")
+    public LockProfiler lockProfiler(ObjectProvider<MeterRegistry> meterRegistry) {
+        var registry = meterRegistry.getIfAvailable();
+        return new LockProfiler(
+                registry == null ? null : new MeteredLockListener(registry),
+                TimeUnit.MILLISECONDS.toNanos(lockLongHoldMillis),
+                LockProfiler.DEFAULT_SAMPLING_INTERVAL
+        );
+    }
+
+    @Bean
+    @ConditionalOnProperty("config.lockProfiling")
+    public LockHoldersEndpoint lockHoldersEndpoint(LockProfiler lockProfiler) {
+        return new LockHoldersEndpoint(lockProfiler);
+    }
+
+    private ClosableReentrantReadWriteLock repositoryLock(MeterRegistry registry, LockProfiler profiler) {
+        ClosableReentrantReadWriteLock.Listener listener = profiler != null
+                ? profiler
+                : registry != null ? new MeteredLockListener(registry) : null;
+        var lock = new ClosableReentrantReadWriteLock(lockType, listener);
+        if (profiler != null) {
+            profiler.setLock(lock);
+        }
+        if (registry != null) {
+            Gauge.builder("widgets.repository.lock.queue", lock, ClosableReentrantReadWriteLock::getQueueLength)
+                    .tag("type", lockType.name())
+                    .register(registry);
+        }
+        return lock;
+    }
+
+    // decorated with metrics, if meter registry is available, i.e. actuator is on the classpath
+    @Bean
+    public WidgetRepository<?> widgetRepository(ObjectProvider<MeterRegistry> meterRegistry, ObjectProvider<LockProfiler> lockProfiler) {
+        logger.info("Creating widget repository by type {}", repositoryType);
+        var registry = meterRegistry.getIfAvailable();
+        WidgetRepository<?> repository;
+        switch (repositoryType) {
+            case memory:
+                var lock = repositoryLock(registry, lockProfiler.getIfAvailable());
+                repository = combiningWrites
+                        ? new CombiningInMemoryWidgetRepository<>(idGenerator(), CombiningInMemoryWidgetRepository.DEFAULT_MAX_BATCH_SIZE, lock)
+                        : new InMemoryWidgetRepository<>(idGenerator(), lock);
+                break;
+            case db:
+                repository = sqlWidgetRepository;
+                break;
+            default:
+                throw new RuntimeException("Invalid widget repository type, expected one of "+ Arrays.toString(RepositoryType.values()) + ", got " + repositoryType);
+        }
+        return registry == null ? repository : metered(repository, registry);
+    }
+
+    private static <ID> WidgetRepository<ID> metered(WidgetRepository<ID> repository, MeterRegistry registry) {
+        return new MeteredWidgetRepository<>(repository, registry);
+    }
+
+    // executors are shut down by inferred close method
+    @Bean
+    public <ID> AsyncWidgetRepository<ID> asyncWidgetRepository(@Qualifier("widgetRepository") WidgetRepository<ID> widgetRepository) {
         switch (repositoryType) {
             case memory:
-                return new InMemoryWidgetRepository<>(idGenerator());
+                // platform writer even in virtual threads mode: it is a single long-lived thread, that never blocks
+                // on io, only on repository lock, so a virtual one would just take a carrier from request threads
+                return ExecutorAsyncWidgetRepository.singleWriter(widgetRepository, memoryWriteQueueCapacity);
             case db:
-                return sqlWidgetRepository;
+                // platform threads even in virtual threads mode: hibernate and jdbc driver synchronize on session
+                // and connection, which pins virtual thread to its carrier for the whole db call, while pool size
+                // already limits number of concurrent db operations, so virtual threads would gain nothing here
+                return ExecutorAsyncWidgetRepository.pooled(widgetRepository, dbThreads, dbQueueCapacity);
             default:
                 throw new RuntimeException("Invalid widget repository type, expected one of "+ Arrays.toString(RepositoryType.values()) + ", got " + repositoryType);
         }
     }
 
     @Bean
-    public <ID> WidgetService<ID> widgetService(@Qualifier("widgetRepository") WidgetRepository<ID> widgetRepository) {
-        return new WidgetService<>(widgetRepository);
+    public <ID> WidgetService<ID> widgetService(
+            @Qualifier("widgetRepository") WidgetRepository<ID> widgetRepository,
+            AsyncWidgetRepository<ID> asyncWidgetRepository
+    ) {
+        return new WidgetService<>(widgetRepository, asyncWidgetRepository, new ZIndexAllocator(zIndexGap, zIndexCompactionHeadroom));
     }
 }
@@ -0,0 +1,15 @@
+package org.fantom.web.config;
+
+/**
+ * Generator of integer widget ids for in-memory repository
+ */
+public enum IdGeneratorType {
+    /**
+     * Sequential ids, not reused after restart, if high-water mark file is set
+     */
+    sequential,
+    /**
+     * Time-ordered ids, unique across nodes with different node ids
+     */
+    snowflake
+}
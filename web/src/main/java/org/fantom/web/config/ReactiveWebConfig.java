@@ -0,0 +1,61 @@
+package org.fantom.web.config;
+
+import org.fantom.web.controllers.widget.serialization.SingleValueEncoder;
+import org.fantom.web.controllers.widget.serialization.WidgetCodecs;
+import org.fantom.web.controllers.widget.serialization.WidgetHttpMessageWriter;
+import org.fantom.web.controllers.widget.serialization.WidgetMediaTypes;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.cbor.Jackson2CborEncoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+
+/**
+ * Configuration of reactive stack, enabled by {@code spring.main.web-application-type=reactive}
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveWebConfig implements WebFluxConfigurer {
+
+    @Autowired
+    private WidgetCodecs widgetCodecs;
+
+    // tomcat is on classpath too, and boot would prefer it as reactive server
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    @Override
+    public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+        var codecs = configurer.customCodecs();
+        // writers are offered to clients, accepting any type, in registration order, so plain json goes first
+        codecs.register(new WidgetHttpMessageWriter(new Jackson2JsonEncoder(
+                widgetCodecs.getMapper(MediaType.APPLICATION_JSON),
+                MediaType.APPLICATION_JSON
+        )));
+        codecs.register(new WidgetHttpMessageWriter(new Jackson2JsonEncoder(
+                widgetCodecs.getMapper(WidgetMediaTypes.COMPACT_JSON),
+                WidgetMediaTypes.COMPACT_JSON
+        )));
+        // binary codecs, given a mapper without media types, claim json ones, so types are always passed explicitly.
+        // jackson cbor encoder can't encode streams, even of one value
+        var cbor = widgetCodecs.getMapper(MediaType.APPLICATION_CBOR);
+        codecs.register(new WidgetHttpMessageWriter(new SingleValueEncoder(
+                new Jackson2CborEncoder(cbor, MediaType.APPLICATION_CBOR)
+        )));
+        codecs.register(new Jackson2CborDecoder(cbor, MediaType.APPLICATION_CBOR));
+        codecs.register(new WidgetHttpMessageWriter(new Jackson2SmileEncoder(
+                widgetCodecs.getMapper(WidgetMediaTypes.SMILE),
+                WidgetMediaTypes.SMILE
+        )));
+        // smile requests are read by default decoder, widget dtos don't need custom deserializers
+    }
+}
@@ -0,0 +1,89 @@
+package org.fantom.web.config;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads of Java 21+ from code, compiled for Java 11.
+ * Bytecode is kept at 11, as class files of newer versions are not readable by spring class path scanning of this boot
+ * version, so virtual threads api is looked up at runtime
+ */
+public final class VirtualThreads {
+    // null, if running JVM doesn't support virtual threads
+    private static final MethodHandle OF_VIRTUAL;
+    private static final MethodHandle NAME;
+    private static final MethodHandle FACTORY;
+    private static final MethodHandle NEW_PER_TASK_EXECUTOR;
+
+    static {
+        MethodHandle ofVirtual = null;
+        MethodHandle name = null;
+        MethodHandle factory = null;
+        MethodHandle newPerTaskExecutor = null;
+        try {
+            var lookup = MethodHandles.publicLookup();
+            var builder = Class.forName("java.lang.Thread$Builder");
+            var virtualBuilder = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            ofVirtual = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(virtualBuilder));
+            name = lookup.findVirtual(builder, "name", MethodType.methodType(builder, String.class, long.class));
+            factory = lookup.findVirtual(builder, "factory", MethodType.methodType(ThreadFactory.class));
+            newPerTaskExecutor = lookup.findStatic(
+                    java.util.concurrent.Executors.class,
+                    "newVirtualThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class)
+            );
+        } catch (ReflectiveOperationException ignored) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        FACTORY = factory;
+        NEW_PER_TASK_EXECUTOR = newPerTaskExecutor;
+    }
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    private static void ensureSupported() {
+        if (!isSupported()) {
+            throw new IllegalStateException(
+                    "Virtual threads require Java 21 or newer, running on " + System.getProperty("java.version")
+            );
+        }
+    }
+
+    /**
+     * @param prefix name prefix of created threads, followed by sequence number
+     * @return factory of virtual threads
+     * @throws IllegalStateException if virtual threads are not supported by running JVM
+     */
+    public static ThreadFactory factory(String prefix) {
+        ensureSupported();
+        try {
+            var builder = OF_VIRTUAL.invoke();
+            return (ThreadFactory) FACTORY.invoke(NAME.invoke(builder, prefix, 0L));
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot create virtual thread factory", e);
+        }
+    }
+
+    /**
+     * @return executor, that starts new virtual thread for each task
+     * @throws IllegalStateException if virtual threads are not supported by running JVM
+     */
+    public static ExecutorService newPerTaskExecutor() {
+        ensureSupported();
+        try {
+            return (ExecutorService) NEW_PER_TASK_EXECUTOR.invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot create virtual thread executor", e);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.fantom.web.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.fantom.web.controllers.widget.serialization.CompactWidgetJsonHttpMessageConverter;
+import org.fantom.web.controllers.widget.serialization.CompactWidgetJsonSerializer;
+import org.fantom.web.controllers.widget.serialization.WidgetCodecs;
+import org.fantom.web.controllers.widget.serialization.WidgetMediaTypes;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // prototype builder, configured by spring boot, in particular with widget serializers
+    @Autowired
+    private ObjectProvider<Jackson2ObjectMapperBuilder> objectMapperBuilder;
+
+    @Bean
+    public WidgetCodecs widgetCodecs() {
+        var mappers = new LinkedHashMap<MediaType, ObjectMapper>();
+        mappers.put(MediaType.APPLICATION_JSON, objectMapper);
+        mappers.put(WidgetMediaTypes.COMPACT_JSON, CompactWidgetJsonSerializer.register(objectMapper.copy()));
+        mappers.put(MediaType.APPLICATION_CBOR, objectMapperBuilder.getObject().factory(new CBORFactory()).build());
+        mappers.put(WidgetMediaTypes.SMILE, objectMapperBuilder.getObject().factory(new SmileFactory()).build());
+        return new WidgetCodecs(mappers);
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        var codecs = widgetCodecs();
+        // spring registers binary converters itself when their dataformats are on classpath, but with mappers
+        // not aware of boot json components, replace them to encode widgets the same way as json does
+        converters.removeIf(converter -> converter instanceof MappingJackson2CborHttpMessageConverter
+                || converter instanceof MappingJackson2SmileHttpMessageConverter);
+        // default json converter takes application/*+json too, so compact one must go before it
+        var json = converters.stream().filter(converter -> converter instanceof MappingJackson2HttpMessageConverter).findFirst();
+        converters.add(
+                json.map(converters::indexOf).orElse(0),
+                new CompactWidgetJsonHttpMessageConverter(codecs.getMapper(WidgetMediaTypes.COMPACT_JSON))
+        );
+        // append binary converters after default ones, so that plain json stays the default representation
+        converters.add(new MappingJackson2CborHttpMessageConverter(codecs.getMapper(MediaType.APPLICATION_CBOR)));
+        converters.add(new MappingJackson2SmileHttpMessageConverter(codecs.getMapper(WidgetMediaTypes.SMILE)));
+    }
+}
@@ -1,5 +1,9 @@
 package org.fantom.web.config;
 
 public enum WidgetIdType {
-    integer, string
+    integer, string,
+    /**
+     * {@link org.fantom.domain.CompactId}, written as string
+     */
+    compact
 }
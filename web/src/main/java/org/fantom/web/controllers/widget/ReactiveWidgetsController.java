@@ -0,0 +1,320 @@
+package org.fantom.web.controllers.widget;
+
+import org.fantom.domain.Widget;
+import org.fantom.repositories.widget.dto.Area;
+import org.fantom.repositories.widget.dto.AreaSummary;
+import org.fantom.services.widget.WidgetService;
+import org.fantom.web.config.WidgetIdType;
+import org.fantom.web.controllers.widget.dto.WidgetCreateDto;
+import org.fantom.web.controllers.widget.dto.WidgetFindByArea;
+import org.fantom.web.controllers.widget.dto.WidgetReorderDto;
+import org.fantom.web.controllers.widget.dto.WidgetTranslateDto;
+import org.fantom.web.controllers.widget.dto.WidgetUpdateDto;
+import org.fantom.web.controllers.widget.serialization.WidgetCodecs;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.validation.Valid;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * The same widgets api as {@link WidgetsController}, served by reactive stack.
+ * Lists of widgets are streamed page by page, next page is read from repository only when client has consumed
+ * the previous one, so slow clients don't make server to buffer whole board.
+ * Send {@code Accept: application/stream+json} to get widgets as they are read, one json document per line,
+ * otherwise widgets are collected into a single array
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RequestMapping("/widgets")
+@Validated
+public class ReactiveWidgetsController<ID> {
+    /**
+     * Number of widgets, read from repository at once, while streaming widget lists
+     */
+    static final int PAGE_SIZE = 256;
+
+    private final WidgetService<ID> widgetService;
+    private final Function<String, ID> idConverter;
+    private final TileCache tileCache;
+    private final WidgetCodecs widgetCodecs;
+
+    @Autowired
+    public ReactiveWidgetsController(
+            WidgetService<ID> widgetService,
+            WidgetIdType idClass,
+            TileCache tileCache,
+            WidgetCodecs widgetCodecs
+    ) {
+        this.widgetService = widgetService;
+        this.tileCache = tileCache;
+        this.widgetCodecs = widgetCodecs;
+        this.idConverter = WidgetsController.idConverter(idClass);
+    }
+
+    /**
+     * Stream pages, read one after another by keyset cursor over zIndex, as flat flux of widgets
+     * @param pageLoader loads page of widgets, following given zIndex, or the first page for null
+     */
+    protected Flux<Widget<ID>> pages(Function<Integer, CompletableFuture<List<Widget<ID>>>> pageLoader) {
+        // deferred, so that page is read on subscription, not on assembly
+        return Mono
+                .defer(() -> fromFuture(pageLoader.apply(null)))
+                .expand(page -> page.size() < PAGE_SIZE
+                        ? Mono.empty()
+                        : Mono.defer(() -> fromFuture(pageLoader.apply(page.get(page.size() - 1).zIndex)))
+                )
+                // demand the next page only when the current one is drained
+                .concatMapIterable(page -> page, 1);
+    }
+
+    /**
+     * Weak tag of widget stream, distinct for every representation, that Accept and Accept-Encoding headers select
+     */
+    protected String streamETag(long version, String accept, String acceptEncoding) {
+        // streaming is chosen only when client asks for it explicitly, otherwise widgets are collected into array
+        var streaming = false;
+        try {
+            streaming = accept != null && MediaType.parseMediaTypes(accept).stream()
+                    .anyMatch(type -> !type.isWildcardSubtype() && type.isCompatibleWith(MediaType.APPLICATION_STREAM_JSON));
+        } catch (InvalidMediaTypeException ignored) {
+        }
+        var mediaType = streaming
+                ? MediaType.APPLICATION_STREAM_JSON
+                : widgetCodecs.negotiate(accept).orElse(MediaType.APPLICATION_JSON);
+        return WidgetsController.streamETag(version, mediaType, WidgetsController.acceptsGzip(acceptEncoding));
+    }
+
+    protected static <T> Mono<T> fromFuture(CompletableFuture<T> future) {
+        return Mono.fromFuture(future).onErrorMap(WidgetsController::translateException);
+    }
+
+    @GetMapping
+    Mono<ResponseEntity<Flux<Widget<ID>>>> getAll(
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ) {
+        // read version before widgets, see WidgetRepository.getVersion
+        var version = widgetService.getVersion();
+        // not modified request is answered right away, without subscribing to body
+        return Mono.just(ResponseEntity
+                .ok()
+                .eTag(streamETag(version, accept, acceptEncoding))
+                .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING)
+                .body(pages(after -> widgetService.getPageAsync(after, PAGE_SIZE)))
+        );
+    }
+
+    @PostMapping
+    Mono<ResponseEntity<Widget<ID>>> create(@Valid @RequestBody WidgetCreateDto widget) {
+        return fromFuture(widgetService.createAsync(widget.toServiceDto()))
+                .map(w -> WidgetsController.withETag(ResponseEntity.status(HttpStatus.CREATED), w))
+                .onErrorMap(ArithmeticException.class, e -> new ResponseStatusException(
+                        HttpStatus.BAD_REQUEST,
+                        "Cannot move widgets upwards starting from zIndex " + widget.zIndex
+                ));
+    }
+
+    /**
+     * Update widget. If If-Match header with widget ETag is given, update is applied only if widget is not changed since
+     */
+    @PutMapping("/{id}")
+    Mono<ResponseEntity<Widget<ID>>> update(
+            @PathVariable("id") String id,
+            @Valid @RequestBody WidgetUpdateDto widget,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch
+    ) {
+        var expectedVersion = WidgetsController.parseIfMatch(ifMatch);
+        var update = widget.toServiceDto(idConverter.apply(id));
+        var updated = expectedVersion.isPresent()
+                ? widgetService.updateAsync(update, expectedVersion.get())
+                : widgetService.updateAsync(update);
+        return fromFuture(updated).map(w -> w
+                .map(value -> WidgetsController.withETag(ResponseEntity.ok(), value))
+                .orElseGet(() -> ResponseEntity.notFound().build())
+        );
+    }
+
+    /**
+     * Move widgets in front of or behind all other ones at once, keeping their relative order
+     */
+    @PostMapping("/reorder")
+    Mono<ResponseEntity<List<Widget<ID>>>> reorder(@Valid @RequestBody WidgetReorderDto reorder) {
+        var ids = reorder.ids.stream().map(idConverter).collect(Collectors.toList());
+        return fromFuture(widgetService.reorderAsync(ids, reorder.position))
+                .map(ResponseEntity::ok)
+                .onErrorMap(ArithmeticException.class, e -> new ResponseStatusException(
+                        HttpStatus.BAD_REQUEST,
+                        "No room to move widgets to " + reorder.position
+                ));
+    }
+
+    /**
+     * Move widgets by the same offset at once
+     */
+    @PostMapping("/translate")
+    Mono<ResponseEntity<List<Widget<ID>>>> translate(@Valid @RequestBody WidgetTranslateDto translate) {
+        var ids = translate.ids.stream().map(idConverter).collect(Collectors.toList());
+        return fromFuture(widgetService.translateAsync(ids, translate.dx, translate.dy))
+                .map(ResponseEntity::ok)
+                .onErrorMap(ArithmeticException.class, e -> new ResponseStatusException(
+                        HttpStatus.BAD_REQUEST,
+                        "Cannot move widgets by (" + translate.dx + ", " + translate.dy + ")"
+                ));
+    }
+
+    @GetMapping("/{id}")
+    Mono<ResponseEntity<Widget<ID>>> getById(@PathVariable("id") String id) {
+        return fromFuture(widgetService.getByIdAsync(idConverter.apply(id))).map(w -> w
+                .map(value -> WidgetsController.withETag(ResponseEntity.ok(), value))
+                .orElseGet(() -> ResponseEntity.notFound().build())
+        );
+    }
+
+    @DeleteMapping("/{id}")
+    Mono<ResponseEntity<Void>> delete(@PathVariable("id") String id) {
+        return fromFuture(widgetService.deleteAsync(idConverter.apply(id))).map(deleted -> {
+            if (!deleted) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+            }
+            return ResponseEntity.noContent().build();
+        });
+    }
+
+    /**
+     * Find widgets, sharing inner space with area, sorted by zIndex, optionally ignoring one of them
+     */
+    @GetMapping(value = "/overlapping", params = {"left", "right", "bottom", "top"})
+    Mono<ResponseEntity<List<Widget<ID>>>> findOverlapping(
+            @Valid WidgetFindByArea area,
+            @RequestParam(value = "exclude", required = false) String excludeId
+    ) {
+        var excluded = excludeId == null ? null : idConverter.apply(excludeId);
+        return fromFuture(widgetService.findOverlappingAsync(area.left, area.right, area.bottom, area.top, excluded))
+                .map(ResponseEntity::ok);
+    }
+
+    /**
+     * Check whether any widget shares inner space with area, without reading all of them
+     */
+    @GetMapping(value = "/overlapping/any", params = {"left", "right", "bottom", "top"})
+    Mono<ResponseEntity<Map<String, Boolean>>> anyOverlapping(@Valid WidgetFindByArea area) {
+        return fromFuture(widgetService.anyOverlappingAsync(area.left, area.right, area.bottom, area.top))
+                .map(overlapping -> ResponseEntity.ok(Map.of("overlapping", overlapping)));
+    }
+
+    @GetMapping(value = "/count", params = {"left", "right", "bottom", "top"})
+    Mono<ResponseEntity<Map<String, Integer>>> countInArea(@Valid WidgetFindByArea area) {
+        return fromFuture(widgetService.countInAreaAsync(area.left, area.right, area.bottom, area.top))
+                .map(count -> ResponseEntity.ok(Map.of("count", count)));
+    }
+
+    /**
+     * Get the smallest area, containing all widgets, answers no content if there are no widgets
+     */
+    @GetMapping("/bounds")
+    Mono<ResponseEntity<Area>> boundingBox() {
+        return fromFuture(widgetService.boundingBoxAsync()).map(box -> box
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.noContent().build())
+        );
+    }
+
+    /**
+     * Count widgets in area per tile of square grid, laid over the area, rows go from bottom, columns from left
+     */
+    @GetMapping(value = "/histogram", params = {"left", "right", "bottom", "top", "gridSize"})
+    Mono<ResponseEntity<int[][]>> histogram(@Valid WidgetFindByArea area, @RequestParam("gridSize") int gridSize) {
+        WidgetsController.checkGridSize(gridSize);
+        return fromFuture(widgetService.histogramAsync(area.left, area.right, area.bottom, area.top, gridSize))
+                .map(ResponseEntity::ok);
+    }
+
+    /**
+     * Find k widgets, nearest to the point, the closest first, widgets, containing the point, are at zero distance
+     */
+    @GetMapping(value = "/nearest", params = {"x", "y"})
+    Mono<ResponseEntity<List<Widget<ID>>>> nearest(
+            @RequestParam("x") int x,
+            @RequestParam("y") int y,
+            @RequestParam(value = "k", defaultValue = "1") int k
+    ) {
+        WidgetsController.checkNearestCount(k);
+        return fromFuture(widgetService.nearestAsync(x, y, k)).map(ResponseEntity::ok);
+    }
+
+    /**
+     * Summarize widgets of tile of zoomed out view, see {@link org.fantom.services.widget.Tiles}
+     */
+    @GetMapping("/tiles/{z}/{x}/{y}")
+    Mono<ResponseEntity<AreaSummary>> getTile(@PathVariable("z") int z, @PathVariable("x") long x, @PathVariable("y") long y) {
+        WidgetsController.checkTile(z, x, y);
+        var version = widgetService.getVersion();
+        return fromFuture(tileCache.get(z, x, y, version, () -> widgetService.summarizeTileAsync(z, x, y)))
+                .map(WidgetsController::tileResponse);
+    }
+
+    @GetMapping(params = "ids")
+    Mono<ResponseEntity<List<Widget<ID>>>> getByIds(@RequestParam("ids") List<String> ids) {
+        var converted = ids.stream().map(idConverter).collect(Collectors.toList());
+        return fromFuture(widgetService.getByIdsAsync(converted)).map(ResponseEntity::ok);
+    }
+
+    /**
+     * Delete widgets with given ids, unknown ones are ignored
+     */
+    @DeleteMapping(value = "/delete-by-ids", params = "ids")
+    Mono<ResponseEntity<Map<String, Integer>>> deleteByIds(@RequestParam("ids") List<String> ids) {
+        var converted = ids.stream().map(idConverter).collect(Collectors.toList());
+        return fromFuture(widgetService.deleteByIdsAsync(converted))
+                .map(deleted -> ResponseEntity.ok(Map.of("deleted", deleted)));
+    }
+
+    /**
+     * Delete all widgets, falling into given area entirely
+     */
+    @DeleteMapping(value = "/delete-in-area", params = {"left", "right", "bottom", "top"})
+    Mono<ResponseEntity<Map<String, Integer>>> deleteInArea(@Valid WidgetFindByArea area) {
+        return fromFuture(widgetService.deleteInAreaAsync(area.left, area.right, area.bottom, area.top))
+                .map(deleted -> ResponseEntity.ok(Map.of("deleted", deleted)));
+    }
+
+    @DeleteMapping
+    public Mono<ResponseEntity<Void>> deleteAll(@RequestParam Map<String, String> params) {
+        WidgetsController.checkNoParams(params);
+        return fromFuture(widgetService.clearAllAsync()).then(Mono.just(ResponseEntity.noContent().<Void>build()));
+    }
+
+    @GetMapping(params = {"left", "right", "bottom", "top"})
+    Mono<ResponseEntity<Flux<Widget<ID>>>> findInArea(
+            @Valid WidgetFindByArea findCriteria,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ) {
+        var version = widgetService.getVersion();
+        return Mono.just(ResponseEntity
+                .ok()
+                .eTag(streamETag(version, accept, acceptEncoding))
+                .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING)
+                .body(pages(after -> widgetService.getInAreaPageAsync(
+                        findCriteria.left, findCriteria.right, findCriteria.bottom, findCriteria.top,
+                        after,
+                        PAGE_SIZE
+                )))
+        );
+    }
+}
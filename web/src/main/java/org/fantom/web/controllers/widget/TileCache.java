@@ -0,0 +1,104 @@
+package org.fantom.web.controllers.widget;
+
+import org.fantom.repositories.widget.dto.AreaSummary;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Keeps summaries of recently requested tiles, see {@link org.fantom.services.widget.Tiles},
+ * until repository version changes. Tile ETag is a hash of summary content, not of repository version,
+ * so tile, which is not affected by changes elsewhere, keeps its ETag and is still not modified for clients
+ */
+@Component
+public class TileCache {
+    /**
+     * Max number of cached tiles, the least recently used ones are evicted
+     */
+    static final int CAPACITY = 4096;
+
+    static final class Tile {
+        final long version;
+        final AreaSummary summary;
+        final String eTag;
+
+        Tile(long version, AreaSummary summary) {
+            this.version = version;
+            this.summary = summary;
+            this.eTag = eTag(summary);
+        }
+    }
+
+    // not a monitor, which would pin virtual threads to carriers
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<List<Long>, Tile> tiles = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Long>, Tile> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    /**
+     * Get summary of tile at given repository version, loading it if it is not cached yet
+     * @param version repository version, read before summary
+     * @param summary loader of tile summary, called only on cache miss
+     * @return future of tile, already completed on cache hit
+     */
+    CompletableFuture<Tile> get(int z, long x, long y, long version, Supplier<CompletableFuture<AreaSummary>> summary) {
+        var key = List.of((long) z, x, y);
+        Tile cached;
+        lock.lock();
+        try {
+            cached = tiles.get(key);
+        } finally {
+            lock.unlock();
+        }
+        if (cached != null && cached.version == version) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return summary.get().thenApply(loaded -> {
+            var tile = new Tile(version, loaded);
+            lock.lock();
+            try {
+                // don't replace tile of newer version, that could be loaded concurrently
+                tiles.merge(key, tile, (old, cur) -> old.version > cur.version ? old : cur);
+            } finally {
+                lock.unlock();
+            }
+            return tile;
+        });
+    }
+
+    /**
+     * Strong entity tag of tile, FNV-1a hash of its summary
+     */
+    static String eTag(AreaSummary summary) {
+        var hash = 0xcbf29ce484222325L;
+        hash = mix(hash, summary.count);
+        if (summary.bounds != null) {
+            hash = mix(hash, summary.bounds.left);
+            hash = mix(hash, summary.bounds.right);
+            hash = mix(hash, summary.bounds.bottom);
+            hash = mix(hash, summary.bounds.top);
+        }
+        for (var row : summary.density) {
+            for (var count : row) {
+                hash = mix(hash, count);
+            }
+        }
+        return "\"" + Long.toHexString(hash) + "\"";
+    }
+
+    private static long mix(long hash, int value) {
+        for (int i = 0; i < 4; i++) {
+            hash ^= (value >>> (i * 8)) & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
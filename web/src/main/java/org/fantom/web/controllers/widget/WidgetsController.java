@@ -1,45 +1,110 @@
 package org.fantom.web.controllers.widget;
 
+import org.fantom.domain.CompactId;
 import org.fantom.domain.Widget;
+import org.fantom.repositories.widget.dto.Area;
+import org.fantom.repositories.widget.dto.AreaSummary;
+import org.fantom.repositories.widget.exceptions.VersionConflictException;
 import org.fantom.repositories.widget.exceptions.ZIndexConflictException;
+import org.fantom.services.widget.Tiles;
 import org.fantom.services.widget.WidgetService;
 import org.fantom.web.config.WidgetIdType;
 import org.fantom.web.controllers.widget.dto.WidgetCreateDto;
 import org.fantom.web.controllers.widget.dto.WidgetFindByArea;
-import org.fantom.web.controllers.widget.dto.WidgetResponseDto;
+import org.fantom.web.controllers.widget.dto.WidgetReorderDto;
+import org.fantom.web.controllers.widget.dto.WidgetTranslateDto;
 import org.fantom.web.controllers.widget.dto.WidgetUpdateDto;
+import org.fantom.web.controllers.widget.serialization.WidgetCodecs;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.server.ResponseStatusException;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.security.SecureRandom;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Function;
-import java.util.stream.Stream;
+import java.util.stream.Collectors;
 
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/widgets")
 @Validated
 public class WidgetsController<ID> {
+    /**
+     * Max number of tiles along each side of histogram grid
+     */
+    static final int MAX_GRID_SIZE = 256;
+    /**
+     * Max number of nearest widgets, found at once
+     */
+    static final int MAX_NEAREST = 256;
+    /**
+     * Random tag of this process, put into tags of widget lists. Repository version is counted from zero by every
+     * process, while db content outlives restarts and is shared by instances, so the same version of different
+     * processes may describe different content
+     */
+    static final String EPOCH = Long.toString(new SecureRandom().nextLong() >>> 1, 36);
+
     private final WidgetService<ID> widgetService;
+    private final WidgetCodecs widgetCodecs;
+    private final WidgetsSnapshotCache snapshotCache;
+    private final TileCache tileCache;
     protected final Function<String, ID> idConverter;
 
     @Autowired
-    @SuppressWarnings("unchecked")
-    public WidgetsController(WidgetService<ID> widgetService, WidgetIdType idClass) {
+    public WidgetsController(
+            WidgetService<ID> widgetService,
+            WidgetIdType idClass,
+            WidgetCodecs widgetCodecs,
+            WidgetsSnapshotCache snapshotCache,
+            TileCache tileCache
+    ) {
         this.widgetService = widgetService;
+        this.widgetCodecs = widgetCodecs;
+        this.snapshotCache = snapshotCache;
+        this.tileCache = tileCache;
+        this.idConverter = idConverter(idClass);
+    }
+
+    /**
+     * @return converter of path variable to id, that answers 404 to strings, that cannot be ids at all
+     */
+    protected static <ID> Function<String, ID> idConverter(WidgetIdType idClass) {
+        Function<String, ID> parser = idParser(idClass);
+        return s -> {
+            try {
+                return parser.apply(s);
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Widget " + s + " not found", e);
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <ID> Function<String, ID> idParser(WidgetIdType idClass) {
         switch (idClass) {
             case integer:
-                this.idConverter = s -> (ID) Long.valueOf(s);
-                break;
+                return s -> (ID) Long.valueOf(s);
             case string:
-                this.idConverter = s -> (ID) s;
-                break;
+                return s -> (ID) s;
+            case compact:
+                return s -> (ID) CompactId.parse(s);
             default:
-                throw new IllegalArgumentException("idClass must be one of integer or string, got " + idClass.name());
+                throw new IllegalArgumentException("idClass must be one of integer, string or compact, got " + idClass.name());
         }
     }
 
@@ -47,62 +112,428 @@ public class WidgetsController<ID> {
         return idConverter.apply(id);
     }
 
-    protected ResponseStatusException wrapZIndexException(ZIndexConflictException e) {
-        return new ResponseStatusException(HttpStatus.CONFLICT, "Widget with zIndex "+e.zIndexAsString()+" already exists");
+    protected List<ID> convertIds(List<String> ids) {
+        return ids.stream().map(idConverter).collect(Collectors.toList());
     }
 
-    @GetMapping
-    List<Widget<ID>> getAll() {
-        return widgetService.getAll();
+    protected static void checkGridSize(int gridSize) {
+        if (gridSize < 1 || gridSize > MAX_GRID_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "gridSize must be between 1 and " + MAX_GRID_SIZE);
+        }
     }
 
-    @PostMapping
-    @ResponseStatus(HttpStatus.CREATED)
-    WidgetResponseDto<ID> create(@Valid @RequestBody WidgetCreateDto widget) {
-        try {
-            return WidgetResponseDto.fromWidget(widgetService.create(widget.toServiceDto()));
-        } catch (ArithmeticException e) {
+    /**
+     * Refuse to clear the board, if request has any query parameters, e.g. misspelled or incomplete criteria
+     * of bulk delete, that would otherwise fall through to delete of all widgets
+     */
+    protected static void checkNoParams(Map<String, String> params) {
+        if (!params.isEmpty()) {
             throw new ResponseStatusException(
                     HttpStatus.BAD_REQUEST,
-                    "Cannot move widgets upwards starting from zIndex " + widget.zIndex
+                    "Delete of all widgets takes no parameters, got " + params.keySet()
             );
         }
     }
 
-    @PutMapping("/{id}")
-    ResponseEntity<WidgetResponseDto<ID>> update(@PathVariable("id") String id, @Valid @RequestBody WidgetUpdateDto widget) {
+    protected static void checkNearestCount(int k) {
+        if (k < 1 || k > MAX_NEAREST) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "k must be between 1 and " + MAX_NEAREST);
+        }
+    }
+
+    /**
+     * @throws ResponseStatusException with NOT_FOUND if there is no such tile
+     */
+    protected static void checkTile(int z, long x, long y) {
         try {
-            return ResponseEntity.of(widgetService.update(widget.toServiceDto(convertId(id))).map(WidgetResponseDto::fromWidget));
-        } catch (ZIndexConflictException e) {
-            throw wrapZIndexException(e);
+            Tiles.area(z, x, y);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Tile " + z + "/" + x + "/" + y + " not found", e);
         }
     }
 
+    /**
+     * Tile summary with its ETag, that clients must revalidate, not modified tile is answered by framework
+     */
+    protected static ResponseEntity<AreaSummary> tileResponse(TileCache.Tile tile) {
+        return ResponseEntity.ok().eTag(tile.eTag).cacheControl(CacheControl.noCache()).body(tile.summary);
+    }
+
+    protected static ResponseStatusException wrapZIndexException(ZIndexConflictException e) {
+        return new ResponseStatusException(HttpStatus.CONFLICT, "Widget with zIndex "+e.zIndexAsString()+" already exists");
+    }
+
+    /**
+     * Convert exception, service future is completed with, to response status, if it is known one
+     * @return exception to rethrow from completion stage
+     */
+    protected static RuntimeException translateException(Throwable e) {
+        var cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof ZIndexConflictException) {
+            return wrapZIndexException((ZIndexConflictException) cause);
+        } else if (cause instanceof VersionConflictException) {
+            return new ResponseStatusException(
+                    HttpStatus.PRECONDITION_FAILED,
+                    "Widget " + ((VersionConflictException) cause).id + " has been changed"
+            );
+        } else if (cause instanceof RejectedExecutionException) {
+            return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many requests to widget storage");
+        } else if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        } else {
+            return new CompletionException(e);
+        }
+    }
+
+    /**
+     * Strong entity tag, describing all widgets at given repository version in given representation.
+     * Bytes differ between media types and content codings, so tag does too, versions of other processes never match it,
+     * see {@link #EPOCH}
+     * @param gzip whether response may be gzipped, if client accepts it
+     */
+    protected static String versionETag(long version, MediaType mediaType, boolean gzip) {
+        return "\"" + EPOCH + "." + version + "-" + mediaType.getSubtype() + (gzip ? "-gz" : "") + "\"";
+    }
+
+    /**
+     * Weak entity tag of widgets, streamed page by page, starting at given repository version.
+     * Pages are read separately, so the stream may mix concurrent changes and match no single version byte for byte
+     */
+    protected static String streamETag(long version, MediaType mediaType, boolean gzip) {
+        return "W/" + versionETag(version, mediaType, gzip);
+    }
+
+    /**
+     * Whether Accept-Encoding lists gzip with non zero quality, wildcard is not taken as gzip, as server compression
+     * doesn't take it either
+     */
+    protected static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (var coding : acceptEncoding.split(",")) {
+            var params = coding.split(";");
+            if (!params[0].trim().equalsIgnoreCase("gzip")) {
+                continue;
+            }
+            var quality = 1.0;
+            for (int i = 1; i < params.length; i++) {
+                var param = params[i].trim();
+                if (param.regionMatches(true, 0, "q=", 0, 2)) {
+                    try {
+                        quality = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            return quality > 0;
+        }
+        return false;
+    }
+
+    /**
+     * Strong entity tag of single widget, changed on every change of the widget
+     */
+    protected static String widgetETag(Widget<?> widget) {
+        return "\"" + widget.version + "\"";
+    }
+
+    /**
+     * @param ifMatch value of If-Match header
+     * @return expected widget version, or none if update is unconditional
+     * @throws ResponseStatusException with PRECONDITION_FAILED if header cannot match any widget version
+     */
+    protected static Optional<Long> parseIfMatch(String ifMatch) {
+        if (ifMatch == null || ifMatch.trim().equals("*")) {
+            return Optional.empty();
+        }
+        var tag = ifMatch.trim();
+        // weak tags never match for If-Match, as well as lists of tags, since widget has the only current version
+        if (tag.length() > 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+            try {
+                return Optional.of(Long.parseLong(tag.substring(1, tag.length() - 1)));
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "If-Match must be a single widget ETag");
+    }
+
+    protected static <ID> ResponseEntity<Widget<ID>> withETag(ResponseEntity.BodyBuilder builder, Widget<ID> widget) {
+        return builder.eTag(widgetETag(widget)).body(widget);
+    }
+
+    // widgets are returned as is and written by WidgetJsonSerializer or other serializer,
+    // depending on Accept header, without intermediate dto objects.
+    // All handlers return futures, completed by repository executors, so servlet threads don't wait for repository
+
+    @GetMapping
+    CompletableFuture<ResponseEntity<byte[]>> getAll(
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            WebRequest request,
+            HttpServletResponse response
+    ) {
+        response.setHeader(HttpHeaders.VARY, "Accept, Accept-Encoding");
+        var mediaType = widgetCodecs
+                .negotiate(accept)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_ACCEPTABLE));
+        var gzipAccepted = acceptsGzip(acceptEncoding);
+        // read version before widgets, see WidgetRepository.getVersion
+        var version = widgetService.getVersion();
+        if (request.checkNotModified(versionETag(version, mediaType, gzipAccepted))) {
+            return null;
+        }
+        return snapshotCache
+                .get(version, mediaType, widgetService::getAllAsync)
+                .thenApply(snapshot -> {
+                    // content type is set explicitly, so that body is written as is
+                    var builder = ResponseEntity.ok().contentType(mediaType);
+                    var gzipped = gzipAccepted ? snapshot.gzipped() : null;
+                    if (gzipped != null) {
+                        // server compression skips responses with content encoding already set
+                        return builder.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(gzipped);
+                    }
+                    return builder.body(snapshot.body);
+                });
+    }
+
+    @PostMapping
+    CompletableFuture<ResponseEntity<Widget<ID>>> create(@Valid @RequestBody WidgetCreateDto widget) {
+        return widgetService
+                .createAsync(widget.toServiceDto())
+                .thenApply(w -> withETag(ResponseEntity.status(HttpStatus.CREATED), w))
+                .exceptionally(e -> {
+                    if (e.getCause() instanceof ArithmeticException) {
+                        throw new ResponseStatusException(
+                                HttpStatus.BAD_REQUEST,
+                                "Cannot move widgets upwards starting from zIndex " + widget.zIndex
+                        );
+                    }
+                    throw translateException(e);
+                });
+    }
+
+    /**
+     * Update widget. If If-Match header with widget ETag is given, update is applied only if widget is not changed since
+     */
+    @PutMapping("/{id}")
+    CompletableFuture<ResponseEntity<Widget<ID>>> update(
+            @PathVariable("id") String id,
+            @Valid @RequestBody WidgetUpdateDto widget,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch
+    ) {
+        var expectedVersion = parseIfMatch(ifMatch);
+        var update = widget.toServiceDto(convertId(id));
+        var updated = expectedVersion.isPresent()
+                ? widgetService.updateAsync(update, expectedVersion.get())
+                : widgetService.updateAsync(update);
+        return updated
+                .thenApply(w -> w
+                        .map(value -> withETag(ResponseEntity.ok(), value))
+                        .orElseGet(() -> ResponseEntity.notFound().build())
+                )
+                .exceptionally(e -> {
+                    throw translateException(e);
+                });
+    }
+
+    /**
+     * Move widgets in front of or behind all other ones at once, keeping their relative order
+     */
+    @PostMapping("/reorder")
+    CompletableFuture<ResponseEntity<List<Widget<ID>>>> reorder(@Valid @RequestBody WidgetReorderDto reorder) {
+        return widgetService
+                .reorderAsync(convertIds(reorder.ids), reorder.position)
+                .thenApply(ResponseEntity::ok)
+                .exceptionally(e -> {
+                    if (e.getCause() instanceof ArithmeticException) {
+                        throw new ResponseStatusException(
+                                HttpStatus.BAD_REQUEST,
+                                "No room to move widgets to " + reorder.position
+                        );
+                    }
+                    throw translateException(e);
+                });
+    }
+
+    /**
+     * Move widgets by the same offset at once
+     */
+    @PostMapping("/translate")
+    CompletableFuture<ResponseEntity<List<Widget<ID>>>> translate(@Valid @RequestBody WidgetTranslateDto translate) {
+        return widgetService
+                .translateAsync(convertIds(translate.ids), translate.dx, translate.dy)
+                .thenApply(ResponseEntity::ok)
+                .exceptionally(e -> {
+                    if (e.getCause() instanceof ArithmeticException) {
+                        throw new ResponseStatusException(
+                                HttpStatus.BAD_REQUEST,
+                                "Cannot move widgets by (" + translate.dx + ", " + translate.dy + ")"
+                        );
+                    }
+                    throw translateException(e);
+                });
+    }
+
     @GetMapping("/{id}")
-    ResponseEntity<WidgetResponseDto<ID>> getById(@PathVariable("id") String id) {
-        return ResponseEntity.of(widgetService.getById(convertId(id)).map(WidgetResponseDto::fromWidget));
+    CompletableFuture<ResponseEntity<Widget<ID>>> getById(@PathVariable("id") String id) {
+        return widgetService
+                .getByIdAsync(convertId(id))
+                .thenApply(w -> w
+                        .map(value -> withETag(ResponseEntity.ok(), value))
+                        .orElseGet(() -> ResponseEntity.notFound().build())
+                );
     }
 
     @DeleteMapping("/{id}")
-    @ResponseStatus(HttpStatus.NO_CONTENT)
-    void delete(@PathVariable("id") String id) {
-        var deleted = widgetService.delete(convertId(id));
-        if (!deleted) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND);
-        }
+    CompletableFuture<ResponseEntity<Void>> delete(@PathVariable("id") String id) {
+        return widgetService
+                .deleteAsync(convertId(id))
+                .thenApply(deleted -> {
+                    if (!deleted) {
+                        throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+                    }
+                    return ResponseEntity.noContent().build();
+                });
+    }
+
+    /**
+     * Find widgets, sharing inner space with area, sorted by zIndex, optionally ignoring one of them
+     */
+    @GetMapping(value = "/overlapping", params = {"left", "right", "bottom", "top"})
+    CompletableFuture<ResponseEntity<List<Widget<ID>>>> findOverlapping(
+            @Valid WidgetFindByArea area,
+            @RequestParam(value = "exclude", required = false) String excludeId
+    ) {
+        return widgetService
+                .findOverlappingAsync(area.left, area.right, area.bottom, area.top, excludeId == null ? null : convertId(excludeId))
+                .thenApply(ResponseEntity::ok);
+    }
+
+    /**
+     * Check whether any widget shares inner space with area, without reading all of them
+     */
+    @GetMapping(value = "/overlapping/any", params = {"left", "right", "bottom", "top"})
+    CompletableFuture<ResponseEntity<Map<String, Boolean>>> anyOverlapping(@Valid WidgetFindByArea area) {
+        return widgetService
+                .anyOverlappingAsync(area.left, area.right, area.bottom, area.top)
+                .thenApply(overlapping -> ResponseEntity.ok(Map.of("overlapping", overlapping)));
+    }
+
+    @GetMapping(value = "/count", params = {"left", "right", "bottom", "top"})
+    CompletableFuture<ResponseEntity<Map<String, Integer>>> countInArea(@Valid WidgetFindByArea area) {
+        return widgetService
+                .countInAreaAsync(area.left, area.right, area.bottom, area.top)
+                .thenApply(count -> ResponseEntity.ok(Map.of("count", count)));
+    }
+
+    /**
+     * Get the smallest area, containing all widgets, answers no content if there are no widgets
+     */
+    @GetMapping("/bounds")
+    CompletableFuture<ResponseEntity<Area>> boundingBox() {
+        return widgetService
+                .boundingBoxAsync()
+                .thenApply(box -> box
+                        .map(ResponseEntity::ok)
+                        .orElseGet(() -> ResponseEntity.noContent().build())
+                );
+    }
+
+    /**
+     * Count widgets in area per tile of square grid, laid over the area, rows go from bottom, columns from left
+     */
+    @GetMapping(value = "/histogram", params = {"left", "right", "bottom", "top", "gridSize"})
+    CompletableFuture<ResponseEntity<int[][]>> histogram(@Valid WidgetFindByArea area, @RequestParam("gridSize") int gridSize) {
+        checkGridSize(gridSize);
+        return widgetService
+                .histogramAsync(area.left, area.right, area.bottom, area.top, gridSize)
+                .thenApply(ResponseEntity::ok);
+    }
+
+    /**
+     * Find k widgets, nearest to the point, the closest first, widgets, containing the point, are at zero distance
+     */
+    @GetMapping(value = "/nearest", params = {"x", "y"})
+    CompletableFuture<ResponseEntity<List<Widget<ID>>>> nearest(
+            @RequestParam("x") int x,
+            @RequestParam("y") int y,
+            @RequestParam(value = "k", defaultValue = "1") int k
+    ) {
+        checkNearestCount(k);
+        return widgetService
+                .nearestAsync(x, y, k)
+                .thenApply(ResponseEntity::ok);
+    }
+
+    /**
+     * Summarize widgets of tile of zoomed out view, see {@link Tiles}
+     */
+    @GetMapping("/tiles/{z}/{x}/{y}")
+    CompletableFuture<ResponseEntity<AreaSummary>> getTile(@PathVariable("z") int z, @PathVariable("x") long x, @PathVariable("y") long y) {
+        checkTile(z, x, y);
+        // read version before summary, see WidgetRepository.getVersion
+        var version = widgetService.getVersion();
+        return tileCache
+                .get(z, x, y, version, () -> widgetService.summarizeTileAsync(z, x, y))
+                .thenApply(WidgetsController::tileResponse);
+    }
+
+    @GetMapping(params = "ids")
+    CompletableFuture<ResponseEntity<List<Widget<ID>>>> getByIds(@RequestParam("ids") List<String> ids) {
+        return widgetService
+                .getByIdsAsync(convertIds(ids))
+                .thenApply(ResponseEntity::ok);
+    }
+
+    /**
+     * Delete widgets with given ids, unknown ones are ignored
+     */
+    @DeleteMapping(value = "/delete-by-ids", params = "ids")
+    CompletableFuture<ResponseEntity<Map<String, Integer>>> deleteByIds(@RequestParam("ids") List<String> ids) {
+        return widgetService
+                .deleteByIdsAsync(convertIds(ids))
+                .thenApply(deleted -> ResponseEntity.ok(Map.of("deleted", deleted)));
+    }
+
+    /**
+     * Delete all widgets, falling into given area entirely
+     */
+    @DeleteMapping(value = "/delete-in-area", params = {"left", "right", "bottom", "top"})
+    CompletableFuture<ResponseEntity<Map<String, Integer>>> deleteInArea(@Valid WidgetFindByArea area) {
+        return widgetService
+                .deleteInAreaAsync(area.left, area.right, area.bottom, area.top)
+                .thenApply(deleted -> ResponseEntity.ok(Map.of("deleted", deleted)));
     }
 
     @DeleteMapping
-    @ResponseStatus(HttpStatus.NO_CONTENT)
-    public void deleteAll() {
-        widgetService.clearAll();
+    public CompletableFuture<ResponseEntity<Void>> deleteAll(@RequestParam Map<String, String> params) {
+        checkNoParams(params);
+        return widgetService
+                .clearAllAsync()
+                .thenApply(ignored -> ResponseEntity.noContent().build());
     }
 
     @GetMapping(params = {"left", "right", "bottom", "top"})
-    Stream<WidgetResponseDto<ID>> findInArea(@Valid WidgetFindByArea findCriteria) {
+    CompletableFuture<ResponseEntity<List<Widget<ID>>>> findInArea(
+            @Valid WidgetFindByArea findCriteria,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            WebRequest request,
+            HttpServletResponse response
+    ) {
+        response.setHeader(HttpHeaders.VARY, "Accept, Accept-Encoding");
+        // the same representation, as message converters choose, large responses are compressed by server
+        var mediaType = widgetCodecs
+                .negotiate(accept)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_ACCEPTABLE));
+        var version = widgetService.getVersion();
+        if (request.checkNotModified(versionETag(version, mediaType, acceptsGzip(acceptEncoding)))) {
+            return null;
+        }
         return widgetService
-                .getInArea(findCriteria.left, findCriteria.right, findCriteria.bottom, findCriteria.top)
-                .stream()
-                .map(WidgetResponseDto::fromWidget);
+                .getInAreaAsync(findCriteria.left, findCriteria.right, findCriteria.bottom, findCriteria.top)
+                .thenApply(ResponseEntity::ok);
     }
 }
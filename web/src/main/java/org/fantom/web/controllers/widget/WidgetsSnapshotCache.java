@@ -0,0 +1,98 @@
+package org.fantom.web.controllers.widget;
+
+import org.fantom.web.controllers.widget.serialization.WidgetCodecs;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the last encoded list of all widgets in each representation, together with its gzipped version,
+ * until repository version changes, so that repeated full board downloads don't touch repository and encoders
+ */
+@Component
+public class WidgetsSnapshotCache {
+    /**
+     * Bodies smaller than this are not worth compressing
+     */
+    static final int MIN_COMPRESSED_SIZE = 2048;
+
+    static final class Snapshot {
+        final long version;
+        final byte[] body;
+        // compressed on first request, that accepts gzip
+        private volatile byte[] gzippedBody;
+
+        Snapshot(long version, byte[] body) {
+            this.version = version;
+            this.body = body;
+        }
+
+        /**
+         * @return gzipped body or null, if body is too small to be compressed
+         */
+        byte[] gzipped() {
+            if (body.length < MIN_COMPRESSED_SIZE) {
+                return null;
+            }
+            var gzipped = gzippedBody;
+            if (gzipped == null) {
+                // concurrent requests may compress the same body twice, that is cheaper than synchronization
+                var buffer = new ByteArrayOutputStream(body.length / 4);
+                try (var gzip = new GZIPOutputStream(buffer)) {
+                    gzip.write(body);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                gzipped = buffer.toByteArray();
+                gzippedBody = gzipped;
+            }
+            return gzipped;
+        }
+    }
+
+    private final WidgetCodecs codecs;
+    private final ConcurrentHashMap<MediaType, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    @Autowired
+    public WidgetsSnapshotCache(WidgetCodecs codecs) {
+        this.codecs = codecs;
+    }
+
+    /**
+     * Get snapshot of given version in given representation, encoding it if it is not cached yet
+     * @param version repository version, read before widgets
+     * @param mediaType one of representations, supported by {@link WidgetCodecs}
+     * @param widgets supplier of all widgets, called only on cache miss
+     * @return future of encoded snapshot, already completed on cache hit
+     */
+    CompletableFuture<Snapshot> get(
+            long version,
+            MediaType mediaType,
+            Supplier<? extends CompletableFuture<? extends List<?>>> widgets
+    ) {
+        var cached = snapshots.get(mediaType);
+        if (cached != null && cached.version == version) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return widgets.get().thenApply(list -> {
+            Snapshot snapshot;
+            try {
+                snapshot = new Snapshot(version, codecs.getMapper(mediaType).writeValueAsBytes(list));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            // don't replace snapshot of newer version, that could be built concurrently
+            snapshots.merge(mediaType, snapshot, (old, cur) -> old.version > cur.version ? old : cur);
+            return snapshot;
+        });
+    }
+}
@@ -0,0 +1,31 @@
+package org.fantom.web.controllers.widget.dto;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.fantom.repositories.widget.dto.ReorderPosition;
+
+import javax.validation.constraints.NotNull;
+import java.util.List;
+
+public class WidgetReorderDto {
+    /**
+     * ids of widgets to move
+     */
+    @NotNull
+    public final List<String> ids;
+
+    /**
+     * where to move widgets, front or back
+     */
+    @NotNull
+    public final ReorderPosition position;
+
+    @JsonCreator(mode = JsonCreator.Mode.PROPERTIES)
+    public WidgetReorderDto(
+            @JsonProperty(value = "ids", required = true) List<String> ids,
+            @JsonProperty(value = "position", required = true) ReorderPosition position
+    ) {
+        this.ids = ids;
+        this.position = position;
+    }
+}
@@ -1,12 +1,18 @@
 package org.fantom.web.controllers.widget.dto;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.util.StdDateFormat;
-import org.fantom.domain.Widget;
 
 import java.util.Date;
 import java.util.Objects;
 
+/**
+ * Json representation of widget, as written by {@link org.fantom.web.controllers.widget.serialization.WidgetJsonSerializer}.
+ * Controller doesn't create these dtos, use it to read responses
+ * @param <ID> type of widget id
+ */
 public class WidgetResponseDto<ID> {
     public final ID id;
     public final int x;
@@ -17,14 +23,16 @@ public class WidgetResponseDto<ID> {
     @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = StdDateFormat.DATE_FORMAT_STR_ISO8601)
     public final Date updatedAt;
 
+    // explicit property names, so that mappers without parameter names module, like cbor and smile ones, can read it
+    @JsonCreator(mode = JsonCreator.Mode.PROPERTIES)
     public WidgetResponseDto(
-            ID id,
-            int x,
-            int y,
-            Integer zIndex,
-            int width,
-            int height,
-            Date updatedAt) {
+            @JsonProperty("id") ID id,
+            @JsonProperty("x") int x,
+            @JsonProperty("y") int y,
+            @JsonProperty("zIndex") Integer zIndex,
+            @JsonProperty("width") int width,
+            @JsonProperty("height") int height,
+            @JsonProperty("updatedAt") Date updatedAt) {
         this.id = id;
         this.x = x;
         this.y = y;
@@ -34,10 +42,6 @@ public class WidgetResponseDto<ID> {
         this.updatedAt = updatedAt;
     }
 
-    public static <ID> WidgetResponseDto<ID> fromWidget(Widget<ID> widget) {
-        return new WidgetResponseDto<>(widget.id, widget.x, widget.y, widget.zIndex, widget.width, widget.height, widget.updatedAt);
-    }
-
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
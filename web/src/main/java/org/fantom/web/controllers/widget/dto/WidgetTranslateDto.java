@@ -0,0 +1,38 @@
+package org.fantom.web.controllers.widget.dto;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.NotNull;
+import java.util.List;
+
+public class WidgetTranslateDto {
+    /**
+     * ids of widgets to move
+     */
+    @NotNull
+    public final List<String> ids;
+
+    /**
+     * offset along x axis
+     */
+    @NotNull
+    public final int dx;
+
+    /**
+     * offset along y axis
+     */
+    @NotNull
+    public final int dy;
+
+    @JsonCreator(mode = JsonCreator.Mode.PROPERTIES)
+    public WidgetTranslateDto(
+            @JsonProperty(value = "ids", required = true) List<String> ids,
+            @JsonProperty(value = "dx", required = true) int dx,
+            @JsonProperty(value = "dy", required = true) int dy
+    ) {
+        this.ids = ids;
+        this.dx = dx;
+        this.dy = dy;
+    }
+}
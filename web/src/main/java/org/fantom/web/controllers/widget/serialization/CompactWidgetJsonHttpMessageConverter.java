@@ -0,0 +1,25 @@
+package org.fantom.web.controllers.widget.serialization;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+
+/**
+ * Writes widgets as {@link WidgetMediaTypes#COMPACT_JSON}, when client asks for it in Accept header.
+ * It must go before default json converter, which takes {@code application/*+json} as well, but it is not offered
+ * as producible type, so that clients, accepting any type, still get plain json
+ */
+public class CompactWidgetJsonHttpMessageConverter extends AbstractJackson2HttpMessageConverter {
+
+    /**
+     * @param objectMapper mapper with {@link CompactWidgetJsonSerializer} registered
+     */
+    public CompactWidgetJsonHttpMessageConverter(ObjectMapper objectMapper) {
+        super(objectMapper, WidgetMediaTypes.COMPACT_JSON);
+    }
+
+    @Override
+    public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+        return mediaType != null && super.canWrite(clazz, mediaType);
+    }
+}
@@ -0,0 +1,43 @@
+package org.fantom.web.controllers.widget.serialization;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import org.fantom.domain.Widget;
+
+import java.io.IOException;
+
+/**
+ * Serializes widget as positional tuple {@code [id, x, y, zIndex, width, height, updatedAt]},
+ * where updatedAt is milliseconds since the epoch.
+ * Used for {@link WidgetMediaTypes#COMPACT_JSON} responses
+ */
+public class CompactWidgetJsonSerializer extends StdSerializer<Widget<?>> {
+
+    public CompactWidgetJsonSerializer() {
+        super(Widget.class, false);
+    }
+
+    /**
+     * @param objectMapper mapper to register serializer in, it is modified
+     * @return the same mapper, that writes widgets as tuples
+     */
+    public static ObjectMapper register(ObjectMapper objectMapper) {
+        return objectMapper.registerModule(new SimpleModule("CompactWidgetModule").addSerializer(new CompactWidgetJsonSerializer()));
+    }
+
+    @Override
+    public void serialize(Widget<?> widget, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        gen.writeStartArray();
+        WidgetJsonSerializer.writeId(widget.id, gen);
+        gen.writeNumber(widget.x);
+        gen.writeNumber(widget.y);
+        gen.writeNumber(widget.zIndex);
+        gen.writeNumber(widget.width);
+        gen.writeNumber(widget.height);
+        gen.writeNumber(widget.updatedAt);
+        gen.writeEndArray();
+    }
+}
@@ -0,0 +1,62 @@
+package org.fantom.web.controllers.widget.serialization;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+import java.util.LinkedHashMap;
+import java.util.Optional;
+
+/**
+ * Object mappers of all supported widget representations.
+ * Used by endpoints, that encode widgets themselves instead of relying on message converters
+ */
+public class WidgetCodecs {
+    // in order of preference, the first one is the default
+    private final LinkedHashMap<MediaType, ObjectMapper> mappers;
+
+    /**
+     * @param mappers mappers by concrete media type, in order of preference
+     */
+    public WidgetCodecs(LinkedHashMap<MediaType, ObjectMapper> mappers) {
+        if (mappers.isEmpty()) {
+            throw new IllegalArgumentException("At least one widget representation must be supported");
+        }
+        this.mappers = new LinkedHashMap<>(mappers);
+    }
+
+    public ObjectMapper getMapper(MediaType mediaType) {
+        var mapper = mappers.get(mediaType);
+        if (mapper == null) {
+            throw new IllegalArgumentException("Unsupported widget representation " + mediaType);
+        }
+        return mapper;
+    }
+
+    /**
+     * Choose representation, that suits Accept header best
+     * @param accept value of Accept header, may be null
+     * @return concrete media type of chosen representation or none, if client doesn't accept any of supported ones
+     */
+    public Optional<MediaType> negotiate(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return Optional.of(mappers.keySet().iterator().next());
+        }
+        try {
+            var accepted = MediaType.parseMediaTypes(accept);
+            MediaType.sortBySpecificityAndQuality(accepted);
+            for (var mediaType : accepted) {
+                if (mediaType.getQualityValue() == 0) {
+                    continue;
+                }
+                for (var supported : mappers.keySet()) {
+                    if (mediaType.isCompatibleWith(supported)) {
+                        return Optional.of(supported);
+                    }
+                }
+            }
+        } catch (InvalidMediaTypeException ignored) {
+        }
+        return Optional.empty();
+    }
+}
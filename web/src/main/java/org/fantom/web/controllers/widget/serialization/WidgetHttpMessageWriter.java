@@ -0,0 +1,27 @@
+package org.fantom.web.controllers.widget.serialization;
+
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.Encoder;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.EncoderHttpMessageWriter;
+
+/**
+ * Reactive writer of widgets in one of additional representations.
+ * It refuses to write plain {@link Object}, so that codec configurer treats it as typed writer and puts it
+ * before default object writers, which would otherwise take over binary formats with mappers,
+ * unaware of widget serializers
+ */
+public class WidgetHttpMessageWriter extends EncoderHttpMessageWriter<Object> {
+
+    /**
+     * @param encoder jackson encoder with one of {@link WidgetCodecs} mappers
+     */
+    public WidgetHttpMessageWriter(Encoder<Object> encoder) {
+        super(encoder);
+    }
+
+    @Override
+    public boolean canWrite(ResolvableType elementType, MediaType mediaType) {
+        return elementType.resolve(Object.class) != Object.class && super.canWrite(elementType, mediaType);
+    }
+}
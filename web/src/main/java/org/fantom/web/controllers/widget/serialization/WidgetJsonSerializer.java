@@ -0,0 +1,71 @@
+package org.fantom.web.controllers.widget.serialization;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.fasterxml.jackson.databind.util.StdDateFormat;
+import org.fantom.domain.Widget;
+import org.springframework.boot.jackson.JsonComponent;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Hand-written widget serializer, that writes fields straight to generator without reflection and intermediate dto.
+ * Produces the same document as {@link org.fantom.web.controllers.widget.dto.WidgetResponseDto}
+ */
+@JsonComponent
+public class WidgetJsonSerializer extends StdSerializer<Widget<?>> {
+    private static final DateTimeFormatter UPDATED_AT_FORMAT = DateTimeFormatter
+            .ofPattern(StdDateFormat.DATE_FORMAT_STR_ISO8601)
+            .withZone(ZoneOffset.UTC);
+
+    // pre-encoded field names
+    private static final SerializedString ID = new SerializedString("id");
+    private static final SerializedString X = new SerializedString("x");
+    private static final SerializedString Y = new SerializedString("y");
+    private static final SerializedString Z_INDEX = new SerializedString("zIndex");
+    private static final SerializedString WIDTH = new SerializedString("width");
+    private static final SerializedString HEIGHT = new SerializedString("height");
+    private static final SerializedString UPDATED_AT = new SerializedString("updatedAt");
+
+    public WidgetJsonSerializer() {
+        super(Widget.class, false);
+    }
+
+    /**
+     * Write widget id as number, if it is numeric, or as string otherwise
+     */
+    static void writeId(Object id, JsonGenerator gen) throws IOException {
+        if (id instanceof Long) {
+            gen.writeNumber((long) id);
+        } else if (id instanceof Integer) {
+            gen.writeNumber((int) id);
+        } else {
+            gen.writeString(id.toString());
+        }
+    }
+
+    @Override
+    public void serialize(Widget<?> widget, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        gen.writeStartObject();
+        gen.writeFieldName(ID);
+        writeId(widget.id, gen);
+        gen.writeFieldName(X);
+        gen.writeNumber(widget.x);
+        gen.writeFieldName(Y);
+        gen.writeNumber(widget.y);
+        gen.writeFieldName(Z_INDEX);
+        gen.writeNumber(widget.zIndex);
+        gen.writeFieldName(WIDTH);
+        gen.writeNumber(widget.width);
+        gen.writeFieldName(HEIGHT);
+        gen.writeNumber(widget.height);
+        gen.writeFieldName(UPDATED_AT);
+        gen.writeString(UPDATED_AT_FORMAT.format(Instant.ofEpochMilli(widget.updatedAt)));
+        gen.writeEndObject();
+    }
+}
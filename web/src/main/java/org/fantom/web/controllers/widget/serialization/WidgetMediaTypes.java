@@ -0,0 +1,20 @@
+package org.fantom.web.controllers.widget.serialization;
+
+import org.springframework.http.MediaType;
+
+/**
+ * Media types of widget representations, besides plain json
+ */
+public final class WidgetMediaTypes {
+    /**
+     * Json, where each widget is written as array of its fields, see {@link CompactWidgetJsonSerializer}
+     */
+    public static final String COMPACT_JSON_VALUE = "application/vnd.fantom.widgets-compact+json";
+    public static final MediaType COMPACT_JSON = MediaType.valueOf(COMPACT_JSON_VALUE);
+
+    public static final String SMILE_VALUE = "application/x-jackson-smile";
+    public static final MediaType SMILE = MediaType.valueOf(SMILE_VALUE);
+
+    private WidgetMediaTypes() {
+    }
+}
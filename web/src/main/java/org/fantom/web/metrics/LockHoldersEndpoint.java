@@ -0,0 +1,32 @@
+package org.fantom.web.metrics;
+
+import org.fantom.repository.LockProfiler;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.List;
+
+/**
+ * Call sites, that held in-memory repository lock for longest time, as sampled by {@link LockProfiler}
+ */
+@Endpoint(id = "lockholders")
+public class LockHoldersEndpoint {
+    private static final int LIMIT = 20;
+
+    private final LockProfiler profiler;
+
+    public LockHoldersEndpoint(LockProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    @ReadOperation
+    public List<LockProfiler.CallSite> topHolders() {
+        return profiler.topHolders(LIMIT);
+    }
+
+    @DeleteOperation
+    public void reset() {
+        profiler.reset();
+    }
+}
@@ -0,0 +1,41 @@
+package org.fantom.web.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.fantom.repository.ClosableReentrantReadWriteLock;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records wait and hold times of in-memory repository lock, by lock mode
+ */
+public class MeteredLockListener implements ClosableReentrantReadWriteLock.Listener {
+    private final Timer readWait;
+    private final Timer writeWait;
+    private final Timer readHold;
+    private final Timer writeHold;
+
+    public MeteredLockListener(MeterRegistry registry) {
+        readWait = timer(registry, "widgets.repository.lock.wait", "read");
+        writeWait = timer(registry, "widgets.repository.lock.wait", "write");
+        readHold = timer(registry, "widgets.repository.lock.hold", "read");
+        writeHold = timer(registry, "widgets.repository.lock.hold", "write");
+    }
+
+    private static Timer timer(MeterRegistry registry, String name, String mode) {
+        return Timer.builder(name)
+                .tag("mode", mode)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    @Override
+    public void acquired(boolean write, long waitNanos) {
+        (write ? writeWait : readWait).record(waitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void released(boolean write, long holdNanos) {
+        (write ? writeHold : readHold).record(holdNanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,352 @@
+package org.fantom.web.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.fantom.domain.Widget;
+import org.fantom.repositories.widget.AtomicAction;
+import org.fantom.repositories.widget.AtomicFunction;
+import org.fantom.repositories.widget.WidgetRepository;
+import org.fantom.repositories.widget.dto.Area;
+import org.fantom.repositories.widget.dto.AreaSummary;
+import org.fantom.repositories.widget.dto.ReorderPosition;
+import org.fantom.repositories.widget.dto.WidgetCreateDto;
+import org.fantom.repositories.widget.exceptions.VersionConflictException;
+import org.fantom.repositories.widget.exceptions.ZIndexConflictException;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Repository decorator, that records latency of every call by method, number of widgets, returned by list methods,
+ * and number of widgets, moved by {@link #shiftUpwards}.
+ * Atomic actions are recorded as a whole, and calls, they make to repository, are recorded by method as well
+ * @param <ID> Type of widget id
+ */
+public class MeteredWidgetRepository<ID> implements WidgetRepository<ID> {
+
+    @FunctionalInterface
+    private interface Call<T, E1 extends Exception, E2 extends Exception> {
+        T call() throws E1, E2;
+    }
+
+    /**
+     * Meters of all calls, shared by repository and its views, passed to atomic actions
+     */
+    private static final class Meters {
+        private final Timer add;
+        private final Timer addAll;
+        private final Timer save;
+        private final Timer saveVersioned;
+        private final Timer update;
+        private final Timer saveAll;
+        private final Timer getById;
+        private final Timer getByIds;
+        private final Timer getAll;
+        private final Timer getInArea;
+        private final Timer findOverlapping;
+        private final Timer anyOverlapping;
+        private final Timer countInArea;
+        private final Timer boundingBox;
+        private final Timer histogram;
+        private final Timer nearest;
+        private final Timer summarize;
+        private final Timer forEach;
+        private final Timer forEachInArea;
+        private final Timer getPage;
+        private final Timer getInAreaPage;
+        private final Timer deleteAndReturnById;
+        private final Timer deleteById;
+        private final Timer deleteByIds;
+        private final Timer deleteInArea;
+        private final Timer deleteAll;
+        private final Timer getMaxZIndex;
+        private final Timer shiftUpwards;
+        private final Timer compactZIndexes;
+        private final Timer reorder;
+        private final Timer translate;
+        private final Timer runAtomically;
+
+        private final DistributionSummary getAllSize;
+        private final DistributionSummary getInAreaSize;
+        private final DistributionSummary shiftLength;
+
+        Meters(MeterRegistry registry) {
+            add = timer(registry, "add");
+            addAll = timer(registry, "addAll");
+            save = timer(registry, "save");
+            saveVersioned = timer(registry, "saveVersioned");
+            update = timer(registry, "update");
+            saveAll = timer(registry, "saveAll");
+            getById = timer(registry, "getById");
+            getByIds = timer(registry, "getByIds");
+            getAll = timer(registry, "getAll");
+            getInArea = timer(registry, "getInArea");
+            findOverlapping = timer(registry, "findOverlapping");
+            anyOverlapping = timer(registry, "anyOverlapping");
+            countInArea = timer(registry, "countInArea");
+            boundingBox = timer(registry, "boundingBox");
+            histogram = timer(registry, "histogram");
+            nearest = timer(registry, "nearest");
+            summarize = timer(registry, "summarize");
+            forEach = timer(registry, "forEach");
+            forEachInArea = timer(registry, "forEachInArea");
+            getPage = timer(registry, "getPage");
+            getInAreaPage = timer(registry, "getInAreaPage");
+            deleteAndReturnById = timer(registry, "deleteAndReturnById");
+            deleteById = timer(registry, "deleteById");
+            deleteByIds = timer(registry, "deleteByIds");
+            deleteInArea = timer(registry, "deleteInArea");
+            deleteAll = timer(registry, "deleteAll");
+            getMaxZIndex = timer(registry, "getMaxZIndex");
+            shiftUpwards = timer(registry, "shiftUpwards");
+            compactZIndexes = timer(registry, "compactZIndexes");
+            reorder = timer(registry, "reorder");
+            translate = timer(registry, "translate");
+            runAtomically = timer(registry, "runAtomically");
+            getAllSize = summary(registry, "widgets.repository.result.size", "getAll");
+            getInAreaSize = summary(registry, "widgets.repository.result.size", "getInArea");
+            shiftLength = summary(registry, "widgets.repository.shift.length", "shiftUpwards");
+        }
+
+        private static Timer timer(MeterRegistry registry, String method) {
+            return Timer.builder("widgets.repository.calls")
+                    .tag("method", method)
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+
+        private static DistributionSummary summary(MeterRegistry registry, String name, String method) {
+            return DistributionSummary.builder(name)
+                    .tag("method", method)
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+    }
+
+    private final WidgetRepository<ID> repository;
+    private final Meters meters;
+
+    public MeteredWidgetRepository(WidgetRepository<ID> repository, MeterRegistry registry) {
+        this(repository, new Meters(registry));
+    }
+
+    private MeteredWidgetRepository(WidgetRepository<ID> repository, Meters meters) {
+        this.repository = repository;
+        this.meters = meters;
+    }
+
+    // calls, made by atomic action, are recorded by the same meters, as calls to this repository
+    private WidgetRepository<ID> metered(WidgetRepository<ID> repository) {
+        return new MeteredWidgetRepository<>(repository, meters);
+    }
+
+    private static <T, E1 extends Exception, E2 extends Exception> T record(Timer timer, Call<T, E1, E2> call) throws E1, E2 {
+        var start = System.nanoTime();
+        try {
+            return call.call();
+        } finally {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static void record(Timer timer, Runnable call) {
+        var start = System.nanoTime();
+        try {
+            call.run();
+        } finally {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Widget<ID> add(WidgetCreateDto widget) throws ZIndexConflictException {
+        return record(meters.add, () -> repository.add(widget));
+    }
+
+    @Override
+    public List<Widget<ID>> add(Iterable<WidgetCreateDto> widgets) throws ZIndexConflictException {
+        return record(meters.addAll, () -> repository.add(widgets));
+    }
+
+    @Override
+    public Optional<Widget<ID>> save(Widget<ID> widget) throws ZIndexConflictException {
+        return record(meters.save, () -> repository.save(widget));
+    }
+
+    @Override
+    public Optional<Widget<ID>> save(Widget<ID> widget, long expectedVersion) throws ZIndexConflictException, VersionConflictException {
+        return MeteredWidgetRepository.<Optional<Widget<ID>>, ZIndexConflictException, VersionConflictException>record(
+                meters.saveVersioned,
+                () -> repository.save(widget, expectedVersion)
+        );
+    }
+
+    @Override
+    public Optional<Widget<ID>> update(ID id, UnaryOperator<Widget<ID>> update) throws ZIndexConflictException {
+        return record(meters.update, () -> repository.update(id, update));
+    }
+
+    @Override
+    public void save(Iterable<Widget<ID>> widgets) throws ZIndexConflictException {
+        record(meters.saveAll, () -> {
+            repository.save(widgets);
+            return null;
+        });
+    }
+
+    @Override
+    public Optional<Widget<ID>> getById(ID id) {
+        return record(meters.getById, () -> repository.getById(id));
+    }
+
+    @Override
+    public List<Widget<ID>> getByIds(Collection<ID> ids) {
+        return record(meters.getByIds, () -> repository.getByIds(ids));
+    }
+
+    @Override
+    public List<Widget<ID>> getAll() {
+        var widgets = record(meters.getAll, repository::getAll);
+        meters.getAllSize.record(widgets.size());
+        return widgets;
+    }
+
+    @Override
+    public List<Widget<ID>> getInArea(Area area) {
+        var widgets = record(meters.getInArea, () -> repository.getInArea(area));
+        meters.getInAreaSize.record(widgets.size());
+        return widgets;
+    }
+
+    @Override
+    public List<Widget<ID>> findOverlapping(Area area, ID excludeId) {
+        return record(meters.findOverlapping, () -> repository.findOverlapping(area, excludeId));
+    }
+
+    @Override
+    public boolean anyOverlapping(Area area) {
+        return record(meters.anyOverlapping, () -> repository.anyOverlapping(area));
+    }
+
+    @Override
+    public int countInArea(Area area) {
+        return record(meters.countInArea, () -> repository.countInArea(area));
+    }
+
+    @Override
+    public Optional<Area> boundingBox() {
+        return record(meters.boundingBox, repository::boundingBox);
+    }
+
+    @Override
+    public int[][] histogram(Area area, int gridSize) throws IllegalArgumentException {
+        return record(meters.histogram, () -> repository.histogram(area, gridSize));
+    }
+
+    @Override
+    public List<Widget<ID>> nearest(int x, int y, int k) throws IllegalArgumentException {
+        return record(meters.nearest, () -> repository.nearest(x, y, k));
+    }
+
+    @Override
+    public AreaSummary summarize(Area area, int gridSize) throws IllegalArgumentException {
+        return record(meters.summarize, () -> repository.summarize(area, gridSize));
+    }
+
+    @Override
+    public void forEach(Consumer<? super Widget<ID>> consumer) {
+        record(meters.forEach, () -> repository.forEach(consumer));
+    }
+
+    @Override
+    public void forEachInArea(Area area, Consumer<? super Widget<ID>> consumer) {
+        record(meters.forEachInArea, () -> repository.forEachInArea(area, consumer));
+    }
+
+    @Override
+    public List<Widget<ID>> getPage(Integer afterZIndex, int limit) {
+        return record(meters.getPage, () -> repository.getPage(afterZIndex, limit));
+    }
+
+    @Override
+    public List<Widget<ID>> getInAreaPage(Area area, Integer afterZIndex, int limit) {
+        return record(meters.getInAreaPage, () -> repository.getInAreaPage(area, afterZIndex, limit));
+    }
+
+    @Override
+    public Optional<Widget<ID>> deleteAndReturnById(ID id) {
+        return record(meters.deleteAndReturnById, () -> repository.deleteAndReturnById(id));
+    }
+
+    @Override
+    public boolean deleteById(ID id) {
+        return record(meters.deleteById, () -> repository.deleteById(id));
+    }
+
+    @Override
+    public int deleteByIds(Collection<ID> ids) {
+        return record(meters.deleteByIds, () -> repository.deleteByIds(ids));
+    }
+
+    @Override
+    public int deleteInArea(Area area) {
+        return record(meters.deleteInArea, () -> repository.deleteInArea(area));
+    }
+
+    @Override
+    public void deleteAll() {
+        record(meters.deleteAll, repository::deleteAll);
+    }
+
+    @Override
+    public Optional<Integer> getMaxZIndex() {
+        return record(meters.getMaxZIndex, repository::getMaxZIndex);
+    }
+
+    @Override
+    public long getVersion() {
+        return repository.getVersion();
+    }
+
+    @Override
+    public int shiftUpwards(Integer zIndex) throws ArithmeticException {
+        var shifted = record(meters.shiftUpwards, () -> repository.shiftUpwards(zIndex));
+        meters.shiftLength.record(shifted);
+        return shifted;
+    }
+
+    @Override
+    public int compactZIndexes() {
+        return record(meters.compactZIndexes, repository::compactZIndexes);
+    }
+
+    @Override
+    public List<Widget<ID>> reorder(Collection<ID> ids, ReorderPosition position) throws ArithmeticException {
+        return record(meters.reorder, () -> repository.reorder(ids, position));
+    }
+
+    @Override
+    public List<Widget<ID>> translate(Collection<ID> ids, int dx, int dy, long updatedAt) throws ArithmeticException {
+        return record(meters.translate, () -> repository.translate(ids, dx, dy, updatedAt));
+    }
+
+    @Override
+    public <T, E extends Exception> T runAtomically(AtomicFunction<WidgetRepository<ID>, T, E> action) throws E {
+        AtomicFunction<WidgetRepository<ID>, T, E> metered = repo -> action.run(metered(repo));
+        return record(meters.runAtomically, () -> repository.runAtomically(metered));
+    }
+
+    @Override
+    public <E extends Exception> void runAtomically(AtomicAction<WidgetRepository<ID>, E> action) throws E {
+        AtomicAction<WidgetRepository<ID>, E> metered = repo -> action.run(metered(repo));
+        record(meters.runAtomically, () -> {
+            repository.runAtomically(metered);
+            return null;
+        });
+    }
+}
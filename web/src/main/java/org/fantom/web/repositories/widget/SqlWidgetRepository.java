@@ -5,37 +5,121 @@ import org.fantom.repositories.widget.AtomicAction;
 import org.fantom.repositories.widget.AtomicFunction;
 import org.fantom.repositories.widget.WidgetRepository;
 import org.fantom.repositories.widget.dto.Area;
+import org.fantom.repositories.widget.dto.AreaSummary;
+import org.fantom.repositories.widget.dto.ReorderPosition;
 import org.fantom.repositories.widget.dto.WidgetCreateDto;
+import org.fantom.repositories.widget.exceptions.VersionConflictException;
 import org.fantom.repositories.widget.exceptions.ZIndexConflictException;
 import org.fantom.web.repositories.widget.dao.WidgetEntity;
 import org.hibernate.exception.ConstraintViolationException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
-import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.data.repository.query.Param;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.orm.jpa.JpaSystemException;
 import org.springframework.stereotype.Component;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.persistence.LockModeType;
 import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
 @Lazy
 @Repository
-interface InternalSqlWidgetRepository extends PagingAndSortingRepository<WidgetEntity, Long> {
+interface InternalSqlWidgetRepository extends JpaRepository<WidgetEntity, Long> {
     @Query("select w from WidgetEntity w where w.lbx >= :x1 and w.lby >= :y1 and w.rtx <= :x2 and w.rty <= :y2")
     List<WidgetEntity> getInArea(@Param("x1") int x1, @Param("y1") int y1, @Param("x2") int x2, @Param("y2") int y2);
 
+    @Query("select count(w) from WidgetEntity w where w.lbx >= :x1 and w.lby >= :y1 and w.rtx <= :x2 and w.rty <= :y2")
+    long countInArea(@Param("x1") int x1, @Param("y1") int y1, @Param("x2") int x2, @Param("y2") int y2);
+
+    @Query("select w from WidgetEntity w" +
+            " where w.lbx < :x2 and w.lby < :y2 and w.rtx > :x1 and w.rty > :y1 and (:excludeId is null or w.id <> :excludeId)" +
+            " order by w.zIndex")
+    List<WidgetEntity> findOverlapping(
+            @Param("x1") int x1, @Param("y1") int y1, @Param("x2") int x2, @Param("y2") int y2,
+            @Param("excludeId") Long excludeId
+    );
+
+    // limited to a single row by page, so that db stops at the first one found
+    @Query("select w.id from WidgetEntity w where w.lbx < :x2 and w.lby < :y2 and w.rtx > :x1 and w.rty > :y1")
+    List<Long> findOverlappingIds(@Param("x1") int x1, @Param("y1") int y1, @Param("x2") int x2, @Param("y2") int y2, Pageable page);
+
+    @Query("select count(w) from WidgetEntity w where w.lbx <= :x2 and w.lby <= :y2 and w.rtx >= :x1 and w.rty >= :y1")
+    long countIntersecting(@Param("x1") int x1, @Param("y1") int y1, @Param("x2") int x2, @Param("y2") int y2);
+
+    @Query("select w from WidgetEntity w where w.lbx <= :x2 and w.lby <= :y2 and w.rtx >= :x1 and w.rty >= :y1")
+    List<WidgetEntity> getIntersecting(@Param("x1") int x1, @Param("y1") int y1, @Param("x2") int x2, @Param("y2") int y2);
+
+    @Query("select min(w.lbx), max(w.rtx), min(w.lby), max(w.rty) from WidgetEntity w")
+    List<Object[]> getBoundingBox();
+
+    // widgets are bucketed by tile of bottom-left vertex, the same way as Area.row and Area.column do
+    @Query(value = "select tile_row, tile_column, count(*) from (" +
+            " select (cast(w.lby as bigint) - :y1) * :gridSize / (cast(:y2 as bigint) - :y1 + 1) as tile_row," +
+            "  (cast(w.lbx as bigint) - :x1) * :gridSize / (cast(:x2 as bigint) - :x1 + 1) as tile_column" +
+            " from widgets w" +
+            " where w.lbx >= :x1 and w.lby >= :y1 and w.rtx <= :x2 and w.rty <= :y2" +
+            ") as tiles group by tile_row, tile_column",
+            nativeQuery = true
+    )
+    List<Object[]> getHistogram(
+            @Param("x1") int x1, @Param("y1") int y1, @Param("x2") int x2, @Param("y2") int y2,
+            @Param("gridSize") int gridSize
+    );
+
+    // unlike histogram, widgets are selected by bottom-left vertex only
+    @Query(value = "select tile_row, tile_column, count(*), min(lbx), max(rtx), min(lby), max(rty) from (" +
+            " select (cast(w.lby as bigint) - :y1) * :gridSize / (cast(:y2 as bigint) - :y1 + 1) as tile_row," +
+            "  (cast(w.lbx as bigint) - :x1) * :gridSize / (cast(:x2 as bigint) - :x1 + 1) as tile_column," +
+            "  w.lbx, w.rtx, w.lby, w.rty" +
+            " from widgets w" +
+            " where w.lbx between :x1 and :x2 and w.lby between :y1 and :y2" +
+            ") as tiles group by tile_row, tile_column",
+            nativeQuery = true
+    )
+    List<Object[]> getSummary(
+            @Param("x1") int x1, @Param("y1") int y1, @Param("x2") int x2, @Param("y2") int y2,
+            @Param("gridSize") int gridSize
+    );
+
+    @Query("select w from WidgetEntity w where :after is null or w.zIndex > :after order by w.zIndex")
+    List<WidgetEntity> getPage(@Param("after") Integer afterZIndex, Pageable page);
+
+    @Query("select w from WidgetEntity w" +
+            " where w.lbx >= :x1 and w.lby >= :y1 and w.rtx <= :x2 and w.rty <= :y2" +
+            " and (:after is null or w.zIndex > :after)" +
+            " order by w.zIndex")
+    List<WidgetEntity> getInAreaPage(
+            @Param("x1") int x1, @Param("y1") int y1, @Param("x2") int x2, @Param("y2") int y2,
+            @Param("after") Integer afterZIndex,
+            Pageable page
+    );
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select w from WidgetEntity w where w.id = :id")
+    Optional<WidgetEntity> findByIdForUpdate(@Param("id") Long id);
+
     @Query("select max(w.zIndex) from WidgetEntity w")
     Optional<Integer> getMaxZIndex();
 
@@ -45,8 +129,19 @@ interface InternalSqlWidgetRepository extends PagingAndSortingRepository<WidgetE
 
     int removeById(Long id);
 
-    @Modifying
-    @Query(value = "update widgets w set w.z_index = w.z_index + 1 where w.id in (select id from (" +
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from WidgetEntity w where w.id in :ids")
+    int removeByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from WidgetEntity w where w.lbx >= :x1 and w.lby >= :y1 and w.rtx <= :x2 and w.rty <= :y2")
+    int removeInArea(@Param("x1") int x1, @Param("y1") int y1, @Param("x2") int x2, @Param("y2") int y2);
+
+    long countByIdIn(Collection<Long> ids);
+
+    // shifted rows are changed behind hibernate's back, so drop managed entities to not read stale zIndex and version
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "update widgets w set w.z_index = w.z_index + 1, w.version = w.version + 1 where w.id in (select id from (" +
             " select id, max(coalesce(lag, 100500)) over(order by z_index) as maxlag " +
             " from (" +
             "  select id," +
@@ -60,7 +155,70 @@ interface InternalSqlWidgetRepository extends PagingAndSortingRepository<WidgetE
             ")",
             nativeQuery = true
     )
-    void shiftUpwards(@Param("zIndex") Integer zIndex);
+    int shiftUpwards(@Param("zIndex") Integer zIndex);
+
+    @Query("select w.zIndex from WidgetEntity w where w.zIndex > :after order by w.zIndex")
+    List<Integer> getZIndexesAbove(@Param("after") int afterZIndex, Pageable page);
+
+    @Query("select w.zIndex from WidgetEntity w where w.zIndex < :before order by w.zIndex desc")
+    List<Integer> getZIndexesBelow(@Param("before") int beforeZIndex, Pageable page);
+
+    // every row in (placed, last] gets zIndex placed + its rank there, all rows are updated before unique index is checked
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "update widgets w" +
+            " set w.z_index = :placed + (select count(*) from widgets c where c.z_index > :placed and c.z_index <= w.z_index)," +
+            "  w.version = w.version + 1" +
+            " where w.z_index > :placed and w.z_index <= :last" +
+            "  and w.z_index <> :placed + (select count(*) from widgets c where c.z_index > :placed and c.z_index <= w.z_index)",
+            nativeQuery = true
+    )
+    int compactUpwards(@Param("placed") int placed, @Param("last") int last);
+
+    // every row in [last, placed) gets zIndex placed - its rank there
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "update widgets w" +
+            " set w.z_index = :placed - (select count(*) from widgets c where c.z_index < :placed and c.z_index >= w.z_index)," +
+            "  w.version = w.version + 1" +
+            " where w.z_index < :placed and w.z_index >= :last" +
+            "  and w.z_index <> :placed - (select count(*) from widgets c where c.z_index < :placed and c.z_index >= w.z_index)",
+            nativeQuery = true
+    )
+    int compactDownwards(@Param("placed") int placed, @Param("last") int last);
+
+    @Query("select max(w.zIndex) from WidgetEntity w where w.id not in :ids")
+    Optional<Integer> getMaxZIndexExcept(@Param("ids") Collection<Long> ids);
+
+    @Query("select min(w.zIndex) from WidgetEntity w where w.id not in :ids")
+    Optional<Integer> getMinZIndexExcept(@Param("ids") Collection<Long> ids);
+
+    // every given row gets zIndex base + its rank among given rows, rows already there are left as is
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "update widgets w" +
+            " set w.z_index = :base + (select count(*) from widgets c where c.id in (:ids) and c.z_index < w.z_index)," +
+            "  w.version = w.version + 1" +
+            " where w.id in (:ids)" +
+            "  and w.z_index <> :base + (select count(*) from widgets c where c.id in (:ids) and c.z_index < w.z_index)",
+            nativeQuery = true
+    )
+    int reorder(@Param("ids") Collection<Long> ids, @Param("base") int base);
+
+    // coordinates are summed as bigint, so that overflow is detected instead of failing the update
+    @Query(value = "select count(*) from widgets w where w.id in (:ids) and (" +
+            " cast(w.lbx as bigint) + :dx not between -2147483648 and 2147483647" +
+            " or cast(w.rtx as bigint) + :dx not between -2147483648 and 2147483647" +
+            " or cast(w.lby as bigint) + :dy not between -2147483648 and 2147483647" +
+            " or cast(w.rty as bigint) + :dy not between -2147483648 and 2147483647" +
+            ")",
+            nativeQuery = true
+    )
+    long countOverflowingOnTranslate(@Param("ids") Collection<Long> ids, @Param("dx") int dx, @Param("dy") int dy);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update WidgetEntity w" +
+            " set w.lbx = w.lbx + :dx, w.rtx = w.rtx + :dx, w.lby = w.lby + :dy, w.rty = w.rty + :dy," +
+            "  w.updatedAt = :updatedAt, w.version = w.version + 1" +
+            " where w.id in :ids")
+    int translate(@Param("ids") Collection<Long> ids, @Param("dx") int dx, @Param("dy") int dy, @Param("updatedAt") long updatedAt);
 }
 
 @Lazy
@@ -74,6 +232,11 @@ public class SqlWidgetRepository implements WidgetRepository<Long> {
     @Autowired
     TransactionTemplate transactionTemplate;
 
+    // max number of widgets, renumbered in one transaction by compaction
+    private static final int COMPACTION_SLICE_SIZE = 256;
+    // half of side of the first square, searched for nearest widgets
+    private static final long NEAREST_INITIAL_RADIUS = 16;
+
     protected <T> T convertToZIndexConflict(RuntimeException e, Integer zIndex) throws RuntimeException, ZIndexConflictException {
         if (e instanceof DataIntegrityViolationException) {
             var cause = e.getCause();
@@ -93,11 +256,33 @@ public class SqlWidgetRepository implements WidgetRepository<Long> {
         throw e;
     }
 
+    // counts modifications made through this repository, changes made to the table by other means are not tracked.
+    // It starts from zero in every process, so it only compares versions read from this repository instance
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * Change version right away, to make the change visible inside current transaction, and once again
+     * after the transaction is finished, so that content, read by others before commit, is never tagged with final version
+     */
+    protected void markModified() {
+        version.incrementAndGet();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    // changing version on rollback is harmless, it only makes readers to refetch the same content
+                    version.incrementAndGet();
+                }
+            });
+        }
+    }
+
     @Override
     public Widget<Long> add(WidgetCreateDto widget) throws ZIndexConflictException {
         try {
             return transactionTemplate.execute(status -> {
                 var saved = internal.save(new WidgetEntity(widget));
+                markModified();
                 return saved.toWidget();
             });
         } catch (RuntimeException e) {
@@ -113,6 +298,7 @@ public class SqlWidgetRepository implements WidgetRepository<Long> {
                         .stream(widgets.spliterator(), false)
                         .map(WidgetEntity::new)::iterator
                 );
+                markModified();
                 return StreamSupport
                         .stream(saved.spliterator(), false)
                         .map(WidgetEntity::toWidget)
@@ -126,13 +312,50 @@ public class SqlWidgetRepository implements WidgetRepository<Long> {
     @Override
     public Optional<Widget<Long>> save(Widget<Long> widget) throws ZIndexConflictException {
         try {
-            return transactionTemplate.execute(status -> {
-                if (internal.existsById(widget.id)) {
-                    return Optional.of(internal.save(new WidgetEntity(widget)).toWidget());
-                } else {
-                    return Optional.empty();
+            // changes of managed entity are flushed as an update, checking and incrementing version,
+            // instead of merging detached entity, that would fail with stale version of given widget
+            return transactionTemplate.execute(status -> internal.findById(widget.id).map(entity -> {
+                entity.assign(widget);
+                internal.flush();
+                markModified();
+                return entity.toWidget();
+            }));
+        } catch (RuntimeException e) {
+            return convertToZIndexConflict(e, null);
+        }
+    }
+
+    @Override
+    public Optional<Widget<Long>> save(Widget<Long> widget, long expectedVersion) throws ZIndexConflictException, VersionConflictException {
+        try {
+            return transactionTemplate.execute(status -> internal.findById(widget.id).map(entity -> {
+                if (entity.version != expectedVersion) {
+                    throw new ObjectOptimisticLockingFailureException(WidgetEntity.class, widget.id);
                 }
-            });
+                entity.assign(widget);
+                // hibernate updates row only if it's version is still the same as read one
+                internal.flush();
+                markModified();
+                return entity.toWidget();
+            }));
+        } catch (ObjectOptimisticLockingFailureException e) {
+            throw new VersionConflictException(widget.id, expectedVersion);
+        } catch (RuntimeException e) {
+            return convertToZIndexConflict(e, null);
+        }
+    }
+
+    @Override
+    public Optional<Widget<Long>> update(Long id, UnaryOperator<Widget<Long>> update) throws ZIndexConflictException {
+        try {
+            // row is locked by select, and changes of managed entity are flushed as a single update
+            return transactionTemplate.execute(status -> internal.findByIdForUpdate(id).map(entity -> {
+                entity.assign(update.apply(entity.toWidget()));
+                // flush right away to get zIndex conflict here, even if called inside outer transaction
+                internal.flush();
+                markModified();
+                return entity.toWidget();
+            }));
         } catch (RuntimeException e) {
             return convertToZIndexConflict(e, null);
         }
@@ -141,15 +364,15 @@ public class SqlWidgetRepository implements WidgetRepository<Long> {
     @Override
     public void save(Iterable<Widget<Long>> widgets) throws ZIndexConflictException {
         try {
-            transactionTemplate.executeWithoutResult(status -> StreamSupport
-                    .stream(widgets.spliterator(), false)
-                    .map(WidgetEntity::new)
-                    .forEach(w -> {
-                        if (internal.existsById(w.id)) {
-                            internal.save(w);
-                        }
-                    })
-            );
+            transactionTemplate.executeWithoutResult(status -> {
+                for (var widget : widgets) {
+                    internal.findById(widget.id).ifPresent(entity -> {
+                        entity.assign(widget);
+                        markModified();
+                    });
+                }
+                internal.flush();
+            });
         } catch (RuntimeException e) {
             convertToZIndexConflict(e, null);
         }
@@ -161,6 +384,20 @@ public class SqlWidgetRepository implements WidgetRepository<Long> {
         return internal.findById(id).map(WidgetEntity::toWidget);
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public List<Widget<Long>> getByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        return internal
+                .findAllById(ids)
+                .stream()
+                .map(WidgetEntity::toWidget)
+                .sorted(Comparator.comparingInt(w -> w.zIndex))
+                .collect(Collectors.toList());
+    }
+
     @Override
     @Transactional
     public List<Widget<Long>> getAll() {
@@ -180,22 +417,186 @@ public class SqlWidgetRepository implements WidgetRepository<Long> {
                 .collect(Collectors.toList());
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public List<Widget<Long>> findOverlapping(Area area, Long excludeId) {
+        return internal
+                .findOverlapping(area.left, area.bottom, area.right, area.top, excludeId)
+                .stream()
+                .map(WidgetEntity::toWidget)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public boolean anyOverlapping(Area area) {
+        return !internal.findOverlappingIds(area.left, area.bottom, area.right, area.top, PageRequest.of(0, 1)).isEmpty();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public int countInArea(Area area) {
+        return (int) internal.countInArea(area.left, area.bottom, area.right, area.top);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<Area> boundingBox() {
+        var box = internal.getBoundingBox().get(0);
+        if (box[0] == null) {
+            // aggregates are null over empty table
+            return Optional.empty();
+        }
+        return Optional.of(new Area(
+                ((Number) box[0]).intValue(),
+                ((Number) box[1]).intValue(),
+                ((Number) box[2]).intValue(),
+                ((Number) box[3]).intValue()
+        ));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public int[][] histogram(Area area, int gridSize) throws IllegalArgumentException {
+        if (gridSize < 1) {
+            throw new IllegalArgumentException("grid size must be positive, got " + gridSize);
+        }
+        var histogram = new int[gridSize][gridSize];
+        for (var tile : internal.getHistogram(area.left, area.bottom, area.right, area.top, gridSize)) {
+            histogram[((Number) tile[0]).intValue()][((Number) tile[1]).intValue()] = ((Number) tile[2]).intValue();
+        }
+        return histogram;
+    }
+
+    /**
+     * Expanding ring search: square around the point is doubled, until at least k widgets intersect it.
+     * Then all k nearest widgets are within its half-diagonal from the point, so they are read from the square
+     * of that half-side at once
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<Widget<Long>> nearest(int x, int y, int k) throws IllegalArgumentException {
+        if (k < 1) {
+            throw new IllegalArgumentException("number of widgets must be positive, got " + k);
+        }
+        Comparator<Widget<Long>> order = Comparator
+                .<Widget<Long>>comparingDouble(w -> w.distanceSquared(x, y))
+                .thenComparing(Comparator.<Widget<Long>>comparingInt(w -> w.zIndex).reversed());
+        List<WidgetEntity> candidates;
+        if (internal.count() <= k) {
+            candidates = internal.findAll();
+        } else {
+            var radius = NEAREST_INITIAL_RADIUS;
+            // terminates at the latest when the square covers the whole plane
+            while (countIntersecting(x, y, radius) < k) {
+                radius *= 2;
+            }
+            radius = (long) Math.ceil(radius * Math.sqrt(2));
+            candidates = internal.getIntersecting(clamp(x - radius), clamp(y - radius), clamp(x + radius), clamp(y + radius));
+        }
+        return candidates
+                .stream()
+                .map(WidgetEntity::toWidget)
+                .sorted(order)
+                .limit(k)
+                .collect(Collectors.toList());
+    }
+
+    private long countIntersecting(int x, int y, long radius) {
+        return internal.countIntersecting(clamp(x - radius), clamp(y - radius), clamp(x + radius), clamp(y + radius));
+    }
+
+    private static int clamp(long coordinate) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, coordinate));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public AreaSummary summarize(Area area, int gridSize) throws IllegalArgumentException {
+        var summary = new AreaSummary.Builder(gridSize);
+        for (var tile : internal.getSummary(area.left, area.bottom, area.right, area.top, gridSize)) {
+            summary.add(
+                    ((Number) tile[0]).intValue(),
+                    ((Number) tile[1]).intValue(),
+                    ((Number) tile[2]).intValue(),
+                    ((Number) tile[3]).longValue(),
+                    ((Number) tile[4]).longValue(),
+                    ((Number) tile[5]).longValue(),
+                    ((Number) tile[6]).longValue()
+            );
+        }
+        return summary.build();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Widget<Long>> getPage(Integer afterZIndex, int limit) {
+        return internal
+                .getPage(afterZIndex, PageRequest.of(0, limit))
+                .stream()
+                .map(WidgetEntity::toWidget)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Widget<Long>> getInAreaPage(Area area, Integer afterZIndex, int limit) {
+        if (area == null) {
+            return getPage(afterZIndex, limit);
+        }
+        return internal
+                .getInAreaPage(area.left, area.bottom, area.right, area.top, afterZIndex, PageRequest.of(0, limit))
+                .stream()
+                .map(WidgetEntity::toWidget)
+                .collect(Collectors.toList());
+    }
+
     @Override
     @Transactional
     public Optional<Widget<Long>> deleteAndReturnById(Long id) {
-        return Optional.ofNullable(internal.removeByIdReturning(id)).map(WidgetEntity::toWidget);
+        var deleted = Optional.ofNullable(internal.removeByIdReturning(id)).map(WidgetEntity::toWidget);
+        deleted.ifPresent(w -> markModified());
+        return deleted;
     }
 
     @Override
     @Transactional
     public boolean deleteById(Long id) {
-        return internal.removeById(id) > 0;
+        var deleted = internal.removeById(id) > 0;
+        if (deleted) {
+            markModified();
+        }
+        return deleted;
+    }
+
+    @Override
+    @Transactional
+    public int deleteByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        var deleted = internal.removeByIdIn(ids);
+        if (deleted > 0) {
+            markModified();
+        }
+        return deleted;
+    }
+
+    @Override
+    @Transactional
+    public int deleteInArea(Area area) {
+        var deleted = internal.removeInArea(area.left, area.bottom, area.right, area.top);
+        if (deleted > 0) {
+            markModified();
+        }
+        return deleted;
     }
 
     @Override
     @Transactional
     public void deleteAll() {
         internal.deleteAll();
+        markModified();
     }
 
     @Override
@@ -204,10 +605,103 @@ public class SqlWidgetRepository implements WidgetRepository<Long> {
         return internal.getMaxZIndex();
     }
 
+    @Override
+    public long getVersion() {
+        return version.get();
+    }
+
+    @Override
+    @Transactional
+    public int shiftUpwards(Integer zIndex) throws ArithmeticException {
+        var shifted = internal.shiftUpwards(zIndex);
+        if (shifted > 0) {
+            markModified();
+        }
+        return shifted;
+    }
+
+    @Override
+    public int compactZIndexes() {
+        return compact(true) + compact(false);
+    }
+
+    /**
+     * Renumber widgets in one direction from zero, each slice in its own transaction
+     * @return number of renumbered widgets
+     */
+    private int compact(boolean upwards) {
+        var moved = 0;
+        // zIndex of the last renumbered widget
+        var placed = upwards ? -1 : 0;
+        while (true) {
+            var from = placed;
+            var slice = transactionTemplate.execute(status -> {
+                var zIndexes = upwards
+                        ? internal.getZIndexesAbove(from, PageRequest.of(0, COMPACTION_SLICE_SIZE))
+                        : internal.getZIndexesBelow(from, PageRequest.of(0, COMPACTION_SLICE_SIZE));
+                if (zIndexes.isEmpty()) {
+                    return new int[]{0, 0};
+                }
+                var last = zIndexes.get(zIndexes.size() - 1);
+                var updated = upwards ? internal.compactUpwards(from, last) : internal.compactDownwards(from, last);
+                if (updated > 0) {
+                    markModified();
+                }
+                return new int[]{zIndexes.size(), updated};
+            });
+            moved += slice[1];
+            placed = upwards ? placed + slice[0] : placed - slice[0];
+            if (slice[0] < COMPACTION_SLICE_SIZE) {
+                return moved;
+            }
+        }
+    }
+
+    @Override
+    @Transactional(isolation = Isolation.SERIALIZABLE)
+    public List<Widget<Long>> reorder(Collection<Long> ids, ReorderPosition position) throws ArithmeticException {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        var front = position == ReorderPosition.front;
+        var bound = front ? internal.getMaxZIndexExcept(ids) : internal.getMinZIndexExcept(ids);
+        if (bound.isPresent()) {
+            var count = internal.countByIdIn(ids);
+            var base = front ? (long) bound.get() + 1 : (long) bound.get() - count;
+            if (base + count - 1 > Integer.MAX_VALUE || base < Integer.MIN_VALUE) {
+                throw new ArithmeticException("No room to move " + count + " widgets to " + position);
+            }
+            if (internal.reorder(ids, (int) base) > 0) {
+                markModified();
+            }
+        }
+        // otherwise there are no other widgets, selected ones are already in front of and behind them
+        return internal
+                .findAllById(ids)
+                .stream()
+                .map(WidgetEntity::toWidget)
+                .sorted(Comparator.comparingInt(w -> w.zIndex))
+                .collect(Collectors.toList());
+    }
+
     @Override
     @Transactional
-    public void shiftUpwards(Integer zIndex) throws ArithmeticException {
-        internal.shiftUpwards(zIndex);
+    public List<Widget<Long>> translate(Collection<Long> ids, int dx, int dy, long updatedAt) throws ArithmeticException {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        if (internal.countOverflowingOnTranslate(ids, dx, dy) > 0) {
+            throw new ArithmeticException("Cannot move widgets by (" + dx + ", " + dy + ")");
+        }
+        if (internal.translate(ids, dx, dy, updatedAt) > 0) {
+            markModified();
+        }
+        return internal
+                .findAllById(ids)
+                .stream()
+                .map(WidgetEntity::toWidget)
+                .sorted(Comparator.comparingInt(w -> w.zIndex))
+                .collect(Collectors.toList());
     }
 
     @Override
@@ -2,17 +2,17 @@ package org.fantom.web.repositories.widget.dao;
 
 import org.fantom.domain.Widget;
 import org.fantom.repositories.widget.dto.WidgetCreateDto;
-import org.springframework.data.annotation.LastModifiedDate;
 
 import javax.persistence.*;
-import java.util.Date;
 
 @Entity
 @Table(name="widgets")
 public class WidgetEntity {
+    // ids are leased from db sequence in blocks, so inserts don't need a round trip per id and can be batched
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
-    @Column(insertable = false, updatable = false)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "widget_ids")
+    @SequenceGenerator(name = "widget_ids", sequenceName = "widget_ids", allocationSize = 50)
+    @Column(updatable = false)
     public Long id;
 
     /**
@@ -42,8 +42,18 @@ public class WidgetEntity {
     @Column(nullable=false)
     public int rty;
 
-    @LastModifiedDate
-    public Date updatedAt;
+    /**
+     * create or last modification date, in milliseconds since the epoch
+     */
+    @Column(nullable=false)
+    public long updatedAt;
+
+    /**
+     * incremented by every change, checked by hibernate on update
+     */
+    @Version
+    @Column(nullable=false)
+    public long version;
 
     public WidgetEntity() {
 
@@ -57,6 +67,7 @@ public class WidgetEntity {
         this.rty = rty;
         this.zIndex = widget.zIndex;
         this.updatedAt = widget.updatedAt;
+        this.version = widget.version;
     }
 
     public WidgetEntity(Widget<Long> widget) {
@@ -67,6 +78,7 @@ public class WidgetEntity {
         this.rty = widget.y + widget.height;
         this.zIndex = widget.zIndex;
         this.updatedAt = widget.updatedAt;
+        this.version = widget.version;
     }
 
     public WidgetEntity(WidgetCreateDto widget) {
@@ -78,7 +90,19 @@ public class WidgetEntity {
         this.updatedAt = widget.updatedAt;
     }
 
+    /**
+     * Copy all widget properties, except id and version, into this entity
+     */
+    public void assign(Widget<Long> widget) {
+        this.lbx = widget.x;
+        this.lby = widget.y;
+        this.rtx = widget.x + widget.width;
+        this.rty = widget.y + widget.height;
+        this.zIndex = widget.zIndex;
+        this.updatedAt = widget.updatedAt;
+    }
+
     public Widget<Long> toWidget() {
-        return new Widget<>(id, lbx, lby, zIndex, rtx - lbx, rty - lby, updatedAt);
+        return new Widget<>(id, lbx, lby, zIndex, rtx - lbx, rty - lby, updatedAt, version);
     }
 }
@@ -1,11 +1,15 @@
 drop table if exists widgets;
+drop sequence if exists widget_ids;
+-- must be incremented by allocation size of WidgetEntity id generator
+create sequence widget_ids start with 1 increment by 50;
 create table widgets (
-    id int auto_increment primary key,
+    id bigint primary key,
     lbx int not null,
     lby int not null,
     rtx int not null,
     rty int not null,
     z_index int not null,
-    updated_at timestamp not null default now(),
+    updated_at bigint not null,
+    version bigint not null default 0,
     constraint z_index_unique unique (z_index)
 );
\ No newline at end of file
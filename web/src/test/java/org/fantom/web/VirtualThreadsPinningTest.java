@@ -0,0 +1,104 @@
+package org.fantom.web;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.fantom.web.config.VirtualThreads;
+import org.fantom.web.controllers.widget.dto.WidgetCreateDto;
+import org.fantom.web.controllers.widget.dto.WidgetResponseDto;
+import org.fantom.web.controllers.widget.dto.WidgetUpdateDto;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Runs concurrent requests to db repository on virtual threads and checks, that none of them blocks,
+ * while pinned to carrier thread. JVM reports such blocks as {@code jdk.VirtualThreadPinned} JFR events,
+ * which are recorded while requests run. Runs only on Java 21+, e.g. by {@code jdk21} maven profile
+ */
+@SpringBootTest(
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"config.virtualThreads=true", "config.repositoryType=db"}
+)
+@ActiveProfiles("test")
+public class VirtualThreadsPinningTest {
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    @Autowired
+    TestRestTemplate client;
+
+    @BeforeAll
+    public static void requireVirtualThreads() {
+        assumeTrue(VirtualThreads.isSupported(), "virtual threads require Java 21+");
+    }
+
+    @Test
+    public void dbRequestsDoNotPinCarrierThreads() throws Exception {
+        List<RecordedEvent> pinned;
+        var dump = Files.createTempFile("pinning", ".jfr");
+        try {
+            try (var recording = new Recording()) {
+                // every block while pinned, not only long ones, as by default
+                recording.enable(PINNED_EVENT).withThreshold(Duration.ZERO).withStackTrace();
+                recording.start();
+                runRequests();
+                recording.stop();
+                recording.dump(dump);
+            }
+            pinned = RecordingFile.readAllEvents(dump).stream()
+                    .filter(event -> event.getEventType().getName().equals(PINNED_EVENT))
+                    .collect(Collectors.toList());
+        } finally {
+            Files.deleteIfExists(dump);
+        }
+        // events with stack traces are printed on failure
+        assertThat(pinned.stream().map(RecordedEvent::toString)).isEmpty();
+    }
+
+    private void runRequests() throws Exception {
+        // more concurrent requests than carrier threads, so pinning would stall the others
+        var clients = Runtime.getRuntime().availableProcessors() * 4;
+        var executor = Executors.newFixedThreadPool(clients);
+        try {
+            var futures = new ArrayList<Future<?>>();
+            for (int i = 0; i < clients; i++) {
+                futures.add(executor.submit((Callable<Void>) () -> {
+                    for (int j = 0; j < 10; j++) {
+                        var created = client.postForEntity("/widgets", new WidgetCreateDto(j, j, null, 1, 1), WidgetResponseDto.class);
+                        assertThat(created.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+                        var id = created.getBody().id;
+                        client.put("/widgets/" + id, new WidgetUpdateDto(j + 1, j + 1, null, 2, 2));
+                        assertThat(client.getForEntity("/widgets/" + id, WidgetResponseDto.class).getStatusCode())
+                                .isEqualTo(HttpStatus.OK);
+                        assertThat(client.getForEntity("/widgets?left=0&right=100&bottom=0&top=100", String.class).getStatusCode())
+                                .isEqualTo(HttpStatus.OK);
+                        client.delete("/widgets/" + id);
+                    }
+                    return null;
+                }));
+            }
+            for (var future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
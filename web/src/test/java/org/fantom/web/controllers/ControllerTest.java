@@ -1,25 +1,33 @@
 package org.fantom.web.controllers;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import org.fantom.web.controllers.widget.WidgetsController;
 import org.fantom.web.controllers.widget.dto.WidgetCreateDto;
 import org.fantom.web.controllers.widget.dto.WidgetResponseDto;
 import org.fantom.web.controllers.widget.dto.WidgetUpdateDto;
+import org.fantom.web.controllers.widget.serialization.WidgetMediaTypes;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 import org.springframework.util.LinkedMultiValueMap;
 
+import java.io.ByteArrayInputStream;
 import java.util.Arrays;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -40,18 +48,30 @@ public class ControllerTest {
     @Autowired
     WidgetsController<?> widgetsController;
 
+    /**
+     * Perform request and, if controller answered with a future, wait for it and perform async dispatch
+     */
+    ResultActions perform(RequestBuilder request) throws Exception {
+        var actions = mvc.perform(request);
+        var result = actions.andReturn();
+        if (result.getRequest().isAsyncStarted()) {
+            return mvc.perform(asyncDispatch(result));
+        }
+        return actions;
+    }
+
     @AfterEach
     public void clearAll() throws Exception {
         // if you try to use controller or service directly, in db mode transaction will not be
         // committed (or it is something other with transaction management) and tests will interfere with each other
-        mvc.perform(delete("/widgets"));
+        perform(delete("/widgets"));
     }
 
     @Test
     public void canCreateWidgetWithAllFieldsSpecified() throws Exception {
         var requestDto = new WidgetCreateDto(0,0,0,1,1);
         var request = objectMapper.writeValueAsString(requestDto);
-        var response = mvc.perform(post("/widgets")
+        var response = perform(post("/widgets")
                 .content(request)
                 .contentType(MediaType.APPLICATION_JSON)
         )
@@ -72,7 +92,7 @@ public class ControllerTest {
     public void canCreateWidgetWithoutZIndex() throws Exception {
         var requestDto = new WidgetCreateDto(0,0,null,1,1);
         var request = objectMapper.writeValueAsString(requestDto);
-        var response = mvc.perform(post("/widgets")
+        var response = perform(post("/widgets")
                 .content(request)
                 .contentType(MediaType.APPLICATION_JSON)
         )
@@ -96,7 +116,7 @@ public class ControllerTest {
         final var requestNumber = 10;
         IntStream.generate(() -> 0).limit(requestNumber).forEach((_i) -> {
             try {
-                mvc.perform(post("/widgets")
+                perform(post("/widgets")
                         .content(request)
                         .contentType(MediaType.APPLICATION_JSON)
                 )
@@ -105,8 +125,7 @@ public class ControllerTest {
                 fail("Unexpected exception while creating widget request", e);
             }
         });
-        var responseBody = mvc
-                .perform(get("/widgets")
+        var responseBody = perform(get("/widgets")
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(MockMvcResultMatchers.status().isOk())
                 .andReturn()
@@ -126,7 +145,7 @@ public class ControllerTest {
         final var requestNumber = 10;
         IntStream.generate(() -> 0).limit(requestNumber).forEach((_i) -> {
             try {
-                mvc.perform(post("/widgets")
+                perform(post("/widgets")
                         .content(request)
                         .contentType(MediaType.APPLICATION_JSON)
                 )
@@ -136,8 +155,7 @@ public class ControllerTest {
             }
         });
 
-        var responseBody = mvc
-                .perform(get("/widgets")
+        var responseBody = perform(get("/widgets")
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(MockMvcResultMatchers.status().isOk())
                 .andReturn()
@@ -154,7 +172,7 @@ public class ControllerTest {
     public void canUpdate() throws Exception {
         var createRequestDto = new WidgetCreateDto(0,0,0,1,1);
         var createRequest = objectMapper.writeValueAsString(createRequestDto);
-        var createResponseBody = mvc.perform(post("/widgets")
+        var createResponseBody = perform(post("/widgets")
                 .content(createRequest)
                 .contentType(MediaType.APPLICATION_JSON)
         )
@@ -168,7 +186,7 @@ public class ControllerTest {
         var updateRequestDto = new WidgetUpdateDto(1,1,1,2,2);
         var updateRequest = objectMapper.writeValueAsString(updateRequestDto);
 
-        var updateResponseBody = mvc.perform(put("/widgets/" + createResponseDto.id.toString())
+        var updateResponseBody = perform(put("/widgets/" + createResponseDto.id.toString())
                 .content(updateRequest)
                 .contentType(MediaType.APPLICATION_JSON)
         )
@@ -179,7 +197,7 @@ public class ControllerTest {
 
         var updateResponseDto = objectMapper.readValue(updateResponseBody, WidgetResponseDto.class);
 
-        var updatedWidgetBody = mvc.perform(get("/widgets/"+createResponseDto.id)
+        var updatedWidgetBody = perform(get("/widgets/"+createResponseDto.id)
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(MockMvcResultMatchers.status().isOk())
                 .andReturn()
@@ -198,11 +216,51 @@ public class ControllerTest {
         assertNotEquals("updatedAt must be updated", createResponseDto.updatedAt, updatedWidgetDto.updatedAt);
     }
 
+    @Test
+    public void updateWithStaleIfMatchIsRejected() throws Exception {
+        var createResponse = perform(post("/widgets")
+                .content(objectMapper.writeValueAsString(new WidgetCreateDto(0, 0, 0, 1, 1)))
+                .contentType(MediaType.APPLICATION_JSON)
+        )
+                .andExpect(MockMvcResultMatchers.status().isCreated())
+                .andReturn()
+                .getResponse();
+        var eTag = createResponse.getHeader(HttpHeaders.ETAG);
+        assertNotNull("ETag must be set", eTag);
+        var id = objectMapper.readValue(createResponse.getContentAsString(), WidgetResponseDto.class).id;
+
+        var updated = perform(put("/widgets/" + id)
+                .content(objectMapper.writeValueAsString(new WidgetUpdateDto(1, 1, 1, 2, 2)))
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.IF_MATCH, eTag)
+        )
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andReturn()
+                .getResponse();
+        assertNotEquals("ETag must change", eTag, updated.getHeader(HttpHeaders.ETAG));
+
+        // second update, based on the same state
+        perform(put("/widgets/" + id)
+                .content(objectMapper.writeValueAsString(new WidgetUpdateDto(2, 2, 2, 3, 3)))
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.IF_MATCH, eTag)
+        )
+                .andExpect(MockMvcResultMatchers.status().isPreconditionFailed());
+
+        var widgetBody = perform(get("/widgets/" + id))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, updated.getHeader(HttpHeaders.ETAG)))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        assertEquals("x must be from the first update", 1, objectMapper.readValue(widgetBody, WidgetResponseDto.class).x);
+    }
+
     @Test
     public void canDelete() throws Exception {
         var createRequestDto = new WidgetCreateDto(0, 0, 0, 1, 1);
         var createRequest = objectMapper.writeValueAsString(createRequestDto);
-        var createResponseBody = mvc.perform(post("/widgets")
+        var createResponseBody = perform(post("/widgets")
                 .content(createRequest)
                 .contentType(MediaType.APPLICATION_JSON)
         )
@@ -213,18 +271,55 @@ public class ControllerTest {
 
         var createResponseDto = objectMapper.readValue(createResponseBody, WidgetResponseDto.class);
 
-        mvc.perform(delete("/widgets/" + createResponseDto.id.toString()))
+        perform(delete("/widgets/" + createResponseDto.id.toString()))
                 .andExpect(MockMvcResultMatchers.status().isNoContent());
-        mvc.perform(get("/widgets/" + createResponseDto.id)
+        perform(get("/widgets/" + createResponseDto.id)
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(MockMvcResultMatchers.status().isNotFound());
     }
 
+    @Test
+    public void bulkDeletesDontFallThroughToDeleteAll() throws Exception {
+        var ids = new String[2];
+        for (int i = 0; i < ids.length; i++) {
+            var createResponseBody = perform(post("/widgets")
+                    .content(objectMapper.writeValueAsString(new WidgetCreateDto(i * 10, 0, i, 1, 1)))
+                    .contentType(MediaType.APPLICATION_JSON)
+            )
+                    .andExpect(MockMvcResultMatchers.status().isCreated())
+                    .andReturn()
+                    .getResponse()
+                    .getContentAsString();
+            ids[i] = objectMapper.readValue(createResponseBody, WidgetResponseDto.class).id.toString();
+        }
+
+        // misspelled and incomplete criteria don't clear the board
+        perform(delete("/widgets").param("id", ids[0]))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+        perform(delete("/widgets").param("left", "0").param("right", "5"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+        perform(get("/widgets/" + ids[0])).andExpect(MockMvcResultMatchers.status().isOk());
+
+        perform(delete("/widgets/delete-in-area")
+                .param("left", "-1")
+                .param("right", "5")
+                .param("bottom", "-1")
+                .param("top", "5"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.deleted").value(1));
+        perform(get("/widgets/" + ids[0])).andExpect(MockMvcResultMatchers.status().isNotFound());
+
+        perform(delete("/widgets/delete-by-ids").param("ids", ids[1]))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.deleted").value(1));
+        perform(get("/widgets/" + ids[1])).andExpect(MockMvcResultMatchers.status().isNotFound());
+    }
+
     @Test
     public void canFindByArea() throws Exception {
         var createRequestDto = new WidgetCreateDto(1, 2, 3, 4, 5);
         var createRequest = objectMapper.writeValueAsString(createRequestDto);
-        var createResponseBody = mvc.perform(post("/widgets")
+        var createResponseBody = perform(post("/widgets")
                 .content(createRequest)
                 .contentType(MediaType.APPLICATION_JSON)
         )
@@ -240,7 +335,7 @@ public class ControllerTest {
         areaParams.add("right", "6");
         areaParams.add("bottom", "1");
         areaParams.add("top", "7");
-        var widgetsBody = mvc.perform(get("/widgets")
+        var widgetsBody = perform(get("/widgets")
                 .queryParams(areaParams))
                 .andExpect(MockMvcResultMatchers.status().isOk())
                 .andReturn()
@@ -251,4 +346,215 @@ public class ControllerTest {
         assertThat(widgetsInArea).hasSize(1);
         assertThat(widgetsInArea[0]).isEqualTo(createResponseDto);
     }
+
+    @Test
+    public void canGetCompactRepresentation() throws Exception {
+        var createRequestDto = new WidgetCreateDto(1, 2, 3, 4, 5);
+        var createRequest = objectMapper.writeValueAsString(createRequestDto);
+        var createResponseBody = perform(post("/widgets")
+                .content(createRequest)
+                .contentType(MediaType.APPLICATION_JSON)
+        )
+                .andExpect(MockMvcResultMatchers.status().isCreated())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        var createResponseDto = objectMapper.readValue(createResponseBody, WidgetResponseDto.class);
+
+        var widgetsBody = perform(get("/widgets")
+                .accept(WidgetMediaTypes.COMPACT_JSON))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentTypeCompatibleWith(WidgetMediaTypes.COMPACT_JSON))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        var widgets = objectMapper.readValue(widgetsBody, long[][].class);
+        assertThat(widgets).hasSize(1);
+        assertThat(widgets[0]).containsExactly(
+                Long.parseLong(createResponseDto.id.toString()),
+                createRequestDto.x,
+                createRequestDto.y,
+                createRequestDto.zIndex,
+                createRequestDto.width,
+                createRequestDto.height,
+                createResponseDto.updatedAt.getTime()
+        );
+    }
+
+    @Test
+    public void canGetCompactRepresentationOfSingleWidget() throws Exception {
+        var createRequestDto = new WidgetCreateDto(1, 2, 3, 4, 5);
+        var createResponseBody = perform(post("/widgets")
+                .content(objectMapper.writeValueAsString(createRequestDto))
+                .contentType(MediaType.APPLICATION_JSON)
+        )
+                .andExpect(MockMvcResultMatchers.status().isCreated())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        var createResponseDto = objectMapper.readValue(createResponseBody, WidgetResponseDto.class);
+
+        // written by message converter, not by widget codecs, unlike the list of all widgets
+        var widgetBody = perform(get("/widgets/" + createResponseDto.id)
+                .accept(WidgetMediaTypes.COMPACT_JSON))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentTypeCompatibleWith(WidgetMediaTypes.COMPACT_JSON))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        var widget = objectMapper.readValue(widgetBody, long[].class);
+        assertThat(widget).containsExactly(
+                Long.parseLong(createResponseDto.id.toString()),
+                createRequestDto.x,
+                createRequestDto.y,
+                createRequestDto.zIndex,
+                createRequestDto.width,
+                createRequestDto.height,
+                createResponseDto.updatedAt.getTime()
+        );
+
+        // any type is still answered with plain json
+        perform(get("/widgets/" + createResponseDto.id).accept(MediaType.ALL))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+    }
+
+    @Test
+    public void canCreateFromCborAndGetSmile() throws Exception {
+        var cborMapper = new ObjectMapper(new CBORFactory());
+        var smileMapper = new ObjectMapper(new SmileFactory());
+        var smile = MediaType.valueOf("application/x-jackson-smile");
+
+        var createRequestDto = new WidgetCreateDto(1, 2, 3, 4, 5);
+        var createResponseBody = perform(post("/widgets")
+                .content(cborMapper.writeValueAsBytes(createRequestDto))
+                .contentType(MediaType.APPLICATION_CBOR)
+                .accept(MediaType.APPLICATION_CBOR)
+        )
+                .andExpect(MockMvcResultMatchers.status().isCreated())
+                .andExpect(MockMvcResultMatchers.content().contentTypeCompatibleWith(MediaType.APPLICATION_CBOR))
+                .andReturn()
+                .getResponse()
+                .getContentAsByteArray();
+
+        var createResponseDto = cborMapper.readValue(createResponseBody, WidgetResponseDto.class);
+
+        var widgetsBody = perform(get("/widgets")
+                .accept(smile))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentTypeCompatibleWith(smile))
+                .andReturn()
+                .getResponse()
+                .getContentAsByteArray();
+
+        var widgets = smileMapper.readValue(widgetsBody, WidgetResponseDto[].class);
+        assertThat(widgets).hasSize(1);
+        assertThat(widgets[0]).isEqualTo(createResponseDto);
+        assertEquals("x must be the same", createRequestDto.x, widgets[0].x);
+        assertEquals("zIndex must be the same", createRequestDto.zIndex, widgets[0].zIndex);
+    }
+
+    @Test
+    public void getAllIsNotModifiedUntilWidgetsChange() throws Exception {
+        var createRequest = objectMapper.writeValueAsString(new WidgetCreateDto(0, 0, null, 1, 1));
+        perform(post("/widgets")
+                .content(createRequest)
+                .contentType(MediaType.APPLICATION_JSON)
+        )
+                .andExpect(MockMvcResultMatchers.status().isCreated());
+
+        var eTag = perform(get("/widgets"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andReturn()
+                .getResponse()
+                .getHeader(HttpHeaders.ETAG);
+        assertNotNull("ETag must be set", eTag);
+
+        perform(get("/widgets").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(MockMvcResultMatchers.status().isNotModified());
+
+        perform(post("/widgets")
+                .content(createRequest)
+                .contentType(MediaType.APPLICATION_JSON)
+        )
+                .andExpect(MockMvcResultMatchers.status().isCreated());
+
+        var responseBody = perform(get("/widgets").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        assertThat(objectMapper.readValue(responseBody, WidgetResponseDto[].class)).hasSize(2);
+    }
+
+    @Test
+    public void eTagDiffersPerRepresentation() throws Exception {
+        perform(post("/widgets")
+                .content(objectMapper.writeValueAsString(new WidgetCreateDto(0, 0, null, 1, 1)))
+                .contentType(MediaType.APPLICATION_JSON)
+        )
+                .andExpect(MockMvcResultMatchers.status().isCreated());
+
+        var jsonETag = perform(get("/widgets"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andReturn()
+                .getResponse()
+                .getHeader(HttpHeaders.ETAG);
+        var cborETag = perform(get("/widgets").accept(MediaType.APPLICATION_CBOR))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andReturn()
+                .getResponse()
+                .getHeader(HttpHeaders.ETAG);
+        var gzipETag = perform(get("/widgets").header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andReturn()
+                .getResponse()
+                .getHeader(HttpHeaders.ETAG);
+        var refusedGzipETag = perform(get("/widgets").header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0, deflate"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andReturn()
+                .getResponse()
+                .getHeader(HttpHeaders.ETAG);
+        assertNotEquals("media types must have different ETags", jsonETag, cborETag);
+        assertNotEquals("content codings must have different ETags", jsonETag, gzipETag);
+        assertEquals("gzip with zero quality must not be accepted", jsonETag, refusedGzipETag);
+
+        // client, holding json, doesn't hold cbor
+        perform(get("/widgets").accept(MediaType.APPLICATION_CBOR).header(HttpHeaders.IF_NONE_MATCH, jsonETag))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+        perform(get("/widgets").accept(MediaType.APPLICATION_CBOR).header(HttpHeaders.IF_NONE_MATCH, cborETag))
+                .andExpect(MockMvcResultMatchers.status().isNotModified());
+        perform(get("/widgets?left=0&right=10&bottom=0&top=10")
+                .accept(WidgetMediaTypes.COMPACT_JSON)
+                .header(HttpHeaders.IF_NONE_MATCH, jsonETag)
+        )
+                .andExpect(MockMvcResultMatchers.status().isOk());
+    }
+
+    @Test
+    public void largeGetAllIsCompressed() throws Exception {
+        final var requestNumber = 50;
+        var createRequest = objectMapper.writeValueAsString(new WidgetCreateDto(0, 0, null, 1, 1));
+        for (int i = 0; i < requestNumber; i++) {
+            perform(post("/widgets")
+                    .content(createRequest)
+                    .contentType(MediaType.APPLICATION_JSON)
+            )
+                    .andExpect(MockMvcResultMatchers.status().isCreated());
+        }
+
+        var response = perform(get("/widgets").header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andReturn()
+                .getResponse();
+
+        try (var body = new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))) {
+            assertThat(objectMapper.readValue(body, WidgetResponseDto[].class)).hasSize(requestNumber);
+        }
+    }
 }
@@ -0,0 +1,141 @@
+package org.fantom.web.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.fantom.web.controllers.widget.dto.WidgetCreateDto;
+import org.fantom.web.controllers.widget.dto.WidgetResponseDto;
+import org.fantom.web.controllers.widget.dto.WidgetUpdateDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.io.IOException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.util.AssertionErrors.*;
+
+@SpringBootTest(properties = "spring.main.web-application-type=reactive")
+@AutoConfigureWebTestClient
+@ActiveProfiles("test")
+public class ReactiveControllerTest {
+    @Autowired
+    WebTestClient client;
+
+    @AfterEach
+    public void clearAll() {
+        client.delete().uri("/widgets").exchange().expectStatus().isNoContent();
+    }
+
+    private WidgetResponseDto create(WidgetCreateDto widget) {
+        return client.post()
+                .uri("/widgets")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(widget)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(WidgetResponseDto.class)
+                .returnResult()
+                .getResponseBody();
+    }
+
+    @Test
+    public void streamsAllWidgetsSortedByZIndex() {
+        var widgetsNumber = 300;
+        for (int i = widgetsNumber - 1; i >= 0; i--) {
+            create(new WidgetCreateDto(i, i, i, 1, 1));
+        }
+
+        var streamed = client.get()
+                .uri("/widgets")
+                .accept(MediaType.APPLICATION_STREAM_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                // pages are read separately, so stream is not a byte-exact snapshot of a version
+                .expectHeader().value(HttpHeaders.ETAG, eTag -> assertThat(eTag).startsWith("W/"))
+                .returnResult(WidgetResponseDto.class)
+                .getResponseBody()
+                .collectList()
+                .block();
+        assertNotNull("widgets must be streamed", streamed);
+        // more than one page
+        assertThat(streamed.stream().map(w -> w.zIndex).collect(Collectors.toList()))
+                .isEqualTo(IntStream.range(0, widgetsNumber).boxed().collect(Collectors.toList()));
+
+        var inArea = client.get()
+                .uri("/widgets?left=0&right=10&bottom=0&top=10")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(WidgetResponseDto.class)
+                .returnResult()
+                .getResponseBody();
+        assertNotNull("widgets must be found", inArea);
+        assertEquals("widgets must fit into area", 10, inArea.size());
+    }
+
+    @Test
+    public void updateWithStaleIfMatchIsRejected() {
+        var widget = create(new WidgetCreateDto(0, 0, 0, 1, 1));
+        var eTag = client.get()
+                .uri("/widgets/" + widget.id)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(WidgetResponseDto.class)
+                .getResponseHeaders()
+                .getETag();
+        assertNotNull("ETag must be set", eTag);
+
+        client.put()
+                .uri("/widgets/" + widget.id)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.IF_MATCH, eTag)
+                .bodyValue(new WidgetUpdateDto(1, 1, 1, 2, 2))
+                .exchange()
+                .expectStatus().isOk();
+
+        client.put()
+                .uri("/widgets/" + widget.id)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.IF_MATCH, eTag)
+                .bodyValue(new WidgetUpdateDto(2, 2, 2, 3, 3))
+                .exchange()
+                .expectStatus().isEqualTo(412);
+    }
+
+    @Test
+    public void canCreateFromCborAndGetCborList() throws IOException {
+        var cborMapper = new ObjectMapper(new CBORFactory());
+        var createResponseBody = client.post()
+                .uri("/widgets")
+                .contentType(MediaType.APPLICATION_CBOR)
+                .accept(MediaType.APPLICATION_CBOR)
+                .bodyValue(cborMapper.writeValueAsBytes(new WidgetCreateDto(1, 2, 3, 4, 5)))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectHeader().contentType(MediaType.APPLICATION_CBOR)
+                .expectBody(byte[].class)
+                .returnResult()
+                .getResponseBody();
+        var created = cborMapper.readValue(createResponseBody, WidgetResponseDto.class);
+        assertEquals("zIndex must be the same", 3, created.zIndex);
+
+        // widget stream is collected into single cbor array
+        var widgetsBody = client.get()
+                .uri("/widgets")
+                .accept(MediaType.APPLICATION_CBOR)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_CBOR)
+                .expectBody(byte[].class)
+                .returnResult()
+                .getResponseBody();
+        assertThat(cborMapper.readValue(widgetsBody, WidgetResponseDto[].class)).containsExactly(created);
+    }
+}
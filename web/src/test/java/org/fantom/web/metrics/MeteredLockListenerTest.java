@@ -0,0 +1,49 @@
+package org.fantom.web.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.fantom.repository.ClosableReentrantReadWriteLock;
+import org.fantom.repository.LockType;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MeteredLockListenerTest {
+
+    @Test
+    public void recordsWaitAndHoldByMode() {
+        var registry = new SimpleMeterRegistry();
+        var lock = new ClosableReentrantReadWriteLock(LockType.fair, new MeteredLockListener(registry));
+
+        try (var ignored = lock.readLock()) {
+            // hold read lock
+        }
+        try (var ignored = lock.writeLock()) {
+            // hold write lock
+        }
+        try (var ignored = lock.writeLock()) {
+            // and once more
+        }
+
+        assertThat(registry.get("widgets.repository.lock.wait").tag("mode", "read").timer().count()).isEqualTo(1);
+        assertThat(registry.get("widgets.repository.lock.hold").tag("mode", "read").timer().count()).isEqualTo(1);
+        assertThat(registry.get("widgets.repository.lock.wait").tag("mode", "write").timer().count()).isEqualTo(2);
+        assertThat(registry.get("widgets.repository.lock.hold").tag("mode", "write").timer().count()).isEqualTo(2);
+    }
+
+    @Test
+    public void recordsGivenTimes() {
+        var registry = new SimpleMeterRegistry();
+        var listener = new MeteredLockListener(registry);
+
+        listener.acquired(true, TimeUnit.MILLISECONDS.toNanos(3));
+        listener.released(true, TimeUnit.MILLISECONDS.toNanos(7));
+
+        assertThat(registry.get("widgets.repository.lock.wait").tag("mode", "write").timer().totalTime(TimeUnit.MILLISECONDS))
+                .isEqualTo(3.0);
+        assertThat(registry.get("widgets.repository.lock.hold").tag("mode", "write").timer().totalTime(TimeUnit.MILLISECONDS))
+                .isEqualTo(7.0);
+        assertThat(registry.get("widgets.repository.lock.wait").tag("mode", "read").timer().count()).isZero();
+    }
+}
@@ -0,0 +1,77 @@
+package org.fantom.web.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.fantom.domain.Widget;
+import org.fantom.repositories.widget.dto.Area;
+import org.fantom.repositories.widget.dto.WidgetCreateDto;
+import org.fantom.repositories.widget.exceptions.VersionConflictException;
+import org.fantom.repositories.widget.ids.AtomicLongIdGenerator;
+import org.fantom.repository.InMemoryWidgetRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MeteredWidgetRepositoryTest {
+    private SimpleMeterRegistry registry;
+    private MeteredWidgetRepository<Long> repository;
+
+    @BeforeEach
+    public void setUp() {
+        registry = new SimpleMeterRegistry();
+        repository = new MeteredWidgetRepository<>(new InMemoryWidgetRepository<>(new AtomicLongIdGenerator()), registry);
+    }
+
+    private long calls(String method) {
+        return registry.get("widgets.repository.calls").tag("method", method).timer().count();
+    }
+
+    private Widget<Long> add(int zIndex) throws Exception {
+        return repository.add(new WidgetCreateDto(zIndex, zIndex, zIndex, 1, 1, 0));
+    }
+
+    @Test
+    public void recordsCallsAndResultSizes() throws Exception {
+        add(0);
+        add(1);
+
+        assertThat(repository.getAll()).hasSize(2);
+        assertThat(repository.getInArea(new Area(0, 1, 0, 1))).hasSize(1);
+
+        assertThat(calls("add")).isEqualTo(2);
+        assertThat(calls("getAll")).isEqualTo(1);
+        assertThat(registry.get("widgets.repository.result.size").tag("method", "getAll").summary().totalAmount())
+                .isEqualTo(2.0);
+        assertThat(registry.get("widgets.repository.result.size").tag("method", "getInArea").summary().totalAmount())
+                .isEqualTo(1.0);
+    }
+
+    @Test
+    public void recordsCallsMadeByAtomicAction() throws Exception {
+        add(0);
+        add(1);
+
+        var shifted = repository.runAtomically(repo -> {
+            return repo.shiftUpwards(0);
+        });
+
+        assertThat(shifted).isEqualTo(2);
+        assertThat(calls("runAtomically")).isEqualTo(1);
+        assertThat(calls("shiftUpwards")).isEqualTo(1);
+        var shiftLength = registry.get("widgets.repository.shift.length").tag("method", "shiftUpwards").summary();
+        assertThat(shiftLength.count()).isEqualTo(1);
+        assertThat(shiftLength.totalAmount()).isEqualTo(2.0);
+    }
+
+    @Test
+    public void recordsFailedVersionedSaves() throws Exception {
+        var widget = add(0);
+        var moved = new Widget.Builder<>(widget).withX(5).build();
+
+        repository.save(moved, widget.version);
+        assertThatThrownBy(() -> repository.save(moved, widget.version)).isInstanceOf(VersionConflictException.class);
+
+        assertThat(calls("saveVersioned")).isEqualTo(2);
+    }
+}